@@ -1,5 +1,7 @@
 @echo off
 title Compile
 cd src
-"C:\Program Files (x86)\Java\jdk1.8.0_60\bin\javac.exe" -cp . -d ../bin/ ./Main.java
+rem compile every source, as the tools and library classes (SortableStartupBenchmark, SortableMatchEngine, SortableBinaryListingWriter,
+rem SortableDatasetGenerator) are not referenced from Main, so compiling Main alone leaves them out of bin and sortable.jar
+"C:\Program Files (x86)\Java\jdk1.8.0_60\bin\javac.exe" -cp . -d ../bin/ *.java tom\data\*.java tom\string\*.java tom\string\json\*.java
 pause
\ No newline at end of file
@@ -0,0 +1,10 @@
+@echo off
+title Run startup
+cd bin
+rem run from the jar and the archive made by train-startup.bat, which must be run again whenever the classes or the Java version change.
+rem only the C1 compiler is used, as a short run ends before C2 compiled code pays for its compile time; remove -XX:TieredStopAtLevel=1 for long runs
+set ARCHIVE=
+if exist sortable.jsa set ARCHIVE=-XX:SharedArchiveFile=sortable.jsa
+if exist sortable.aot set ARCHIVE=-XX:AOTCache=sortable.aot
+java %ARCHIVE% -XX:TieredStopAtLevel=1 -cp sortable.jar Main listings.txt matches_1.txt products.txt %*
+pause
@@ -1,14 +1,23 @@
-import tom.data.LinkedList;
 import tom.data.HashTable;
+import tom.data.IntList;
 import tom.string.json.JSONDocument;
 import tom.string.json.JSONData;
+import tom.string.json.JSONTape;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
 *** Main class
 *** Accepts 3 arguments: a file containing 3rd party product listings, a file to output the match results to, and file containing known products
+*** Optional settings (see SortableOptions) may be given anywhere in the arguments in the form --name or --name=value.
 *** Compares the product listings against the known products list, and outputs the matches into the output file. Input and output is in JSON.
+*** If the run stops before writing its output, at its deadline or when cancelled, the process exits with the stopped exit status.
 **/
 
 public class Main {
@@ -16,25 +25,56 @@ public class Main {
 	private static final String defaultProductsFile = "products.txt";
 	///The default file to output the results into.
 	private static final String defaultMatchesFile = "matches.txt";
-	///The array to contain the known products.
-	private SortableProduct[] products;
-	///The array to contain the 3rd party product listings.
-	private SortableListing[] listings;
-	///The match types in order of accuracy and therefore priority.
-	private SortableMatchResult.MatchType[] matchTypes = {
-			SortableMatchResult.MatchType.FULL_MATCH,
-			SortableMatchResult.MatchType.STARTS_WITH_MATCH,
-			SortableMatchResult.MatchType.CONTAINS_MATCH,
-			SortableMatchResult.MatchType.FULL_PARTIAL_MATCH,
-			SortableMatchResult.MatchType.STARTS_WITH_PARTIAL_MATCH,
-			SortableMatchResult.MatchType.CONTAINS_PARTIAL_MATCH,
-	};
+	///The number of characters of the listings file parsed at a time when the listings are held off the heap without a heap budget.
+	private static final int defaultShardLength = 1024 * 1024;
+	///The exit status of a run that stopped before writing its output, so a scheduler can tell it from a completed run.
+	private static final int stoppedExitStatus = 3;
+	///The names of the job phases for the progress output.
+	private static final String[] phaseNames = {"parsing","matching","writing","finished"};
+	///The manager holding the current snapshot of the known products.
+	private SortableCatalogManager catalogManager;
+	///The optional settings for the run.
+	private SortableOptions options;
+	///The currency rates used to compare listing prices.
+	private SortableCurrencyRates rates = new SortableCurrencyRates();
+	///The store containing the 3rd party product listings.
+	private SortableListingStore listings;
+	///The job controlling the run.
+	private SortableJob job;
+	///The rows of the columnar output, gathered with the match results, or null if there is no columnar output.
+	private SortableColumnarWriter columnar;
+	///The estimator of the heap the run needs, or null if there is neither a heap budget nor a memory report.
+	private SortableMemoryEstimator estimator;
+	///Whether the run stopped before writing its output.
+	private boolean isStopped = false;
 	/** Main method. **/
 	public static void main(String[] args) {
+		//separate the optional settings from the file arguments
+		SortableOptions options = new SortableOptions();
+		String[] files = new String[args.length];
+		int fileCount = 0;
+		//for each argument
+		for (int i = 0; i != args.length; i++) {
+			//if it is an option
+			if (args[i].startsWith("--")) {
+				//if it cannot be applied
+				if (!options.parse(args[i])) {
+					//output the invalid option and the option syntax
+					System.out.println("Invalid option: "+args[i]+"\r\n"+SortableOptions.getSyntax());
+					return;
+				}
+			}
+			//else it is a file argument
+			else {
+				files[fileCount++] = args[i];
+			}
+		}
+		args = new String[fileCount];
+		System.arraycopy(files,0,args,0,fileCount);
 		//if there are no arguments
 		if (args.length == 0) {
 			//output the syntax showing that at least one argument is mandatory
-			System.out.println("Insufficient parameters. 3rd party product listing information is required.\r\nSyntax: <3rd party product file> [Optional: <results output file> <known products file>]. Default known products file: \""+defaultProductsFile+"\"");
+			System.out.println("Insufficient parameters. 3rd party product listing information is required.\r\nSyntax: <3rd party product file> [Optional: <results output file> <known products file>] [Options]. Default known products file: \""+defaultProductsFile+"\"\r\n"+SortableOptions.getSyntax());
 		}
 		//else if there are arguments
 		else {
@@ -44,22 +84,106 @@ public class Main {
 			String matchesFile = ( args.length >= 2 ? args[1] : listingsFile+"_"+defaultMatchesFile );
 			//if there is a third argument, set it as the known product file, else use the default product file
 			String productsFile = ( args.length >= 3 ? args[2] : defaultProductsFile );
-			//initialise the program with the determined file locations
-			new Main(listingsFile,matchesFile,productsFile);
+			//create the job controlling the run, and when the process is asked to stop, as by a scheduler, stop the job and wait for it to record its completed listings
+			final SortableJob job = new SortableJob();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					job.cancel();
+					//anticipate interruption
+					try {
+						job.awaitEnd(30000);
+					}
+					catch(InterruptedException e) {
+					}
+				}
+			});
+			//initialise the program with the determined file locations and settings, and if it stopped before writing its output, exit with the stopped status
+			if (new Main(listingsFile,matchesFile,productsFile,options,job).isStopped()) {
+				System.exit(stoppedExitStatus);
+			}
 		}
 	}
-	/** Constructs a new Main object to run the program. **/
+	/** Constructs a new Main object to run the program with the default settings. **/
 	public Main(String listingsFile,String matchesFile,String productsFile) {
+		this(listingsFile,matchesFile,productsFile,new SortableOptions());
+	}
+	/** Constructs a new Main object to run the program with the given settings. **/
+	public Main(String listingsFile,String matchesFile,String productsFile,SortableOptions options) {
+		this(listingsFile,matchesFile,productsFile,options,new SortableJob());
+	}
+	/** Constructs a new Main object to run the program with the given settings, under the given job, which can cancel it and receive its progress. **/
+	public Main(String listingsFile,String matchesFile,String productsFile,SortableOptions options,SortableJob job) {
+		this.options = options;
+		this.job = job;
+		//anticipate any failure, ensuring the job is ended
+		try {
+			run(listingsFile,matchesFile,productsFile);
+		}
+		finally {
+			job.end();
+		}
+	}
+	/** Returns whether the run stopped, at its deadline or when cancelled, before writing its output. **/
+	public boolean isStopped() {
+		return isStopped;
+	}
+	/** Runs the program, reading the files, matching the listings and writing the output. **/
+	private void run(String listingsFile,String matchesFile,String productsFile) {
 		System.out.println("executing...");
 		long c = System.currentTimeMillis();
+		//apply the deadline and progress settings to the job
+		if (options.getDeadline() > 0) {
+			job.setDeadline(c + (long)(options.getDeadline()*1000));
+		}
+		if (options.isProgress()) {
+			job.setProgressListener(new SortableJob.ProgressListener() {
+				public void progress(SortableJob job) {
+					System.out.println(getProgressText(job));
+				}
+			},1000);
+		}
+		job.beginPhase(SortableJob.Phase.PARSE,-1,0);
+		//if there is a heap budget or a memory report, create the estimator measuring the heap of each phase
+		if (options.getHeapBudget() != 0 || options.isMemoryReport()) {
+			estimator = new SortableMemoryEstimator(options.getHeapBudget());
+		}
 		//if the JSON files for the product listings and known products is read successfully
-		if (readJSONFiles(listingsFile,defaultProductsFile)) {
-			//get the match results as a JSON document
-			JSONDocument jsonMatches = getMatchList();
+		if (readJSONFiles(listingsFile,productsFile)) {
+			//measure the heap the listings take once their document is released
+			if (estimator != null) {
+				estimator.recordListings(listings.getListingCount());
+			}
+			//get the match results as a JSON document, which is null if the job stopped first
+			JSONDocument jsonMatches = ( job.isStopped() ? null : getMatchList(listingsFile,productsFile) );
+			//if the job stopped, output why, leaving the checkpoint for a later run
+			if (jsonMatches == null) {
+				isStopped = true;
+				System.out.println("stopped"+( job.isCancelled() ? "" : " at the deadline" )+" after "+job.getDone()+" of "+Math.max(job.getTotal(),0)+" listings."+( job.getCheckpoint() != null ? " The completed listings are in the checkpoint." : "" ));
+				return;
+			}
+			//measure the heap the matches take in the complete result tree
+			if (estimator != null) {
+				estimator.recordMatches();
+			}
+			job.beginPhase(SortableJob.Phase.WRITE,-1,0);
 			//anticipate IO errors
 			try {
+				//create the output sink with the output settings
+				SortableOutputSink outputSink = new SortableOutputSink();
+				outputSink.setBufferSize(options.getOutputBufferSize());
+				outputSink.setCompression(options.getCompression());
+				outputSink.setAtomic(options.isAtomicOutput());
 				//attempt to write the JSON text to the output file
-				jsonMatches.writeToFile(matchesFile,JSONDocument.WriteOption.SINGLE_LINE_OBJECTS);
+				outputSink.write(jsonMatches,matchesFile,JSONDocument.WriteOption.SINGLE_LINE_OBJECTS);
+				//if there is a columnar output, write it from the gathered rows
+				if (columnar != null) {
+					columnar.setBufferSize(options.getOutputBufferSize());
+					columnar.write(options.getColumnarFile(),listings);
+				}
+				//the checkpoint is no longer needed once the output is written
+				if (job.getCheckpoint() != null) {
+					job.getCheckpoint().delete();
+				}
 			}
 			//catch IO errors
 			catch(IOException e) {
@@ -67,6 +191,10 @@ public class Main {
 				e.printStackTrace();
 				System.out.println("An IO error occurred.");
 			}
+			job.beginPhase(SortableJob.Phase.FINISHED,-1,0);
+			if (options.isMemoryReport()) {
+				System.out.println(estimator.getReport());
+			}
 			System.out.println("complete. Time taken: "+((System.currentTimeMillis()-c)/1000)+"secs.");
 		}
 		//else an error occurred
@@ -75,16 +203,63 @@ public class Main {
 			System.out.println("An IO error occurred.");
 		}
 	}
-	/** Attempts to read the JSON files for the known products and 3rd party product listings, and store the items in global arrays, returning true if successful and false for IO errors. **/
+	/** Returns the progress of the given job as text, with the rate and time left while matching. **/
+	private static String getProgressText(SortableJob job) {
+		String phase = phaseNames[job.getPhase().ordinal()];
+		//if the number of records is not known, only the phase can be given
+		if (job.getTotal() < 0) {
+			return phase+"...";
+		}
+		long remaining = job.getRemainingMillis();
+		return phase+": "+job.getDone()+" of "+job.getTotal()+" listings, "+(long)job.getRate()+" per sec, "+( remaining < 0 ? "time left unknown" : "about "+((remaining+999)/1000)+"secs left" );
+	}
+	/**
+	*** Attempts to read the JSON files for the known products and 3rd party product listings, and store the items in global arrays, returning true if successful and false for IO errors. Also reads the currency rates file if one is given.
+	*** If the listings file is a binary listing file (see SortableBinaryListingWriter), it is mapped as the listing store instead of being parsed.
+	**/
 	private boolean readJSONFiles(String listingsFile,String productsFile) {
-		//declare JSONDocument objects for the two files
-		JSONDocument jsonProducts;
-		JSONDocument jsonListings;
+		//declare a JSONData object for the listings file, which is a JSONDocument or a view of a JSONTape
+		JSONData jsonListings = null;
+		//create the catalog manager for the known products file
+		catalogManager = new SortableCatalogManager(productsFile,options.getFuzzyDistance());
 		//anticipate IO errors
 		try {
-			//attempt to load the data into the JSONDocument objects
-			jsonProducts = new JSONDocument(productsFile);
-			jsonListings = new JSONDocument(listingsFile);
+			//attempt to load the first catalog version and the listing data into the JSONDocument object
+			catalogManager.load();
+			//measure the heap before the listings are read
+			if (estimator != null) {
+				estimator.beginPhase();
+			}
+			//if the listings file is binary, map it as the listing store, as it needs no parsing
+			if (SortableBinaryListingStore.isBinaryFile(listingsFile)) {
+				listings = SortableBinaryListingStore.open(listingsFile);
+			}
+			//else if requested, parse it into node arrays, viewed as JSONData
+			else if (options.isTape()) {
+				jsonListings = new JSONTape(listingsFile).getRoot();
+			}
+			//else if the listings are to be held off the heap, parse the file in shards into the off-heap store, so the whole document is never on the heap
+			else if (options.isOffHeap()) {
+				listings = readListingShards(listingsFile);
+			}
+			//else if the document and listings are projected to exceed the heap budget, do the same if their records fit the direct memory left, else parse them on the heap anyway
+			else if (estimator != null && !estimator.isWithinBudget(estimator.getProjectedParseBytes(new File(listingsFile).length()))) {
+				if (estimator.isWithinDirectLimit(estimator.getProjectedOffHeapBytes(new File(listingsFile).length()))) {
+					System.out.println("the listings are projected to exceed the heap budget, so they are parsed in shards and held off the heap.");
+					listings = readListingShards(listingsFile);
+				}
+				else {
+					System.out.println("the listings are projected to exceed the heap budget, but also the "+(SortableMemoryEstimator.getDirectLimit() / (1024 * 1024))+"MB direct memory limit off the heap, so they are parsed on the heap.");
+					jsonListings = new JSONDocument(listingsFile,options.getParseThreads());
+				}
+			}
+			else {
+				jsonListings = new JSONDocument(listingsFile,options.getParseThreads());
+			}
+			//if a currency rates file is given, read it
+			if (options.getRatesFile() != null) {
+				rates = SortableCurrencyRates.read(options.getRatesFile());
+			}
 		}
 		//catch IO errors
 		catch(IOException e) {
@@ -92,163 +267,313 @@ public class Main {
 			e.printStackTrace();
 			return false;
 		}
-		//initialise the known products array to the appropriate size
-		products = new SortableProduct[jsonProducts.getChildCount()];
-		//create an array of the fields known products have and any additional fields listings have that are relevant for comparison
-		String[] fields = {"product_name","manufacturer","model","family","announced-date","currency","price","title"};
-		//for each known product
-		for (int i = 0; i != jsonProducts.getChildCount(); i++) {
-			//get the nth product from the JSON document
-			JSONData data = jsonProducts.getData(i);
-			//create a new String array with an element for each potential field
-			String[] value = new String[fields.length];
-			//for each field
-			for (int ii = 0; ii != fields.length-1; ii++) {
-				//attempt to get the nth field data from the JSON object
-				JSONData d = data.getData(fields[ii]);
-				//if the data exists, store it in the array, else ensure it is set to null
-				value[ii] = ( d == null ? null : d.getValue() );
-			}
-			//create a SortableProduct object for the read product and store it in the known products array at the nth index
-			products[i] = new SortableProduct(value[0],value[1],value[2],value[3],value[4]);
-		}
-		//initialise the 3rd party product listings array to the appropriate size
-		listings = new SortableListing[jsonListings.getChildCount()];
+		//if the listings were mapped from a binary file or parsed in shards, they are ready to compare
+		if (jsonListings == null) {
+			return true;
+		}
+		//if the listings are to be held off the heap, create a store of encoded listings, else initialise the 3rd party product listings array to the appropriate size
+		SortableOffHeapListingStore offHeapListings = ( options.isOffHeap() ? new SortableOffHeapListingStore((int)Math.min(new File(listingsFile).length(),SortableOffHeapListingStore.MAX_CHUNK_SIZE),jsonListings.getChildCount()) : null );
+		SortableListing[] heapListings = ( options.isOffHeap() ? null : new SortableListing[jsonListings.getChildCount()] );
 		//for each product listing
 		for (int i = 0; i != jsonListings.getChildCount(); i++) {
-			//get the nth listing from the JSON document
-			JSONData data = jsonListings.getData(i);
-			//create a new Stromg arrau witth an element for each potential field
-			String[] value = new String[fields.length];
-			//for each field
-			for (int ii = 0; ii != fields.length; ii++) {
-				//attempt to get the nth field data from the JSON object
-				JSONData d = data.getData(fields[ii]);
-				//if the data exists, store it in the array, else ensure it is set to null
-				value[ii] = ( d == null ? null : d.getValue() );
-			}
-			//create a SortableListing object for the read listing and store it in the listings array at the nth index
-			listings[i] = new SortableListing(value[0],value[1],value[2],value[3],value[4],value[5],value[6],value[7]);
+			//create a SortableListing object for the nth listing from the JSON document
+			SortableListing listing = SortableListing.read(jsonListings.getData(i));
+			//if the listings are held off the heap, encode it into the store, else store it in the listings array at the nth index
+			if (offHeapListings != null) {
+				offHeapListings.add(listing);
+			}
+			else {
+				heapListings[i] = listing;
+			}
+		}
+		listings = ( offHeapListings != null ? offHeapListings : new SortableHeapListingStore(heapListings) );
+		//measure the heap the parsed records take while their document is still held
+		if (estimator != null) {
+			estimator.recordParsed(jsonListings.getChildCount(),new File(listingsFile).length());
 		}
 		//if this point is reached, all completed successfully; return true
 		return true;
 	}
-	/** Returns a HashTable containing a JSONData object for each known product. **/
-	private HashTable<JSONData> getResultTable() {
+	/**
+	*** Parses the newline delimited listings file in shards of whole lines, encoding the listings of each shard into an off-heap store before the
+	*** next is parsed, so only one shard's JSONDocument is on the heap at a time. If there is a heap budget, the shards are of the length the
+	*** estimator gives, with the length of the shards after the first projected from its measurement, else they are of the default length.
+	**/
+	private SortableListingStore readListingShards(String listingsFile) throws IOException {
+		boolean isBudgeted = ( estimator != null && estimator.getBudget() != 0 );
+		int shardLength = ( isBudgeted ? estimator.getShardLength() : defaultShardLength );
+		//start with a chunk of about a shard's records, growing as the shards are added
+		SortableOffHeapListingStore store = new SortableOffHeapListingStore(shardLength,1024);
+		boolean isMeasured = false;
+		StringBuilder shard = new StringBuilder();
+		//create a buffered reader for the file
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(listingsFile),JSONDocument.CHARSET));
+		//anticipate IO errors, ensuring the reader is closed
+		try {
+			String line;
+			do {
+				line = reader.readLine();
+				if (line != null) {
+					shard.append(line).append('\n');
+				}
+				//if the shard is full, or the file has ended with lines left in it, parse it and encode its listings
+				if (shard.length() >= shardLength || (line == null && shard.length() != 0)) {
+					JSONDocument document = new JSONDocument(new StringReader(shard.toString()));
+					for (int i = 0; i != document.getChildCount(); i++) {
+						store.add(SortableListing.read(document.getData(i)));
+					}
+					//if it is the first shard, measure it while its document is held, and size the shards after it from the measurement
+					if (!isMeasured && estimator != null) {
+						estimator.recordParsed(document.getChildCount(),shard.length());
+						if (isBudgeted) {
+							shardLength = estimator.getShardLength();
+						}
+						isMeasured = true;
+					}
+					shard.setLength(0);
+				}
+			} while (line != null);
+		}
+		finally {
+			//close the reader
+			reader.close();
+		}
+		return store;
+	}
+	/** Returns a new JSONData object for the given known product, with a listings array of the elements in the given array of the listings at the indexes in the given bucket. **/
+	private JSONData getResultData(SortableProduct product,JSONData[] matches,IntList bucket) {
+		//create a new JSONData object of type object
+		JSONData data = new JSONData(JSONData.Type.OBJECT);
+		//create a JSONData object for the product name field and set the value and type
+		JSONData productField = new JSONData("product_name",product.getName(),JSONData.Type.STRING);
+		//create a JSONData object for the listing array and set the type to array
+		JSONData listingArray = new JSONData(JSONData.Type.ARRAY);
+		//set the name of the listings array
+		listingArray.setName("listings");
+		//add the element of each matched listing to the listings array
+		for (int i = 0; i != bucket.getSize(); i++) {
+			listingArray.addChild(matches[bucket.get(i)]);
+		}
+		//add the product field and listings array to the first JSONData object
+		data.addChild(productField);
+		data.addChild(listingArray);
+		return data;
+	}
+	/** Returns the index of the first known product with the same name as each known product in the given catalog, by product index. **/
+	private int[] getFirstProducts(SortableCatalog catalog) {
 		//create the hash table of size 25% greater than the number of known products
-		HashTable<JSONData> table = new HashTable<JSONData>((int)(products.length*1.25));
-		//for each product
-		for (int i = 0; i != products.length; i++) {
-			//create a new JSONData object of type object
-			JSONData data = new JSONData(JSONData.Type.OBJECT);
-			//create a JSONData object for the product name field and set the value and type
-			JSONData productField = new JSONData("product_name",products[i].getName(),JSONData.Type.STRING);
-			//create a JSONData object for the listing array and set the type to array
-			JSONData listingArray = new JSONData(JSONData.Type.ARRAY);
-			//set the name of the listings array
-			listingArray.setName("listings");
-			//add the product field and listings array to the first JSONData object
-			data.addChild(productField);
-			data.addChild(listingArray);
-			//add the first JSONData object to the table
-			table.add(products[i].getName(),data);
-		}
-		//return the table
-		return table;
+		HashTable<Integer> table = new HashTable<Integer>((int)(catalog.getProductCount()*1.25));
+		int[] firstProducts = new int[catalog.getProductCount()];
+		//for each product, find the first product of its name, adding it if it is the first
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			String name = catalog.getProduct(i).getName();
+			Integer first = table.get(name);
+			if (first == null) {
+				first = Integer.valueOf(i);
+				table.add(name,first);
+			}
+			firstProducts[i] = first.intValue();
+		}
+		return firstProducts;
 	}
-	/** Returns the match results as a JSONDocument. **/
-	private JSONDocument getMatchList() {
+	/** Returns the match results of the listings of the given listings file against the known products of the given products file as a JSONDocument. **/
+	private JSONDocument getMatchList(String listingsFile,String productsFile) {
 		//for performance testing
 	//	System.out.println("Starting compare...");
 	//	long c = System.currentTimeMillis();
-		//get the JSONData for each known product to add the matching listings to
-		HashTable<JSONData> resultTable = this.getResultTable();
-		//create the SortableProductMatcher object for each known product separately to avoid carrying out the same String operations on the same data multiple times
-		SortableProductMatcher[] productMatcher = new SortableProductMatcher[products.length];
-		//for each product
-		for (int i = 0; i != products.length; i++) {
-			//create a new SortableProductMatcher object for the nth element in the array
-			productMatcher[i] = new SortableProductMatcher();
-			//set the product for the matcher
-			productMatcher[i].setProduct(products[i]);
-		}
-		//for each 3rd party product listing
-		for (int i = 0; i != listings.length; i++) {
-			//create a new LinkedList for the matcher objects containing matches
-			LinkedList<SortableProductMatcher> matcherList = new LinkedList<SortableProductMatcher>();
-			//for each known product
-			for (int ii = 0; ii != products.length; ii++) {
-				//set the listing for the matcher
-				productMatcher[ii].setListing(listings[i]);
-				//carry out the comparison and get the match result
-				SortableMatchResult result = productMatcher[ii].getMatchResult();
-				//if there is a match
-				if (result.getMatchType() != SortableMatchResult.MatchType.NO_MATCH) {
-					//add the matcher object to the list of matcher objects containing matches
-					matcherList.add(productMatcher[ii]);
-				}
+		//take the current catalog snapshot once, so the whole run uses the same version even if a newer one is published meanwhile
+		SortableCatalog catalog = catalogManager.getCatalog();
+		//create the buckets the indexes of the matched listings are gathered in by product index, starting with those restored from a checkpoint
+		SortableResultBuckets buckets = new SortableResultBuckets(catalog.getProductCount());
+		//create an array for the JSONData element of each match, by listing index
+		JSONData[] matches = new JSONData[listings.getListingCount()];
+		//if there is a columnar output, create an array for the match type of each match, by listing index
+		byte[] matchTypes = ( options.getColumnarFile() == null ? null : new byte[listings.getListingCount()] );
+		//if there is a checkpoint, restore the listings completed by an earlier run
+		int restored = 0;
+		if (options.getCheckpointFile() != null) {
+			restored = openCheckpoint(catalog,buckets,matches,matchTypes,listingsFile,productsFile);
+		}
+		job.beginPhase(SortableJob.Phase.MATCH,listings.getListingCount(),restored);
+		//if the match elements are projected to exceed the heap budget as trees of JSONData, hold them as text
+		boolean isCompactMatches = false;
+		if (estimator != null) {
+			estimator.beginPhase();
+			estimator.setHeapListings(listings instanceof SortableHeapListingStore);
+			if (!estimator.isWithinBudget(estimator.getProjectedMatchBytes(listings.getListingCount(),false))) {
+				isCompactMatches = true;
+				estimator.setCompactMatches(true);
+				System.out.println("the matches are projected to exceed the heap budget, so they are held as text"+( estimator.isWithinBudget(estimator.getProjectedMatchBytes(listings.getListingCount(),true)) ? "." : ", which may still exceed it." ));
 			}
-			//if the matcher list is not 0
-			if (matcherList.getSize() != 0) {
-				//each listing may only have one matching product, so find the best match
-				//get the list as an array
-				SortableProductMatcher[] matcherArray = new SortableProductMatcher[matcherList.getSize()];
-				matcherList.toArray(matcherArray);
-				//name the loop so it can be broken from within a nested loop
-				findBestMatch:
-				//for each match type
-				for (int ii = 0; ii != matchTypes.length; ii++) {
-					//get the match type that equates to the priorty level of n, where 0 is highest
-					SortableMatchResult.MatchType matchType = getPriorityMatchType(ii);
-					//for each matcher object
-					for (int iii = 0; iii  != matcherArray.length; iii++) {
-						//get the match result for the 'iii'th match
-						SortableMatchResult result = matcherArray[iii].getMatchResult();
-						//if the match type is of the nth priority
-						if (result.getMatchType() == matchType) {
-							//get the known product and listing objects used in the matcher
-							SortableProduct product = matcherArray[iii].getProduct();
-							SortableListing listing = matcherArray[iii].getListing();
-							//create a string for the field name, and a string for the value
-							String name = "title";
-							String value = listing.getTitle();
-							//if the value is null
-							if (value == null) {
-								//change the name to name, and get the name
-								name = "name";
-								value = listing.getName();
-							}
-							//create a new JSONData object of type object for the element in the listings array
-							JSONData object = new JSONData(JSONData.Type.OBJECT);
-							//create and add a new JSONData object to the element, containing the name value and of data type string
-							object.addChild(new JSONData(name,value,JSONData.Type.STRING));
-							//create and add new JSONData objects to the element for other fields in the listing
-							object.addChild(new JSONData("manufacturer",listing.getManufacturer(),JSONData.Type.STRING));
-							object.addChild(new JSONData("currency",listing.getCurrency(),JSONData.Type.STRING));
-							object.addChild(new JSONData("price",listing.getPrice(),JSONData.Type.STRING));
-							//add the element to the listings array for the product in the result table
-							resultTable.get(product.getName()).getData("listings").addChild(object);
-							//exit the best match loop
-							break findBestMatch;
-						}
-					}
-				}
+		}
+		//create the shared counter the workers claim blocks of listings from
+		AtomicInteger nextBlock = new AtomicInteger();
+		//create the workers, and start a thread for each worker after the first
+		SortableMatchWorker[] workers = new SortableMatchWorker[options.getThreads()];
+		Thread[] threads = new Thread[workers.length-1];
+		for (int i = 0; i != workers.length; i++) {
+			workers[i] = new SortableMatchWorker(catalog,listings,options,matches,nextBlock);
+			workers[i].setJob(job);
+			workers[i].setMatchTypes(matchTypes);
+			workers[i].setCompactMatches(isCompactMatches);
+		}
+		for (int i = 0; i != threads.length; i++) {
+			threads[i] = new Thread(workers[i+1],"matcher-"+(i+1));
+			threads[i].start();
+		}
+		//run the first worker on this thread
+		workers[0].run();
+		//wait for the other workers to finish, as the results are incomplete until they do
+		boolean isInterrupted = false;
+		for (int i = 0; i != threads.length; i++) {
+			//anticipate interruption
+			try {
+				threads[i].join();
+			}
+			catch(InterruptedException e) {
+				//keep waiting for the same worker, and restore the interrupt afterwards
+				isInterrupted = true;
+				i--;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+		//if the job stopped, the results are incomplete, so close the checkpoint for a later run to resume from
+		if (job.isStopped()) {
+			if (job.getCheckpoint() != null) {
+				job.getCheckpoint().close();
+			}
+			return null;
+		}
+		//if the statistics are to be output, output the check order chosen from the samples of every worker
+		if (options.isStats()) {
+			SortableMatchPlan plan = new SortableMatchPlan(!options.isFixedOrder());
+			for (int i = 0; i != workers.length; i++) {
+				plan.merge(workers[i].getPlan());
 			}
+			System.out.println(plan.getStats());
 		}
 		//performance testing purposes
 	//	System.out.println("Finished comparing. Time taken: "+(( System.currentTimeMillis() - c ) / 1000)+" seconds");
+		//create the price filter if matches with outlying prices are to be rejected
+		SortablePriceFilter priceFilter = null;
+		if (options.isPriceFilter()) {
+			priceFilter = new SortablePriceFilter(rates);
+			priceFilter.setThreshold(options.getPriceThreshold());
+		}
+		int rejected = 0;
+		//gather the listings matched by every worker into the buckets
+		for (int i = 0; i != workers.length; i++) {
+			buckets.addAll(workers[i].getBuckets());
+		}
+		//products with the same name are output as one, under the first of them, so move the listings of the others to the first
+		int[] firstProducts = getFirstProducts(catalog);
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			if (firstProducts[i] != i) {
+				buckets.move(i,firstProducts[i]);
+			}
+		}
+		//if there is a columnar output, gather its rows along with the JSON output
+		columnar = ( matchTypes == null ? null : new SortableColumnarWriter() );
+		//the JSONData for each product, by product index, created only for the first product of each name
+		JSONData[] results = new JSONData[catalog.getProductCount()];
+		//for each product
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			//if an earlier product has the same name, it is output as that product
+			if (firstProducts[i] != i) {
+				continue;
+			}
+			SortableProduct product = catalog.getProduct(i);
+			IntList bucket = buckets.get(i);
+			//put the listings back in their original order, as blocks can finish in any order
+			bucket.sort();
+			//count the matches for the estimator
+			if (estimator != null) {
+				estimator.addMatches(bucket.getSize());
+			}
+			//if there is a price filter, reject the outlying prices using the prices of all the listings matched to the product
+			if (priceFilter != null) {
+				rejected+= priceFilter.filter(listings,bucket);
+			}
+			//create the JSONData for the product, with the element of each matched listing
+			results[i] = getResultData(product,matches,bucket);
+			//add a row for each matched listing to the columnar output
+			if (columnar != null && bucket.getSize() != 0) {
+				int productCode = columnar.addProduct(product.getName());
+				for (int ii = 0; ii != bucket.getSize(); ii++) {
+					columnar.addRow(productCode,bucket.get(ii),matchTypes[bucket.get(ii)]);
+				}
+			}
+		}
+		//if there is a price filter, output the number of matches it rejected
+		if (priceFilter != null) {
+			System.out.println("Rejected "+rejected+" matches with outlying prices.");
+		}
 		//create a new JSONDocument to contain the JSONData objects, and add the results to it
 		JSONDocument jsonMatches = new JSONDocument();
 		//for each product
-		for (int i = 0; i != products.length; i++) {
-			//add the JSONData to the JSONDocument
-			jsonMatches.addChild(resultTable.get(products[i].getName()));
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			//add the JSONData of the product, or of the first product of its name, to the JSONDocument
+			jsonMatches.addChild(results[firstProducts[i]]);
 		}
 		//return the JSONDocument containing the match output
 		return jsonMatches;
 	}
-	/** Returns the SortableMatchResult match type corresponding to the given priority level where 0 = highest. **/
-	private SortableMatchResult.MatchType getPriorityMatchType(int priority) {
-		return ( priority < matchTypes.length ? matchTypes[priority] : SortableMatchResult.MatchType.NO_MATCH );
+	/**
+	*** Returns the identity of the given file for a checkpoint: the hash of its absolute path, its length and its last modified time, which change
+	*** when it is replaced or rewritten. The path is hashed, as it may hold characters that would need escaping in the checkpoint's JSON.
+	**/
+	private static String getFileIdentity(String file) {
+		File path = new File(file).getAbsoluteFile();
+		return Integer.toHexString(path.getPath().hashCode())+":"+path.length()+":"+path.lastModified();
+	}
+	/**
+	*** Opens the checkpoint file, restoring the match elements of the listings completed by an earlier run with the same settings into the given
+	*** array and their indexes into the buckets of their products, and sets it as the job's checkpoint. Returns the number of listings restored.
+	*** If the match types are recorded, the checkpoint does not hold them, so the match type of each restored listing is found again.
+	*** The settings include the identity of the given listings and products files, so a checkpoint is not resumed against other inputs with the same counts.
+	**/
+	private int openCheckpoint(SortableCatalog catalog,SortableResultBuckets buckets,JSONData[] matches,byte[] matchTypes,String listingsFile,String productsFile) {
+		//the settings the results depend on, which a checkpoint must have been written with to be resumed
+		String settings = "listings="+listings.getListingCount()+"@"+getFileIdentity(listingsFile)+",products="+catalog.getProductCount()+"@"+getFileIdentity(productsFile)+",alternatives="+options.getAlternatives()+",rank-by-score="+options.isRankByScore()+( options.getFuzzyDistance() == 0 ? "" : ",fuzzy="+options.getFuzzyDistance() );
+		SortableCheckpoint checkpoint = new SortableCheckpoint(options.getCheckpointFile(),settings);
+		IntList restoredListings = new IntList();
+		IntList restoredProducts = new IntList();
+		int restored = 0;
+		//anticipate IO errors
+		try {
+			restored = checkpoint.open(SortableMatchWorker.BLOCK_SIZE,listings.getListingCount(),matches,restoredListings,restoredProducts);
+			job.setCheckpoint(checkpoint);
+		}
+		//catch IO errors
+		catch(IOException e) {
+			//output the error, and continue without recording the run
+			e.printStackTrace();
+			System.out.println("The checkpoint could not be opened, so the run is not recorded.");
+			return 0;
+		}
+		//add each restored listing to the bucket of its product
+		for (int i = 0; i != restoredListings.getSize(); i++) {
+			buckets.add(restoredProducts.get(i),restoredListings.get(i));
+		}
+		//if the match types are recorded, compare each restored listing with its product again for its match type
+		if (matchTypes != null && restoredListings.getSize() != 0) {
+			SortableProductMatcher[] productMatcher = catalog.createMatchers();
+			for (int i = 0; i != restoredListings.getSize(); i++) {
+				SortableProductMatcher matcher = productMatcher[restoredProducts.get(i)];
+				matcher.setListing(listings.getListing(restoredListings.get(i),null));
+				SortableMatchResult.MatchType matchType = matcher.getMatchType();
+				//the listing matched the product, so if the exact checks do not find a match, it was a fuzzy match
+				if (matchType == SortableMatchResult.MatchType.NO_MATCH) {
+					matchType = SortableMatchResult.MatchType.FUZZY_MATCH;
+				}
+				matchTypes[restoredListings.get(i)] = (byte)matchType.ordinal();
+			}
+		}
+		if (restored != 0) {
+			System.out.println("resuming with "+restored+" listings restored from the checkpoint.");
+		}
+		return restored;
 	}
 }
\ No newline at end of file
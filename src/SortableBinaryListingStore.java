@@ -0,0 +1,166 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+*** SortableBinaryListingStore class
+*** A SortableListingStore reading a binary listing file, written once from the JSON listings by a SortableBinaryListingWriter, so that
+*** later runs can skip parsing the JSON text.
+*** The file starts with the 8 byte MAGIC header, followed by the encoded listing records (see SortableListingRecord) and then the footer
+*** index of the file offset of each record as 8 byte longs. It ends with an 8 byte trailer holding the file offset of the footer index,
+*** followed by the number of records as a 4 byte int and the 4 byte END_MAGIC. All numbers are big endian.
+*** The records are memory mapped, in segments of up to SEGMENT_SIZE bytes that always end on a record boundary, and read through
+*** SortableListingView flyweights, so any record can be read directly by its number and the operating system pages the file in as needed.
+*** Only the index is held on the heap, as one long per record holding the segment in its high 32 bits and the offset in the segment in its low 32 bits.
+*** To divide the work across threads, split() gives ranges of records holding about the same number of bytes, and getRange() a store of
+*** the records of a range, sharing the mapped segments, which each thread can read with its own view.
+**/
+
+public class SortableBinaryListingStore implements SortableListingStore {
+	///The header at the start of a binary listing file: "SORTLST" followed by the format version.
+	public static final byte[] MAGIC = {'S','O','R','T','L','S','T',1};
+	///The value at the end of a binary listing file, marking a complete footer.
+	public static final int END_MAGIC = 0x4C535445;
+	///The number of bytes in the trailer after the footer index.
+	public static final int TRAILER_SIZE = 16;
+	///The maximum number of bytes mapped in one segment.
+	private static final int SEGMENT_SIZE = 1 << 30;
+	///The mapped segments of records.
+	private final ByteBuffer[] segments;
+	///The file offset of the start of each segment.
+	private final long[] segmentOffsets;
+	///The position of each record, as the segment in the high 32 bits and the offset in the segment in its low 32 bits.
+	private final long[] index;
+	/** Constructs a new SortableBinaryListingStore over the given mapped segments, their file offsets and the record index. **/
+	private SortableBinaryListingStore(ByteBuffer[] segments,long[] segmentOffsets,long[] index) {
+		this.segments = segments;
+		this.segmentOffsets = segmentOffsets;
+		this.index = index;
+	}
+	/** Returns whether the given file starts with the binary listing header. **/
+	public static boolean isBinaryFile(String file) throws IOException {
+		byte[] header = new byte[MAGIC.length];
+		int length = 0;
+		FileInputStream input = new FileInputStream(file);
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			//read until the header is full or the file ends
+			int read;
+			while (length != header.length && (read = input.read(header,length,header.length-length)) != -1) {
+				length+= read;
+			}
+		}
+		finally {
+			input.close();
+		}
+		return ( length == header.length && Arrays.equals(header,MAGIC) );
+	}
+	/** Opens and maps the given binary listing file. **/
+	public static SortableBinaryListingStore open(String file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(new File(file),"r");
+		//anticipate IO errors, ensuring the file is closed. mapped segments stay valid once the channel is closed
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			long size = channel.size();
+			//read the trailer
+			if (size < MAGIC.length + TRAILER_SIZE) {
+				throw new IOException("Binary listing file is truncated: "+file);
+			}
+			ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY,size-TRAILER_SIZE,TRAILER_SIZE);
+			long indexOffset = trailer.getLong();
+			int count = trailer.getInt();
+			if (trailer.getInt() != END_MAGIC || count < 0 || indexOffset < MAGIC.length || indexOffset + (long)count * 8 != size - TRAILER_SIZE) {
+				throw new IOException("Binary listing file has an invalid footer: "+file);
+			}
+			//read the file offset of each record from the footer index
+			long[] offsets = new long[count];
+			if (count != 0) {
+				channel.map(FileChannel.MapMode.READ_ONLY,indexOffset,(long)count * 8).asLongBuffer().get(offsets);
+			}
+			//divide the records into segments, starting a new segment whenever the next record would take the current one beyond the segment size
+			long[] segmentOffsets = new long[4];
+			int segmentCount = 0;
+			long[] index = new long[count];
+			for (int i = 0; i != count; i++) {
+				long end = ( i+1 == count ? indexOffset : offsets[i+1] );
+				if (offsets[i] < MAGIC.length || end < offsets[i]) {
+					throw new IOException("Binary listing file has an invalid record offset: "+file);
+				}
+				//if there is no segment yet or the record does not fit in the current one, start a new segment at the record
+				if (segmentCount == 0 || end - segmentOffsets[segmentCount-1] > SEGMENT_SIZE) {
+					if (segmentCount == segmentOffsets.length) {
+						segmentOffsets = Arrays.copyOf(segmentOffsets,segmentCount*2);
+					}
+					segmentOffsets[segmentCount++] = offsets[i];
+				}
+				index[i] = ((long)(segmentCount-1) << 32) | (offsets[i] - segmentOffsets[segmentCount-1]);
+			}
+			//map each segment, up to the start of the next segment or the footer index
+			ByteBuffer[] segments = new ByteBuffer[segmentCount];
+			for (int i = 0; i != segmentCount; i++) {
+				long end = ( i+1 == segmentCount ? indexOffset : segmentOffsets[i+1] );
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,segmentOffsets[i],end-segmentOffsets[i]);
+			}
+			return new SortableBinaryListingStore(segments,Arrays.copyOf(segmentOffsets,segmentCount),index);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+	/** Returns the number of listings. **/
+	public int getListingCount() {
+		return index.length;
+	}
+	/** Returns the listing at the given index, moving the given listing to it if it is a view, else returning a new view. **/
+	public SortableListing getListing(int i,SortableListing reuse) {
+		SortableListingView view = ( reuse instanceof SortableListingView ? (SortableListingView)reuse : new SortableListingView() );
+		long position = index[i];
+		view.setRecord(segments[(int)(position >>> 32)],(int)position);
+		return view;
+	}
+	/** Returns the file offset of the record at the given index. **/
+	private long getFileOffset(int i) {
+		return segmentOffsets[(int)(index[i] >>> 32)] + (int)index[i];
+	}
+	/**
+	*** Divides the records into the given number of consecutive ranges holding about the same number of bytes, for processing on separate threads.
+	*** Returns the parts + 1 boundaries, where range n runs from record boundaries[n] (inclusive) to boundaries[n+1] (exclusive). Ranges may be empty.
+	**/
+	public int[] split(int parts) {
+		int[] boundaries = new int[parts+1];
+		boundaries[parts] = index.length;
+		if (index.length == 0) {
+			return boundaries;
+		}
+		long start = getFileOffset(0);
+		long length = getFileOffset(index.length-1) - start;
+		//for each boundary between ranges
+		for (int i = 1; i != parts; i++) {
+			long target = start + length * i / parts;
+			//binary search for the first record starting at or after the target offset
+			int low = boundaries[i-1];
+			int high = index.length;
+			while (low != high) {
+				int middle = (low + high) >>> 1;
+				if (getFileOffset(middle) < target) { low = middle + 1; }
+				else { high = middle; }
+			}
+			boundaries[i] = low;
+		}
+		return boundaries;
+	}
+	/**
+	*** Returns a store of the records from the first index (inclusive) to the second (exclusive), such as a range given by split(). It shares the
+	*** mapped segments of this store, and holds its own index of the range.
+	**/
+	public SortableBinaryListingStore getRange(int start,int end) {
+		if (start < 0 || end > index.length || start > end) {
+			throw new IndexOutOfBoundsException("Invalid record range: "+start+" to "+end+" of "+index.length);
+		}
+		return new SortableBinaryListingStore(segments,segmentOffsets,Arrays.copyOfRange(index,start,end));
+	}
+}
\ No newline at end of file
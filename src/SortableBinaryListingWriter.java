@@ -0,0 +1,99 @@
+import tom.string.json.JSONDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+*** SortableBinaryListingWriter class
+*** Writes listings to a binary listing file in the format read by SortableBinaryListingStore.
+*** Records are streamed to the file as they are added, and only their file offsets are held until the footer index is written on close.
+**/
+
+public class SortableBinaryListingWriter {
+	///The stream writing the file.
+	private DataOutputStream output;
+	///The file offset of each record written.
+	private long[] offsets = new long[1024];
+	///The number of records written.
+	private int count = 0;
+	///The file offset of the next byte written.
+	private long position;
+	/** Creates the given file and writes the header. **/
+	public SortableBinaryListingWriter(String file) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),65536));
+		output.write(SortableBinaryListingStore.MAGIC);
+		position = SortableBinaryListingStore.MAGIC.length;
+	}
+	/** Encodes and writes the given listing. **/
+	public void add(SortableListing listing) throws IOException {
+		byte[] record = SortableListingRecord.encode(listing);
+		//grow the offsets if needed
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets,count*2);
+		}
+		offsets[count++] = position;
+		output.write(record);
+		position+= record.length;
+	}
+	/** Returns the number of listings written. **/
+	public int getListingCount() {
+		return count;
+	}
+	/** Writes the footer index and trailer, and closes the file. **/
+	public void close() throws IOException {
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			long indexOffset = position;
+			//write the footer index
+			for (int i = 0; i != count; i++) {
+				output.writeLong(offsets[i]);
+			}
+			//write the trailer
+			output.writeLong(indexOffset);
+			output.writeInt(count);
+			output.writeInt(SortableBinaryListingStore.END_MAGIC);
+		}
+		finally {
+			output.close();
+		}
+	}
+	/**
+	*** Converts a JSON listings file into a binary listing file.
+	*** Accepts 2 arguments: the JSON file containing 3rd party product listings, and the binary file to write. The binary file can then be given to Main in place of the JSON file.
+	**/
+	public static void main(String[] args) {
+		//if there are too few arguments, output the syntax
+		if (args.length < 2) {
+			System.out.println("Insufficient parameters.\r\nSyntax: <3rd party product JSON file> <binary output file>");
+			return;
+		}
+		System.out.println("converting...");
+		long c = System.currentTimeMillis();
+		//anticipate IO errors
+		try {
+			//load the listing data into a JSONDocument object
+			JSONDocument jsonListings = new JSONDocument(args[0]);
+			SortableBinaryListingWriter writer = new SortableBinaryListingWriter(args[1]);
+			//anticipate IO errors, ensuring the writer is closed
+			try {
+				//for each product listing, create a SortableListing object and write it
+				for (int i = 0; i != jsonListings.getChildCount(); i++) {
+					writer.add(SortableListing.read(jsonListings.getData(i)));
+				}
+			}
+			finally {
+				writer.close();
+			}
+			System.out.println("complete. Converted "+writer.getListingCount()+" listings. Time taken: "+((System.currentTimeMillis()-c)/1000)+"secs.");
+		}
+		//catch IO errors
+		catch(IOException e) {
+			//output the error to the console
+			e.printStackTrace();
+			System.out.println("An IO error occurred.");
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+/**
+*** SortableCandidateHeap class
+*** Keeps the highest scoring candidate products for a listing in a fixed-size heap.
+*** Candidates are offered one at a time as the products are compared, and only the best K are kept, so memory use is bounded by the
+*** capacity regardless of how many products match and the full candidate list is never sorted.
+*** The root of the heap is the weakest candidate kept, so a new candidate is compared against it and either rejected or swapped in.
+*** Equal scores are ranked by product index, lowest first, so results do not depend on the order candidates are offered in.
+*** A heap is meant to be reused for each listing: call clear() before offering the candidates for the next listing.
+**/
+
+public class SortableCandidateHeap {
+	///The product indexes of the candidates kept.
+	private final int[] products;
+	///The scores of the candidates kept.
+	private final double[] scores;
+	///The number of candidates kept.
+	private int size;
+	/** Constructs a new SortableCandidateHeap keeping at most the given number of candidates. **/
+	public SortableCandidateHeap(int capacity) {
+		this.products = new int[capacity];
+		this.scores = new double[capacity];
+	}
+	/** Returns the maximum number of candidates kept. **/
+	public int getCapacity() {
+		return products.length;
+	}
+	/** Returns the number of candidates kept. **/
+	public int getSize() {
+		return size;
+	}
+	/** Removes every candidate. **/
+	public void clear() {
+		size = 0;
+	}
+	/** Offers the product at the given index with the given score, keeping it if it is among the best candidates offered so far. **/
+	public void offer(int product,double score) {
+		//if the heap is not full
+		if (size != products.length) {
+			//add the candidate at the end and move it up to its place
+			siftUp(size++,product,score);
+		}
+		//else if the candidate is better than the weakest kept
+		else if (size != 0 && isWeaker(products[0],scores[0],product,score)) {
+			//replace the weakest and move the new candidate down to its place
+			siftDown(0,product,score);
+		}
+	}
+	/** Sorts the kept candidates from best to worst in place. Candidates must not be offered again until the heap is cleared. **/
+	public void sort() {
+		//repeatedly move the weakest remaining candidate to the end of the unsorted part
+		for (int end = size-1; end > 0; end--) {
+			int product = products[end];
+			double score = scores[end];
+			products[end] = products[0];
+			scores[end] = scores[0];
+			//restore the heap over the remaining candidates
+			int length = size;
+			size = end;
+			siftDown(0,product,score);
+			size = length;
+		}
+	}
+	/** Returns the product index of the candidate at the given position. After sort() position 0 is the best candidate. **/
+	public int getProduct(int i) {
+		return products[i];
+	}
+	/** Returns the score of the candidate at the given position. After sort() position 0 is the best candidate. **/
+	public double getScore(int i) {
+		return scores[i];
+	}
+	/** Returns whether the first candidate ranks below the second. **/
+	private static boolean isWeaker(int productA,double scoreA,int productB,double scoreB) {
+		return ( scoreA != scoreB ? scoreA < scoreB : productA > productB );
+	}
+	/** Places the given candidate at the given position and moves it towards the root while it is weaker than its parent. **/
+	private void siftUp(int i,int product,double score) {
+		while (i != 0) {
+			int parent = (i-1) >>> 1;
+			//if the parent is not stronger, the candidate is in place
+			if (!isWeaker(product,score,products[parent],scores[parent])) { break; }
+			//move the parent down
+			products[i] = products[parent];
+			scores[i] = scores[parent];
+			i = parent;
+		}
+		products[i] = product;
+		scores[i] = score;
+	}
+	/** Places the given candidate at the given position and moves it away from the root while a child is weaker. **/
+	private void siftDown(int i,int product,double score) {
+		int half = size >>> 1;
+		while (i < half) {
+			//find the weaker child
+			int child = (i << 1) + 1;
+			if (child+1 < size && isWeaker(products[child+1],scores[child+1],products[child],scores[child])) { child++; }
+			//if the candidate is not stronger than the weaker child, it is in place
+			if (!isWeaker(products[child],scores[child],product,score)) { break; }
+			//move the child up
+			products[i] = products[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		products[i] = product;
+		scores[i] = score;
+	}
+}
\ No newline at end of file
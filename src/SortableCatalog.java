@@ -0,0 +1,113 @@
+import tom.string.json.JSONDocument;
+import tom.string.json.JSONData;
+
+import java.io.IOException;
+
+/**
+*** SortableCatalog class
+*** An immutable, versioned snapshot of the known products.
+*** A snapshot is never modified once it has been created, so it can be shared between any number of matching batches
+*** without locking. A new catalog version is published by creating a new snapshot and swapping it in with a SortableCatalogManager,
+*** leaving batches that already hold the previous snapshot to finish with it.
+**/
+
+public class SortableCatalog {
+	///The fields read for each known product, in the order they are passed to the SortableProduct constructor.
+	private static final String[] fields = {"product_name","manufacturer","model","family","announced-date"};
+	///The version of the catalog.
+	private final long version;
+	///The known products.
+	private final SortableProduct[] products;
+	///The index of the products by model token, for finding the candidates for partial model matches.
+	private final SortableModelTokenIndex modelTokenIndex;
+	///The products grouped by manufacturer, for comparing listings product-major.
+	private final SortableProductGroups productGroups;
+	///The fuzzy index of the product models for the run's edit distance, or null if models are not matched fuzzily.
+	private final SortableFuzzyModelIndex fuzzyModelIndex;
+	/** Constructs a new SortableCatalog of the given version containing the given known products. The products must not be modified once added. **/
+	public SortableCatalog(long version,SortableProduct[] products) {
+		this(version,products,0);
+	}
+	/**
+	*** Constructs a new SortableCatalog of the given version containing the given known products, with a fuzzy index of their models for the
+	*** given maximum edit distance, or none if it is 0. The products must not be modified once added.
+	**/
+	public SortableCatalog(long version,SortableProduct[] products,int fuzzyDistance) {
+		this.version = version;
+		//copy the array so the snapshot cannot be changed through the caller's reference
+		this.products = products.clone();
+		this.modelTokenIndex = new SortableModelTokenIndex(this);
+		this.productGroups = new SortableProductGroups(this);
+		this.fuzzyModelIndex = ( fuzzyDistance == 0 ? null : new SortableFuzzyModelIndex(this,fuzzyDistance) );
+	}
+	/** Returns the version of the catalog. **/
+	public long getVersion() {
+		return this.version;
+	}
+	/** Returns the number of known products. **/
+	public int getProductCount() {
+		return this.products.length;
+	}
+	/** Returns the known product at the given index. **/
+	public SortableProduct getProduct(int i) {
+		return this.products[i];
+	}
+	/** Returns the index of the products by model token. **/
+	public SortableModelTokenIndex getModelTokenIndex() {
+		return this.modelTokenIndex;
+	}
+	/** Returns the products grouped by manufacturer. **/
+	public SortableProductGroups getProductGroups() {
+		return this.productGroups;
+	}
+	/** Returns the fuzzy index of the product models, or null if the catalog was built without one. **/
+	public SortableFuzzyModelIndex getFuzzyModelIndex() {
+		return this.fuzzyModelIndex;
+	}
+	/** Returns a new SortableProductMatcher for each known product, in catalog order. Matchers hold the listing being compared, so each batch needs its own. **/
+	public SortableProductMatcher[] createMatchers() {
+		return createMatchers(null);
+	}
+	/** Returns a new SortableProductMatcher for each known product, in catalog order, with the given token filter, or none if it is null. **/
+	public SortableProductMatcher[] createMatchers(SortableTokenFilter tokenFilter) {
+		SortableProductMatcher[] matchers = new SortableProductMatcher[products.length];
+		//for each product
+		for (int i = 0; i != products.length; i++) {
+			//create a new SortableProductMatcher object for the nth element in the array
+			matchers[i] = new SortableProductMatcher();
+			//set the product for the matcher
+			matchers[i].setProduct(products[i]);
+			matchers[i].setTokenFilter(tokenFilter);
+		}
+		return matchers;
+	}
+	/** Reads the known products from the given JSON file and returns them as a catalog of the given version. **/
+	public static SortableCatalog read(String productsFile,long version) throws IOException {
+		return read(productsFile,version,0);
+	}
+	/** Reads the known products from the given JSON file and returns them as a catalog of the given version, with a fuzzy index for the given edit distance, or none if it is 0. **/
+	public static SortableCatalog read(String productsFile,long version,int fuzzyDistance) throws IOException {
+		//load the data into a JSONDocument object
+		JSONDocument jsonProducts = new JSONDocument(productsFile);
+		//initialise the known products array to the appropriate size
+		SortableProduct[] products = new SortableProduct[jsonProducts.getChildCount()];
+		//for each known product
+		for (int i = 0; i != jsonProducts.getChildCount(); i++) {
+			//get the nth product from the JSON document
+			JSONData data = jsonProducts.getData(i);
+			//create a new String array with an element for each field
+			String[] value = new String[fields.length];
+			//for each field
+			for (int ii = 0; ii != fields.length; ii++) {
+				//attempt to get the nth field data from the JSON object
+				JSONData d = data.getData(fields[ii]);
+				//if the data exists, store it in the array, else ensure it is set to null
+				value[ii] = ( d == null ? null : d.getValue() );
+			}
+			//create a SortableProduct object for the read product and store it in the known products array at the nth index
+			products[i] = new SortableProduct(value[0],value[1],value[2],value[3],value[4]);
+		}
+		//return the snapshot
+		return new SortableCatalog(version,products,fuzzyDistance);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+*** SortableCatalogManager class
+*** Holds the current SortableCatalog snapshot and replaces it when the products file changes.
+*** Catalogs are rebuilt on a background thread and published with a single volatile write, so readers calling getCatalog()
+*** never take a lock and never see a partially built catalog. A batch should call getCatalog() once and use the returned
+*** snapshot throughout, so that it finishes on the version it started with while new batches pick up the new version.
+**/
+
+public class SortableCatalogManager {
+	///The file the known products are read from.
+	private final File productsFile;
+	///The maximum edit distance of the fuzzy index of each catalog, or 0 for none.
+	private final int fuzzyDistance;
+	///The current catalog snapshot.
+	private volatile SortableCatalog catalog;
+	///The counter the catalog versions are taken from.
+	private final AtomicLong versionCounter = new AtomicLong();
+	///The last modification time of the products file when it was last read.
+	private volatile long lastModified;
+	///The background thread catalogs are rebuilt on.
+	private final ScheduledExecutorService executor;
+	/** Constructs a new SortableCatalogManager for the given products file. No catalog is available until load() or reload() completes. **/
+	public SortableCatalogManager(String productsFile) {
+		this(productsFile,0);
+	}
+	/** Constructs a new SortableCatalogManager for the given products file, whose catalogs have a fuzzy index for the given edit distance, or none if it is 0. **/
+	public SortableCatalogManager(String productsFile,int fuzzyDistance) {
+		this.productsFile = new File(productsFile);
+		this.fuzzyDistance = fuzzyDistance;
+		//create a single daemon thread so a pending reload never keeps the program running
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable,"catalog-reload");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	/** Returns the current catalog snapshot, or null if none has been loaded. **/
+	public SortableCatalog getCatalog() {
+		return this.catalog;
+	}
+	/** Reads the products file on the calling thread and publishes it as the current catalog, which is returned. **/
+	public SortableCatalog load() throws IOException {
+		//record the modification time before reading so a change made during the read is picked up next time
+		long modified = productsFile.lastModified();
+		//build the new snapshot
+		SortableCatalog newCatalog = SortableCatalog.read(productsFile.getPath(),versionCounter.incrementAndGet(),fuzzyDistance);
+		//publish it
+		publish(newCatalog,modified);
+		return newCatalog;
+	}
+	/** Reads the products file on the background thread and publishes it as the current catalog when complete. The returned Future yields the new catalog. **/
+	public Future<SortableCatalog> reload() {
+		return executor.submit(new Callable<SortableCatalog>() {
+			public SortableCatalog call() throws IOException {
+				return load();
+			}
+		});
+	}
+	/** Checks the products file for changes every interval in milliseconds, reloading the catalog in the background when it has been modified. **/
+	public void watch(long interval) {
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				//if the file has changed since it was last read
+				if (productsFile.lastModified() != lastModified) {
+					//anticipate IO errors
+					try {
+						load();
+					}
+					//keep the current catalog if the new one cannot be read
+					catch(IOException e) {
+						e.printStackTrace();
+						System.out.println("Catalog reload failed. Keeping version "+( catalog == null ? 0 : catalog.getVersion() )+".");
+					}
+				}
+			}
+		},interval,interval,TimeUnit.MILLISECONDS);
+	}
+	/** Stops watching the products file and discards any pending reloads. The current catalog remains available. **/
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	/** Publishes the given catalog if it is newer than the current one. **/
+	private synchronized void publish(SortableCatalog newCatalog,long modified) {
+		//only writers synchronize; never replace a newer catalog with an older one that finished reading later
+		if (catalog == null || newCatalog.getVersion() > catalog.getVersion()) {
+			lastModified = modified;
+			catalog = newCatalog;
+		}
+	}
+}
\ No newline at end of file
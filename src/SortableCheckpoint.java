@@ -0,0 +1,251 @@
+import tom.data.IntList;
+import tom.string.json.JSONData;
+import tom.string.json.JSONDocument;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+*** SortableCheckpoint class
+*** Records the completed blocks of listings of a run in a file, so that a run that is stopped or killed can resume without comparing them again.
+*** The file holds one JSON object per line: a header with the settings of the run, then a line for each completed block with its index and,
+*** for each matched listing, the listing index, the product index and the match element. Each block line is written and flushed whole, in the
+*** order blocks complete. When a checkpoint is loaded, a line cut short by a kill is discarded, with the rest of the file after it, and the
+*** block is compared again. A checkpoint is only loaded by a run with the same settings, and is deleted once the run has written its output.
+*** The file is written in UTF-8, as the JSON files are, and read a byte at a time, so the valid length kept is in bytes.
+**/
+
+public class SortableCheckpoint {
+	///The checkpoint file.
+	private final File file;
+	///The settings of the run, which a loaded checkpoint must have been written with.
+	private final String settings;
+	///The writer appending block lines, or null until the checkpoint is opened, or after it fails.
+	private Writer writer = null;
+	///Whether each block was completed by an earlier run.
+	private boolean[] doneBlocks = new boolean[0];
+	/** Constructs a new SortableCheckpoint for the given file and run settings. **/
+	public SortableCheckpoint(String file,String settings) {
+		this.file = new File(file);
+		this.settings = settings;
+	}
+	/**
+	*** Loads the blocks completed by an earlier run with the same settings, restoring the match element of each of their matched listings into
+	*** the given array and adding the listing and product indexes to the given lists, and opens the file to record further blocks.
+	*** Returns the number of listings in the restored blocks, given the number of listings in a block and in the run.
+	**/
+	public int open(int blockSize,int listingCount,JSONData[] matches,IntList restoredListings,IntList restoredProducts) throws IOException {
+		int blockCount = (listingCount + blockSize - 1) / blockSize;
+		doneBlocks = new boolean[blockCount];
+		int restored = 0;
+		long validLength = 0;
+		//if there is a checkpoint file, read its complete lines
+		if (file.exists()) {
+			InputStream input = new BufferedInputStream(new FileInputStream(file));
+			//anticipate IO errors, ensuring the file is closed
+			try {
+				ByteArrayOutputStream line = new ByteArrayOutputStream();
+				long length = 0;
+				boolean isHeader = true;
+				int b;
+				//while there are bytes to read
+				while ((b = input.read()) != -1) {
+					length++;
+					//if the line is not complete, keep reading. a line feed is never part of another character in UTF-8
+					if (b != '\n') {
+						line.write(b);
+						continue;
+					}
+					//parse the line, stopping at the first that is not valid
+					JSONData object = parseLine(new String(line.toByteArray(),JSONDocument.CHARSET));
+					line.reset();
+					if (object == null) {
+						break;
+					}
+					//if it is the header, stop if the settings differ, as the blocks are of another run
+					if (isHeader) {
+						JSONData header = object.getData("checkpoint");
+						if (header == null || !settings.equals(header.getValue())) {
+							System.out.println("The checkpoint was written with other settings and is ignored.");
+							break;
+						}
+						isHeader = false;
+					}
+					//else restore the block
+					else {
+						int block = restoreBlock(object,blockSize,listingCount,matches,restoredListings,restoredProducts);
+						if (block == -1) {
+							break;
+						}
+						restored+= Math.min(blockSize,listingCount - block*blockSize);
+					}
+					validLength = length;
+				}
+			}
+			finally {
+				input.close();
+			}
+		}
+		//discard anything after the last valid line, such as a line cut short by a kill
+		if (validLength != 0) {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file,"rw");
+			//anticipate IO errors, ensuring the file is closed
+			try {
+				randomAccessFile.setLength(validLength);
+			}
+			finally {
+				randomAccessFile.close();
+			}
+			writer = new OutputStreamWriter(new FileOutputStream(file,true),JSONDocument.CHARSET);
+		}
+		//else start a new checkpoint with the header
+		else {
+			writer = new OutputStreamWriter(new FileOutputStream(file),JSONDocument.CHARSET);
+			JSONDocument document = new JSONDocument();
+			JSONData header = new JSONData(JSONData.Type.OBJECT);
+			header.addChild(new JSONData("checkpoint",settings,JSONData.Type.STRING));
+			document.addChild(header);
+			writeLine(document);
+		}
+		return restored;
+	}
+	/** Returns the object on the given line, or null if it is not a complete JSON object. **/
+	private static JSONData parseLine(String line) {
+		//anticipate malformed text
+		try {
+			JSONDocument document = new JSONDocument(new StringReader(line));
+			return ( document.getChildCount() == 1 && document.getData(0).getDataType() == JSONData.Type.OBJECT ? document.getData(0) : null );
+		}
+		catch(IOException | RuntimeException e) {
+			return null;
+		}
+	}
+	/**
+	*** Restores the given block line, returning the block index, or -1 if it is not valid. Every match of the line is checked before any is
+	*** restored, so an invalid line restores nothing and its block is compared again.
+	**/
+	private int restoreBlock(JSONData object,int blockSize,int listingCount,JSONData[] matches,IntList restoredListings,IntList restoredProducts) {
+		JSONData blockData = object.getData("block");
+		JSONData matchArray = object.getData("matches");
+		//anticipate invalid numbers
+		try {
+			int block = ( blockData == null ? -1 : Integer.parseInt(blockData.getValue()) );
+			//if the block is not one of this run, was already restored, or the line is incomplete, it is not valid
+			if (block < 0 || block >= doneBlocks.length || doneBlocks[block] || matchArray == null) {
+				return -1;
+			}
+			//read and check every match of the line
+			int count = matchArray.getChildCount();
+			int[] listings = new int[count];
+			int[] products = new int[count];
+			JSONData[] elements = new JSONData[count];
+			for (int i = 0; i != count; i++) {
+				JSONData match = matchArray.getData(i);
+				//if the match is not a listing index, product index and element, it is not valid
+				if (match.getDataType() != JSONData.Type.ARRAY || match.getChildCount() != 3) {
+					return -1;
+				}
+				listings[i] = Integer.parseInt(match.getData(0).getValue());
+				products[i] = Integer.parseInt(match.getData(1).getValue());
+				elements[i] = match.getData(2);
+				//if the listing is not in the block, or the product index is negative, it is not valid
+				if (listings[i] < block*blockSize || listings[i] >= Math.min((block+1)*blockSize,listingCount) || products[i] < 0) {
+					return -1;
+				}
+			}
+			//the whole line is valid, so restore its matches
+			for (int i = 0; i != count; i++) {
+				matches[listings[i]] = elements[i];
+				restoredListings.add(listings[i]);
+				restoredProducts.add(products[i]);
+			}
+			doneBlocks[block] = true;
+			return block;
+		}
+		catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	/** Returns whether the block at the given index was completed by an earlier run. **/
+	public boolean isBlockDone(int block) {
+		return ( block < doneBlocks.length && doneBlocks[block] );
+	}
+	/**
+	*** Records the completed block at the given index, with the listing and product indexes of its matches and the match elements by listing index.
+	*** It may be called by several workers at once. If the file cannot be written, the error is output and the checkpoint stops recording.
+	**/
+	public void write(int block,IntList listings,IntList products,JSONData[] matches) {
+		//build the line for the block
+		JSONDocument document = new JSONDocument();
+		JSONData object = new JSONData(JSONData.Type.OBJECT);
+		object.addChild(new JSONData("block",String.valueOf(block),JSONData.Type.NUMBER));
+		JSONData matchArray = new JSONData(JSONData.Type.ARRAY);
+		matchArray.setName("matches");
+		//for each match, add the listing index, product index and match element
+		for (int i = 0; i != listings.getSize(); i++) {
+			JSONData match = new JSONData(JSONData.Type.ARRAY);
+			match.addChild(new JSONData(String.valueOf(listings.get(i)),JSONData.Type.NUMBER));
+			match.addChild(new JSONData(String.valueOf(products.get(i)),JSONData.Type.NUMBER));
+			match.addChild(matches[listings.get(i)]);
+			matchArray.addChild(match);
+		}
+		object.addChild(matchArray);
+		document.addChild(object);
+		//write the line whole, so that lines of several workers do not mix
+		synchronized (this) {
+			//if the checkpoint is not recording, there is nothing to do
+			if (writer == null) {
+				return;
+			}
+			//anticipate IO errors
+			try {
+				writeLine(document);
+			}
+			//catch IO errors
+			catch(IOException e) {
+				//output the error and stop recording, as the file can no longer be trusted to hold whole lines
+				e.printStackTrace();
+				System.out.println("The checkpoint could not be written and is no longer recorded.");
+				close();
+			}
+		}
+	}
+	/** Writes the object of the given document as a line and flushes it. **/
+	private void writeLine(JSONDocument document) throws IOException {
+		StringWriter line = new StringWriter();
+		document.write(line,JSONDocument.WriteOption.SINGLE_LINE_OBJECTS);
+		//end the line with a line feed alone, which is how complete lines are found
+		writer.write(line.toString().trim());
+		writer.write("\n");
+		writer.flush();
+	}
+	/** Closes the checkpoint file, which is kept for a later run to resume from. **/
+	public synchronized void close() {
+		//if the file is open, close it
+		if (writer != null) {
+			//anticipate IO errors
+			try {
+				writer.close();
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+			writer = null;
+		}
+	}
+	/** Closes and deletes the checkpoint file, once the run it records has written its output. **/
+	public synchronized void delete() {
+		close();
+		file.delete();
+	}
+}
\ No newline at end of file
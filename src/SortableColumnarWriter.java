@@ -0,0 +1,291 @@
+import tom.data.HashTable;
+import tom.data.IntList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+*** SortableColumnarWriter class
+*** Writes the matches of a run as a flat, typed, column-oriented file for analytic loading, with one row per matched listing in the order of
+*** the JSON output: by product, then by listing index. The columns are the product name and currency, dictionary-encoded; the listing's row
+*** index in the listings file; the match type, dictionary-encoded with the SortableMatchResult.MatchType names in ordinal order; and the price
+*** as a double, NaN when it cannot be parsed. The rows are added from the match results, and only product codes and listing and match type
+*** numbers are held until the file is written, so no JSONData is built for it.
+*** The file is big-endian: the magic, then each column's values one after another, then the directory of the columns and a trailer, as in
+*** the binary listing file. The directory gives each column's name, type and the offset and length of its values, so a reader can load only
+*** the columns it needs. An INT32 column holds an int per row and a FLOAT64 column a double per row. A DICTIONARY column holds the number of
+*** entries, each entry as an int length and its UTF-8 bytes, then a code per row: a byte when there are at most 256 entries, else an int.
+*** The trailer is the offset of the directory, the number of rows and the end magic.
+**/
+
+public class SortableColumnarWriter {
+	///The bytes at the start of a columnar match file.
+	public static final byte[] MAGIC = {'S','M','C','O','L','0','0','1'};
+	///The int at the end of a columnar match file.
+	public static final int END_MAGIC = 0x534D434C;
+	///The column type of an int per row.
+	public static final byte INT32 = 1;
+	///The column type of a double per row.
+	public static final byte FLOAT64 = 2;
+	///The column type of a dictionary of strings and a code per row.
+	public static final byte DICTIONARY = 3;
+	///The match type names, the dictionary of the match type column.
+	private static final SortableMatchResult.MatchType[] matchTypes = SortableMatchResult.MatchType.values();
+	///The distinct product names, the dictionary of the product name column, in the order they were added.
+	private final HashTable<Integer> productTable = new HashTable<Integer>(64);
+	private String[] productNames = new String[64];
+	private int productCount = 0;
+	///The product name code, listing index and match type ordinal of each row.
+	private final IntList rowProducts = new IntList();
+	private final IntList rowListings = new IntList();
+	private final IntList rowMatchTypes = new IntList();
+	///The size of the output buffer in bytes.
+	private int bufferSize = SortableOutputSink.DEFAULT_BUFFER_SIZE;
+	/** Constructs a new SortableColumnarWriter with no rows. **/
+	public SortableColumnarWriter() {
+	}
+	/** Sets the size of the output buffer in bytes. **/
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+	/** Returns the code of the given product name in the product name dictionary, adding it if it is new. **/
+	public int addProduct(String name) {
+		Integer code = productTable.get(name);
+		//if the name is new, add it to the dictionary
+		if (code == null) {
+			if (productCount == productNames.length) {
+				productNames = Arrays.copyOf(productNames,productCount*2);
+			}
+			productNames[productCount] = name;
+			code = Integer.valueOf(productCount++);
+			productTable.add(name,code);
+		}
+		return code.intValue();
+	}
+	/** Adds a row for the listing at the given index, matched to the product of the given code with the match type of the given ordinal. **/
+	public void addRow(int productCode,int listing,int matchType) {
+		rowProducts.add(productCode);
+		rowListings.add(listing);
+		rowMatchTypes.add(matchType);
+	}
+	/** Returns the number of rows added. **/
+	public int getRowCount() {
+		return rowListings.getSize();
+	}
+	/** Writes the rows to the given file, taking the price and currency of each row from the given listings. **/
+	public void write(String file,SortableListingStore listings) throws IOException {
+		int rowCount = getRowCount();
+		//gather the price and currency code of each row from its listing
+		double[] prices = new double[rowCount];
+		int[] currencyCodes = new int[rowCount];
+		HashTable<Integer> currencyTable = new HashTable<Integer>(16);
+		String[] currencies = new String[16];
+		int currencyCount = 0;
+		SortableListing listing = null;
+		for (int i = 0; i != rowCount; i++) {
+			listing = listings.getListing(rowListings.get(i),listing);
+			long price = listing.getPriceValue();
+			prices[i] = ( price == SortablePrice.INVALID ? Double.NaN : price / (double)SortablePrice.SCALE );
+			//a listing without a currency has the empty currency
+			String currency = ( listing.getCurrency() == null ? "" : listing.getCurrency() );
+			Integer code = currencyTable.get(currency);
+			if (code == null) {
+				if (currencyCount == currencies.length) {
+					currencies = Arrays.copyOf(currencies,currencyCount*2);
+				}
+				currencies[currencyCount] = currency;
+				code = Integer.valueOf(currencyCount++);
+				currencyTable.add(currency,code);
+			}
+			currencyCodes[i] = code.intValue();
+		}
+		String[] typeNames = new String[matchTypes.length];
+		for (int i = 0; i != matchTypes.length; i++) {
+			typeNames[i] = matchTypes[i].name();
+		}
+		String[] names = {"product_name","listing","match_type","price","currency"};
+		byte[] types = {DICTIONARY,INT32,DICTIONARY,FLOAT64,DICTIONARY};
+		long[] offsets = new long[names.length];
+		long[] lengths = new long[names.length];
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),bufferSize));
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			output.write(MAGIC);
+			//write the values of each column, recording where they are
+			offsets[0] = output.size();
+			writeDictionary(output,productNames,productCount,rowProducts.toArray());
+			offsets[1] = output.size();
+			for (int i = 0; i != rowCount; i++) {
+				output.writeInt(rowListings.get(i));
+			}
+			offsets[2] = output.size();
+			writeDictionary(output,typeNames,typeNames.length,rowMatchTypes.toArray());
+			offsets[3] = output.size();
+			for (int i = 0; i != rowCount; i++) {
+				output.writeDouble(prices[i]);
+			}
+			offsets[4] = output.size();
+			writeDictionary(output,currencies,currencyCount,currencyCodes);
+			long directoryOffset = output.size();
+			for (int i = 0; i != names.length; i++) {
+				lengths[i] = ( i+1 == names.length ? directoryOffset : offsets[i+1] ) - offsets[i];
+			}
+			//write the directory and trailer
+			output.writeInt(names.length);
+			for (int i = 0; i != names.length; i++) {
+				writeString(output,names[i]);
+				output.writeByte(types[i]);
+				output.writeLong(offsets[i]);
+				output.writeLong(lengths[i]);
+			}
+			output.writeLong(directoryOffset);
+			output.writeInt(rowCount);
+			output.writeInt(END_MAGIC);
+		}
+		finally {
+			output.close();
+		}
+	}
+	/** Writes a dictionary column of the given entries, and the given code of each row, as bytes if there are at most 256 entries. **/
+	private static void writeDictionary(DataOutputStream output,String[] entries,int entryCount,int[] codes) throws IOException {
+		output.writeInt(entryCount);
+		for (int i = 0; i != entryCount; i++) {
+			writeString(output,entries[i]);
+		}
+		boolean isByteCoded = ( entryCount <= 256 );
+		for (int i = 0; i != codes.length; i++) {
+			if (isByteCoded) {
+				output.writeByte(codes[i]);
+			}
+			else {
+				output.writeInt(codes[i]);
+			}
+		}
+	}
+	/** Writes the given string as an int length and its UTF-8 bytes. **/
+	private static void writeString(DataOutputStream output,String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+	/** Reads a string written by writeString. **/
+	private static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes,StandardCharsets.UTF_8);
+	}
+	/** Prints the rows of the given columnar match file to the given stream as tab separated values, with a header line of the column names. **/
+	public static void print(String file,PrintStream out) throws IOException {
+		long directoryOffset;
+		int rowCount;
+		//read the trailer
+		RandomAccessFile random = new RandomAccessFile(file,"r");
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			random.readFully(magic);
+			random.seek(random.length()-16);
+			directoryOffset = random.readLong();
+			rowCount = random.readInt();
+			if (!Arrays.equals(magic,MAGIC) || random.readInt() != END_MAGIC) {
+				throw new IOException("Not a columnar match file: "+file);
+			}
+		}
+		finally {
+			random.close();
+		}
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file),65536));
+		String[] names;
+		String[][] columns;
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			//the columns are in the order of the directory, so read the values first and the directory after them
+			input.readFully(new byte[MAGIC.length]);
+			byte[] values = new byte[(int)(directoryOffset - MAGIC.length)];
+			input.readFully(values);
+			int columnCount = input.readInt();
+			names = new String[columnCount];
+			columns = new String[columnCount][];
+			for (int i = 0; i != columnCount; i++) {
+				names[i] = readString(input);
+				byte type = input.readByte();
+				long offset = input.readLong();
+				input.readLong();
+				DataInputStream column = new DataInputStream(new ByteArrayInputStream(values,(int)(offset - MAGIC.length),values.length));
+				columns[i] = readColumn(column,type,rowCount);
+			}
+		}
+		finally {
+			input.close();
+		}
+		//print the header and the rows
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i != names.length; i++) {
+			line.append( i == 0 ? "" : "\t" ).append(names[i]);
+		}
+		out.println(line);
+		for (int row = 0; row != rowCount; row++) {
+			line.setLength(0);
+			for (int i = 0; i != columns.length; i++) {
+				line.append( i == 0 ? "" : "\t" ).append(columns[i][row]);
+			}
+			out.println(line);
+		}
+	}
+	/** Returns the values of a column of the given type and number of rows, read from the given stream, as strings. **/
+	private static String[] readColumn(DataInputStream input,byte type,int rowCount) throws IOException {
+		String[] values = new String[rowCount];
+		if (type == INT32) {
+			for (int i = 0; i != rowCount; i++) {
+				values[i] = String.valueOf(input.readInt());
+			}
+		}
+		else if (type == FLOAT64) {
+			for (int i = 0; i != rowCount; i++) {
+				values[i] = String.valueOf(input.readDouble());
+			}
+		}
+		else if (type == DICTIONARY) {
+			String[] entries = new String[input.readInt()];
+			for (int i = 0; i != entries.length; i++) {
+				entries[i] = readString(input);
+			}
+			for (int i = 0; i != rowCount; i++) {
+				values[i] = entries[( entries.length <= 256 ? input.readUnsignedByte() : input.readInt() )];
+			}
+		}
+		else {
+			throw new IOException("Unknown column type: "+type);
+		}
+		return values;
+	}
+	/**
+	*** Prints a columnar match file as tab separated values.
+	*** Accepts 1 argument: the columnar match file written with the --columnar option.
+	**/
+	public static void main(String[] args) {
+		//if there are too few arguments, output the syntax
+		if (args.length < 1) {
+			System.out.println("Insufficient parameters.\r\nSyntax: <columnar match file>");
+			return;
+		}
+		//anticipate IO errors
+		try {
+			print(args[0],System.out);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			System.out.println("An IO error occurred.");
+		}
+	}
+}
\ No newline at end of file
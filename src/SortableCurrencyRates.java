@@ -0,0 +1,95 @@
+import tom.data.HashTable;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+*** SortableCurrencyRates class
+*** A local table of exchange rates used to convert fixed-point listing prices into one base currency so they can be compared.
+*** Rates are read from a text file with one "CODE=rate" line per currency, giving the value of one unit of the currency in the base currency,
+*** e.g. "CAD=0.75" when the base is USD. Blank lines and lines starting with # are ignored. Currency codes are compared case insensitively, folded to upper case whatever the default locale.
+*** A table without rates treats every currency as the base currency, so prices are compared as they are.
+**/
+
+public class SortableCurrencyRates {
+	///The number of fixed-point units in a rate of 1.
+	private static final long RATE_SCALE = 1000000;
+	///The rates by upper case currency code, as fixed-point longs.
+	private HashTable<Long> rates = new HashTable<Long>(20);
+	///The number of rates in the table.
+	private int rateCount = 0;
+	/** Constructs a new SortableCurrencyRates without rates. **/
+	public SortableCurrencyRates() {
+	}
+	/** Sets the rate of the given currency, as the value of one unit of it in the base currency. **/
+	public void setRate(String currency,double rate) {
+		//if it is a new currency, count it
+		if (rates.get(currency.toUpperCase(Locale.ROOT)) == null) { rateCount++; }
+		rates.add(currency.toUpperCase(Locale.ROOT),Math.round(rate*RATE_SCALE));
+	}
+	/** Returns the number of rates in the table. **/
+	public int getRateCount() {
+		return this.rateCount;
+	}
+	/**
+	*** Returns the given fixed-point price in the given currency converted to the base currency, or SortablePrice.INVALID
+	*** if the price is invalid, the table has rates but none for the currency, or the converted price does not fit in a long.
+	**/
+	public long toBase(long price,String currency) {
+		//if the price is invalid or the table is empty, there is nothing to convert
+		if (price == SortablePrice.INVALID || rateCount == 0) {
+			return price;
+		}
+		//get the rate of the currency
+		Long rate = ( currency == null ? null : rates.get(currency.toUpperCase(Locale.ROOT)) );
+		//if there is no rate, the price cannot be compared
+		if (rate == null) {
+			return SortablePrice.INVALID;
+		}
+		//convert, rounding half up. a price parsed with many whole digits can overflow the product, and is then too large to compare
+		try {
+			return Math.addExact(Math.multiplyExact(price,rate.longValue()),RATE_SCALE/2) / RATE_SCALE;
+		}
+		catch(ArithmeticException e) {
+			return SortablePrice.INVALID;
+		}
+	}
+	/** Reads the rates from the given file. **/
+	public static SortableCurrencyRates read(String file) throws IOException {
+		SortableCurrencyRates table = new SortableCurrencyRates();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		//anticipate invalid lines
+		try {
+			String line;
+			int lineNumber = 0;
+			//for each line
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				//if it is blank or a comment, skip it
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				int separator = line.indexOf('=');
+				//if there is no rate, the file is invalid
+				if (separator <= 0) {
+					throw new IOException("Invalid rate at line "+lineNumber+" of "+file+": "+line);
+				}
+				//anticipate invalid numbers
+				try {
+					table.setRate(line.substring(0,separator).trim(),Double.parseDouble(line.substring(separator+1).trim()));
+				}
+				catch(NumberFormatException e) {
+					throw new IOException("Invalid rate at line "+lineNumber+" of "+file+": "+line);
+				}
+			}
+		}
+		//close the reader
+		finally {
+			reader.close();
+		}
+		return table;
+	}
+}
\ No newline at end of file
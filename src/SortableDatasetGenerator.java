@@ -0,0 +1,321 @@
+import tom.data.HashTable;
+import tom.string.json.JSONDocument;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+*** SortableDatasetGenerator class
+*** Generates known products and 3rd party product listings files, in the newline delimited JSON of the sample files, at any size for load testing.
+*** The generated data is derived from a sample pair of files: the first products are the sample products, and later products are variants of them
+*** with new models. Listings are built from the sample listings: the share of listings from manufacturers with no known product, the share of
+*** accessory titles "for" a product, the share of duplicated listings, the share of titles naming the family, the manufacturer names, title
+*** endings, currencies and prices are all taken from the sample. Accessories keep their sample seller and price, and name a generated product
+*** after "for". Popular products get more listings than others.
+*** Every record is a function of the seed and its index only, so a run is reproducible and records are streamed to the files without being held.
+**/
+
+public class SortableDatasetGenerator {
+	///The hash salts of the random choices made for each record.
+	private static final int PRODUCT_BASE = 1, PRODUCT_PRICE = 2, DUPLICATE = 3, DUPLICATE_DISTANCE = 4, KIND = 5, FOREIGN = 6, PRODUCT = 7, TEMPLATE = 8, ACCESSORY = 9, FAMILY = 10, SUFFIX = 11, PRICE_VARIATION = 12, PRODUCT_ORDER = 13;
+	///The furthest back, in records, a duplicated listing is copied from.
+	private static final int DUPLICATE_WINDOW = 64;
+	///The sample known products.
+	private final String[][] sampleProducts;
+	///The sample listings from manufacturers with no known product, as title, manufacturer, currency and price.
+	private final ArrayList<String[]> foreignListings = new ArrayList<String[]>();
+	///The endings of the sample listing titles, after the first word containing a digit.
+	private final ArrayList<String> titleTails = new ArrayList<String>();
+	///The sample accessory listings "for" a product, as the title text before "for", manufacturer, currency and price.
+	private final ArrayList<String[]> accessoryListings = new ArrayList<String[]>();
+	///The text after the first word of the sample listing manufacturers, which is empty for most.
+	private final ArrayList<String> manufacturerSuffixes = new ArrayList<String>();
+	///The currencies and prices of the sample listings from known manufacturers.
+	private final ArrayList<String[]> prices = new ArrayList<String[]>();
+	///The share of sample listings from manufacturers with no known product, other than accessories.
+	private double foreignRate;
+	///The share of sample listings with an accessory title.
+	private double accessoryRate;
+	///The share of sample listings that repeat the title of an earlier listing.
+	private double duplicateRate;
+	///The share of sample listings from known manufacturers whose titles name a known family.
+	private double familyRate;
+	///The seed of the generated data.
+	private final long seed;
+	/** Constructs a new SortableDatasetGenerator deriving its data from the given sample products and listings files, with the given seed. **/
+	public SortableDatasetGenerator(String sampleProductsFile,String sampleListingsFile,long seed) throws IOException {
+		this.seed = seed;
+		//read the sample products
+		SortableCatalog catalog = SortableCatalog.read(sampleProductsFile,0);
+		sampleProducts = new String[catalog.getProductCount()][];
+		//keep the known manufacturers and families, upper case, to classify the sample listings
+		HashTable<String> manufacturers = new HashTable<String>((int)(catalog.getProductCount()*1.25));
+		ArrayList<String> families = new ArrayList<String>();
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			SortableProduct product = catalog.getProduct(i);
+			sampleProducts[i] = new String[] {product.getName(),product.getManufacturer(),product.getModel(),product.getFamily(),product.getAnnouncedDate()};
+			manufacturers.add(getFirstWord(product.getManufacturer()).toUpperCase(Locale.ROOT),product.getManufacturer());
+			//if the product has a family not kept yet, keep it
+			String family = ( product.getFamily() == null ? null : product.getFamily().toUpperCase(Locale.ROOT) );
+			if (family != null && family.length() >= 3 && !families.contains(family)) {
+				families.add(family);
+			}
+		}
+		//read the sample listings
+		JSONDocument jsonListings = new JSONDocument(sampleListingsFile);
+		HashTable<String> titles = new HashTable<String>((int)(jsonListings.getChildCount()*1.25));
+		int known = 0, duplicates = 0, familyTitles = 0;
+		for (int i = 0; i != jsonListings.getChildCount(); i++) {
+			SortableListing listing = SortableListing.read(jsonListings.getData(i));
+			String title = ( listing.getTitle() == null ? "" : listing.getTitle() );
+			String manufacturer = ( listing.getManufacturer() == null ? "" : listing.getManufacturer() );
+			//if the title has been seen before, count the duplicate
+			if (titles.get(title) != null) {
+				duplicates++;
+			}
+			else {
+				titles.add(title,title);
+			}
+			String upperTitle = title.toUpperCase(Locale.ROOT);
+			//if the title has "for" between separators, keep the text before it and the seller as an accessory
+			int forBoundary = SortableProductMatcher.getForBoundary(upperTitle);
+			if (forBoundary != SortableProductMatcher.FOR_NONE && forBoundary != SortableProductMatcher.FOR_UNSCANNABLE && upperTitle.length() == title.length()) {
+				accessoryListings.add(new String[] {title.substring(0,forBoundary-4).trim(),manufacturer,listing.getCurrency(),listing.getPrice()});
+				continue;
+			}
+			//if the manufacturer has no known product, keep the whole listing to copy
+			if (manufacturers.get(getFirstWord(manufacturer).toUpperCase(Locale.ROOT)) == null) {
+				foreignListings.add(new String[] {title,manufacturer,listing.getCurrency(),listing.getPrice()});
+				continue;
+			}
+			known++;
+			//keep the manufacturer suffix, the currency and price, and the title ending
+			manufacturerSuffixes.add(manufacturer.substring(getFirstWord(manufacturer).length()));
+			if (listing.getCurrency() != null && listing.getPriceValue() > 0) {
+				prices.add(new String[] {listing.getCurrency(),listing.getPrice()});
+			}
+			titleTails.add(getTail(title));
+			//if the title names a known family, count it
+			for (int ii = 0; ii != families.size(); ii++) {
+				if (upperTitle.contains(families.get(ii))) {
+					familyTitles++;
+					break;
+				}
+			}
+		}
+		//if there are no listings from known manufacturers, generate them with plain titles
+		if (known == 0) {
+			prices.add(new String[] {"USD","100.00"});
+			manufacturerSuffixes.add("");
+			titleTails.add("");
+		}
+		else if (prices.isEmpty()) {
+			prices.add(new String[] {"USD","100.00"});
+		}
+		//derive the rates from the counts
+		int count = Math.max(jsonListings.getChildCount(),1);
+		foreignRate = foreignListings.size() / (double)count;
+		accessoryRate = accessoryListings.size() / (double)count;
+		duplicateRate = duplicates / (double)count;
+		familyRate = familyTitles / (double)Math.max(known,1);
+	}
+	/** Returns the first word of the given string, before the first space. **/
+	private static String getFirstWord(String string) {
+		int space = string.indexOf(' ');
+		return ( space == -1 ? string : string.substring(0,space) );
+	}
+	/** Returns the ending of the given title after the first word containing a digit, or after the second word if no word contains one. **/
+	private static String getTail(String title) {
+		String[] words = title.split(" ");
+		int start = Math.min(2,words.length);
+		//for each word, if it contains a digit, the ending starts after it
+		for (int i = 0; i != words.length; i++) {
+			if (words[i].matches(".*[0-9].*")) {
+				start = i+1;
+				break;
+			}
+		}
+		StringBuilder tail = new StringBuilder();
+		for (int i = start; i < words.length; i++) {
+			tail.append(( tail.length() == 0 ? "" : " " )).append(words[i]);
+		}
+		return tail.toString();
+	}
+	/** Returns a well mixed hash of the seed, the record index and the salt of the choice being made, using the SplitMix64 finalizer. **/
+	private long hash(long index,int salt) {
+		long z = seed + index*0x9E3779B97F4A7C15L + salt*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	/** Returns a number from 0 (inclusive) to 1 (exclusive) for the given record index and salt. **/
+	private double unit(long index,int salt) {
+		return (hash(index,salt) >>> 11) * 0x1.0p-53;
+	}
+	/** Returns a number from 0 (inclusive) to the given bound (exclusive) for the given record index and salt. **/
+	private int choose(long index,int salt,int bound) {
+		return (int)((hash(index,salt) >>> 1) % bound);
+	}
+	/** Returns the name, manufacturer, model, family and announced date of the known product at the given index. The family is null for products without one. **/
+	public String[] getProduct(long i) {
+		int sampleCount = sampleProducts.length;
+		//the first products are the sample products
+		if (i < sampleCount) {
+			return sampleProducts[(int)i];
+		}
+		//later products are new models of a sample product, named by a letter suffix for the generation. each generation takes every sample
+		//product once, in an order shuffled by a seeded affine permutation, so no two products of a generation share a base and a name
+		long generation = i / sampleCount;
+		long step = 1 + choose(generation,PRODUCT_BASE,sampleCount);
+		while (gcd(step,sampleCount) != 1) {
+			step++;
+		}
+		long offset = choose(generation,PRODUCT_ORDER,sampleCount);
+		String[] base = sampleProducts[(int)(((i % sampleCount) * step + offset) % sampleCount)];
+		String model = base[2]+getLetters(generation);
+		//the name is the base product's name with the suffix after an underscore, as sample products can share a manufacturer, family and model under
+		//different names, and a sample name can end in a suffix letter
+		String name = base[0]+"_"+getLetters(generation);
+		return new String[] {name,base[1],model,base[3],base[4]};
+	}
+	/** Returns the greatest common divisor of the given positive numbers. **/
+	private static long gcd(long a,long b) {
+		while (b != 0) {
+			long remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+	/** Returns the given positive number in bijective base 26 letters: 1 is A, 26 is Z, 27 is AA. **/
+	private static String getLetters(long number) {
+		StringBuilder letters = new StringBuilder();
+		while (number > 0) {
+			number--;
+			letters.insert(0,(char)('A' + number % 26));
+			number/= 26;
+		}
+		return letters.toString();
+	}
+	/** Returns the title, manufacturer, currency and price of the listing at the given index, among listings of the given number of known products. **/
+	public String[] getListing(long i,long productCount) {
+		//if the listing is a duplicate, follow it back to the listing it copies
+		while (i > 0 && unit(i,DUPLICATE) < duplicateRate) {
+			i-= 1 + choose(i,DUPLICATE_DISTANCE,(int)Math.min(i,DUPLICATE_WINDOW));
+		}
+		//if it is from a manufacturer with no known product, copy a sample listing
+		double kind = unit(i,KIND);
+		if (kind < foreignRate) {
+			return foreignListings.get(choose(i,FOREIGN,foreignListings.size()));
+		}
+		//choose the product, skewed towards the first products so a few popular ones have many listings
+		double u = unit(i,PRODUCT);
+		long p = (long)(productCount*u*u);
+		String[] product = getProduct(p);
+		//if it is an accessory, keep the sample seller and price, and name the product after "for"
+		if (kind < foreignRate + accessoryRate) {
+			String[] accessory = accessoryListings.get(choose(i,ACCESSORY,accessoryListings.size()));
+			return new String[] {accessory[0]+" for "+product[1]+" "+product[2],accessory[1],accessory[2],accessory[3]};
+		}
+		String manufacturer = product[1]+manufacturerSuffixes.get(choose(i,SUFFIX,manufacturerSuffixes.size()));
+		//else name the product, followed by a sample title ending, priced near a price chosen for the product
+		String family = ( product[3] != null && unit(i,FAMILY) < familyRate ? " "+product[3] : "" );
+		String tail = titleTails.get(choose(i,TEMPLATE,titleTails.size()));
+		String title = product[1]+family+" "+product[2]+( tail.length() == 0 ? "" : " "+tail );
+		String[] price = prices.get(choose(p,PRODUCT_PRICE,prices.size()));
+		double value = Double.parseDouble(price[1]) * (0.85 + 0.3*unit(i,PRICE_VARIATION));
+		return new String[] {title,manufacturer,price[0],String.format(Locale.ROOT,"%.2f",value)};
+	}
+	/** Writes the given number of known products to the given writer, one JSON object per line. **/
+	public void writeProducts(Writer writer,long count) throws IOException {
+		//for each product
+		for (long i = 0; i != count; i++) {
+			String[] product = getProduct(i);
+			writer.write("{\"product_name\":\""+product[0]+"\",\"manufacturer\":\""+product[1]+"\",\"model\":\""+product[2]+"\"");
+			if (product[3] != null) {
+				writer.write(",\"family\":\""+product[3]+"\"");
+			}
+			if (product[4] != null) {
+				writer.write(",\"announced-date\":\""+product[4]+"\"");
+			}
+			writer.write("}\n");
+		}
+	}
+	/** Writes the given number of listings of the given number of known products to the given writer, one JSON object per line. **/
+	public void writeListings(Writer writer,long count,long productCount) throws IOException {
+		//for each listing
+		for (long i = 0; i != count; i++) {
+			String[] listing = getListing(i,productCount);
+			writer.write("{\"title\":\""+listing[0]+"\",\"manufacturer\":\""+listing[1]+"\"");
+			if (listing[2] != null) {
+				writer.write(",\"currency\":\""+listing[2]+"\"");
+			}
+			if (listing[3] != null) {
+				writer.write(",\"price\":\""+listing[3]+"\"");
+			}
+			writer.write("}\n");
+		}
+	}
+	/** Returns the rates derived from the sample, as text. **/
+	public String getRates() {
+		return String.format(Locale.ROOT,"Sample rates: %.1f%% unknown manufacturers, %.1f%% accessories, %.1f%% duplicates, %.1f%% naming the family",
+			foreignRate*100,accessoryRate*100,duplicateRate*100,familyRate*100);
+	}
+	/** Main method. Generates the files given in the arguments. **/
+	public static void main(String[] args) {
+		//if there are too few arguments, output the syntax
+		if (args.length < 6) {
+			System.out.println("Insufficient parameters.\r\nSyntax: <sample known products file> <sample 3rd party product file> <known products output file> <3rd party product output file> <product count> <listing count> [seed]");
+			return;
+		}
+		System.out.println("generating...");
+		long c = System.currentTimeMillis();
+		//anticipate IO errors and invalid numbers
+		try {
+			long productCount = Long.parseLong(args[4]);
+			long listingCount = Long.parseLong(args[5]);
+			long seed = ( args.length >= 7 ? Long.parseLong(args[6]) : 0 );
+			//if there are listings, there must be products for them
+			if (productCount < 1 || listingCount < 0) {
+				System.out.println("The product count must be at least 1 and the listing count at least 0.");
+				return;
+			}
+			SortableDatasetGenerator generator = new SortableDatasetGenerator(args[0],args[1],seed);
+			System.out.println(generator.getRates());
+			//stream the products and listings to the files
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]),JSONDocument.CHARSET),1 << 20);
+			try {
+				generator.writeProducts(writer,productCount);
+			}
+			finally {
+				writer.close();
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[3]),JSONDocument.CHARSET),1 << 20);
+			try {
+				generator.writeListings(writer,listingCount,productCount);
+			}
+			finally {
+				writer.close();
+			}
+			System.out.println("complete. Generated "+productCount+" products and "+listingCount+" listings. Time taken: "+((System.currentTimeMillis()-c)/1000)+"secs.");
+		}
+		//catch invalid numbers
+		catch(NumberFormatException e) {
+			System.out.println("Invalid count or seed: "+e.getMessage());
+		}
+		//catch IO errors
+		catch(IOException e) {
+			//output the error to the console
+			e.printStackTrace();
+			System.out.println("An IO error occurred.");
+		}
+	}
+}
\ No newline at end of file
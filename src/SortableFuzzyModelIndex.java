@@ -0,0 +1,392 @@
+import tom.data.HashTable;
+import tom.data.IntList;
+import tom.string.TokenizedString;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+*** SortableFuzzyModelIndex class
+*** A symmetric delete index of the models of the known products of a catalog, which finds the products whose models are within a maximum edit
+*** distance of the text of a listing, for the fuzzy match tier. Models and listing text are compared compacted: upper case with the separators
+*** removed, so "DSC-W310", "DSC W310" and "DSCW310" are equal, and "SX130IS" is one edit from "SX130 IS S".
+*** A match must keep the digits in the same order and the letters before the first digit, which name the product line ("M530" and "V530",
+*** "JV200" and "JX200" are different products), so only the letters after the first digit and the separators can differ.
+*** Each model is stored under every string formed by deleting up to the maximum distance of its letters after the first digit. The same deletes
+*** of a query are looked up, which finds every model within the distance with a number of lookups that depends on the length of the query, not
+*** on the number of products. Each model found is then checked with the optimal string alignment distance, which counts an adjacent
+*** transposition as one edit.
+*** Only models of at least MIN_LENGTH characters with a digit are indexed, and a model is only matched within two edits fewer than half its
+*** length, up to the maximum distance, as short models are within a few edits of too many words.
+*** The queries of a listing are its model and each run of up to MAX_TOKENS adjacent tokens of its title and name, other than those after "for",
+*** or after the German and French "f\u00FCr" and "pour" of accessories listed by the products they fit.
+*** The index is immutable once built, so it can be shared between threads, each searching it with its own Scratch of working buffers.
+**/
+
+public class SortableFuzzyModelIndex {
+	///The largest maximum edit distance, as the number of deletes stored grows with the power of the distance.
+	public static final int MAX_DISTANCE = 3;
+	///The length of the shortest model indexed.
+	public static final int MIN_LENGTH = 4;
+	///The most adjacent tokens of a title or name joined into a query, as a model may be split into several tokens.
+	public static final int MAX_TOKENS = 3;
+	///The upper case words other than "for" after which a title or name lists the products an accessory fits.
+	private static final String[] ACCESSORY_WORDS = {"F\u00DCR","POUR"};
+	/**
+	*** Scratch class
+	*** The working buffers of the searches of one thread: the compacted query, a buffer for the deletes of each length, and the rows of the
+	*** distance, so a search allocates nothing. The index is shared between threads, so each creates its own with createScratch().
+	**/
+	public static class Scratch {
+		///The compacted query, and its length.
+		private final char[] query;
+		private int queryLength = 0;
+		///The buffer of the deletes of the query with one more character deleted than the index.
+		private final char[][] deletes;
+		///The rows of the distance: the one before the previous, the previous and the current.
+		private int[] previous2;
+		private int[] previous;
+		private int[] current;
+		/** Constructs a new Scratch for queries of up to the given length and the given maximum distance. **/
+		private Scratch(int length,int maxDistance) {
+			this.query = new char[length];
+			this.deletes = new char[maxDistance][length];
+			this.previous2 = new int[length+1];
+			this.previous = new int[length+1];
+			this.current = new int[length+1];
+		}
+		/**
+		*** Returns whether the query and the given compacted model have the same letters before the first digit, the same digits in the same
+		*** order, and are within the given edit distance.
+		**/
+		private boolean isMatch(String model,int distance) {
+			int length = queryLength;
+			if (Math.abs(length - model.length()) > distance) {
+				return false;
+			}
+			//compare the letters before the first digit, which must be equal
+			int prefix = getPrefixLength(query,length);
+			if (prefix != getPrefixLength(model)) {
+				return false;
+			}
+			for (int i = 0; i != prefix; i++) {
+				if (query[i] != model.charAt(i)) {
+					return false;
+				}
+			}
+			//compare the digits in order, skipping the letters between them
+			int i = prefix;
+			int ii = prefix;
+			while (true) {
+				while (i != length && (query[i] < '0' || query[i] > '9')) { i++; }
+				while (ii != model.length() && (model.charAt(ii) < '0' || model.charAt(ii) > '9')) { ii++; }
+				if (i == length || ii == model.length()) {
+					break;
+				}
+				if (query[i++] != model.charAt(ii++)) {
+					return false;
+				}
+			}
+			return ( i == length && ii == model.length() && getDistance(model,distance) <= distance );
+		}
+		/**
+		*** Returns the optimal string alignment distance between the query and the given model: the fewest insertions, deletions, substitutions
+		*** and adjacent transpositions turning one into the other, where no character is edited twice. Returns more than the given limit once
+		*** it is exceeded.
+		**/
+		private int getDistance(String b,int limit) {
+			char[] a = query;
+			int length = queryLength;
+			for (int ii = 0; ii <= b.length(); ii++) {
+				previous[ii] = ii;
+			}
+			//for each character of the query, compute the distances to each prefix of the model from the previous rows
+			for (int i = 1; i <= length; i++) {
+				current[0] = i;
+				int rowMin = current[0];
+				for (int ii = 1; ii <= b.length(); ii++) {
+					int cost = ( a[i-1] == b.charAt(ii-1) ? 0 : 1 );
+					int distance = Math.min(Math.min(previous[ii] + 1,current[ii-1] + 1),previous[ii-1] + cost);
+					//if the last two characters are swapped, a transposition is one edit
+					if (i > 1 && ii > 1 && a[i-1] == b.charAt(ii-2) && a[i-2] == b.charAt(ii-1)) {
+						distance = Math.min(distance,previous2[ii-2] + 1);
+					}
+					current[ii] = distance;
+					rowMin = Math.min(rowMin,distance);
+				}
+				//if every distance of the row exceeds the limit, the final distance does too
+				if (rowMin > limit) {
+					return limit + 1;
+				}
+				int[] rotate = previous2;
+				previous2 = previous;
+				previous = current;
+				current = rotate;
+			}
+			return previous[b.length()];
+		}
+	}
+	///The maximum edit distance of a match.
+	private final int maxDistance;
+	///The number of products indexed.
+	private final int productCount;
+	///The compacted model of each product, or null if the product is not indexed.
+	private final String[] models;
+	///The edit distance each product's model is matched within.
+	private final int[] modelDistances;
+	///The length of the longest compacted model indexed.
+	private final int maxLength;
+	///The deletes, at the slot of their hash, or null for empty slots.
+	private final String[] keys;
+	///The indexes of the products with the delete at the same slot.
+	private final int[][] products;
+	///The mask giving a slot from a hash.
+	private final int mask;
+	/** Builds the index of the given catalog for the given maximum edit distance, from 1 to MAX_DISTANCE. **/
+	public SortableFuzzyModelIndex(SortableCatalog catalog,int maxDistance) {
+		if (maxDistance < 1 || maxDistance > MAX_DISTANCE) {
+			throw new IllegalArgumentException("The fuzzy edit distance must be from 1 to "+MAX_DISTANCE+": "+maxDistance);
+		}
+		this.maxDistance = maxDistance;
+		this.productCount = catalog.getProductCount();
+		this.models = new String[productCount];
+		this.modelDistances = new int[productCount];
+		//gather the products of each distinct delete
+		HashTable<IntList> deleteProducts = new HashTable<IntList>(Math.max(productCount*8,20));
+		ArrayList<String> deleteKeys = new ArrayList<String>();
+		int longest = 0;
+		//for each product with a model long enough to index
+		for (int i = 0; i != productCount; i++) {
+			TokenizedString model = catalog.getProduct(i).getNormalizedModel();
+			String compact = ( model == null ? null : compact(model,0,model.getTokenCount()) );
+			if (compact == null || compact.length() < MIN_LENGTH || !hasDigit(compact)) {
+				continue;
+			}
+			models[i] = compact;
+			modelDistances[i] = getModelDistance(compact.length());
+			longest = Math.max(longest,compact.length());
+			//store the product under each of its deletes within its distance
+			HashSet<String> deletes = new HashSet<String>();
+			addDeletes(compact,modelDistances[i],deletes);
+			for (String delete : deletes) {
+				IntList list = deleteProducts.get(delete);
+				if (list == null) {
+					list = new IntList(2);
+					deleteProducts.add(delete,list);
+					deleteKeys.add(delete);
+				}
+				list.add(i);
+			}
+		}
+		this.maxLength = longest;
+		//size the table to at most half full, and store each delete at the first free slot from its hash
+		int capacity = 16;
+		while (capacity < deleteKeys.size()*2) { capacity<<= 1; }
+		keys = new String[capacity];
+		products = new int[capacity][];
+		mask = capacity - 1;
+		for (int i = 0; i != deleteKeys.size(); i++) {
+			String delete = deleteKeys.get(i);
+			int slot = spread(delete.hashCode()) & mask;
+			while (keys[slot] != null) { slot = (slot + 1) & mask; }
+			keys[slot] = delete;
+			products[slot] = deleteProducts.get(delete).toArray();
+		}
+	}
+	/** Returns the maximum edit distance of a match. **/
+	public int getMaxDistance() {
+		return maxDistance;
+	}
+	/** Returns the number of products indexed, which is the length the candidate flags array must have. **/
+	public int getProductCount() {
+		return productCount;
+	}
+	/** Returns the edit distance a model of the given length is matched within: the maximum distance, or two edits fewer than half its length if that is less. **/
+	private int getModelDistance(int length) {
+		return Math.min(maxDistance,(length - 2) / 2);
+	}
+	/** Returns a new Scratch for searching the index on one thread. **/
+	public Scratch createScratch() {
+		return new Scratch(maxLength + maxDistance,maxDistance);
+	}
+	/**
+	*** Sets the flag of every product whose model is within the maximum edit distance of the given listing's model or of a run of adjacent tokens
+	*** of its title or name, other than after "for", "f\u00FCr" or "pour". The flags set for the previous listing, listed in the marked list, are
+	*** cleared first, and the newly set flags are listed in it. The queries are built in the given Scratch, so the search allocates nothing.
+	**/
+	public void findCandidates(SortableListing listing,Scratch scratch,boolean[] candidates,IntList marked) {
+		//clear the flags of the previous listing
+		for (int i = 0; i != marked.getSize(); i++) {
+			candidates[marked.get(i)] = false;
+		}
+		marked.clear();
+		TokenizedString model = listing.getNormalizedModel();
+		if (model != null && getCompactLength(model,0,model.getTokenCount()) <= maxLength + maxDistance) {
+			find(scratch,compact(model,0,model.getTokenCount(),scratch.query),candidates,marked);
+		}
+		findCandidates(listing.getNormalizedTitle(),listing.getTitleForBoundary(),scratch,candidates,marked);
+		findCandidates(listing.getNormalizedName(),listing.getNameForBoundary(),scratch,candidates,marked);
+	}
+	/** Sets the flags of the products within the maximum edit distance of each run of adjacent tokens of the given subject before its "for" boundary and its first accessory word. **/
+	private void findCandidates(TokenizedString subject,int forBoundary,Scratch scratch,boolean[] candidates,IntList marked) {
+		//if the subject is not specified or cannot be scanned for "for", it gives no queries
+		if (subject == null || forBoundary == SortableProductMatcher.FOR_UNSCANNABLE) {
+			return;
+		}
+		//for each token before the "for" boundary and the first accessory word, join it with the tokens after it while the query can be within the distance of a model
+		for (int i = 0; i != subject.getTokenCount() && subject.getTokenStart(i) < forBoundary && !isAccessoryWord(subject,i); i++) {
+			int length = 0;
+			for (int ii = i; ii != subject.getTokenCount() && ii-i != MAX_TOKENS; ii++) {
+				length+= subject.getTokenEnd(ii) - subject.getTokenStart(ii);
+				if (length > maxLength + maxDistance) {
+					break;
+				}
+				find(scratch,compact(subject,i,ii+1,scratch.query),candidates,marked);
+			}
+		}
+	}
+	/** Sets the flags of the products whose models are within the maximum edit distance of the compacted query of the given length in the Scratch, listing them in the marked list. **/
+	private void find(Scratch scratch,int length,boolean[] candidates,IntList marked) {
+		//if the query is too short or too long to be within the distance of an indexed model, or has no digit to keep, there is nothing to find
+		if (length < MIN_LENGTH - 1 || length > maxLength + maxDistance || !hasDigit(scratch.query,length)) {
+			return;
+		}
+		scratch.queryLength = length;
+		//look up the query and each of its deletes
+		findDeletes(scratch,scratch.query,length,getPrefixLength(scratch.query,length),0,candidates,marked);
+	}
+	/**
+	*** Looks up the given string of the given length, then each string formed by deleting one more of its letters from the given index, up to
+	*** the maximum distance. Each delete is formed once, by deleting letters in order, in the buffer of the Scratch for its number of deletes.
+	**/
+	private void findDeletes(Scratch scratch,char[] string,int length,int from,int deleted,boolean[] candidates,IntList marked) {
+		lookUp(scratch,string,length,candidates,marked);
+		if (deleted == maxDistance) {
+			return;
+		}
+		char[] delete = scratch.deletes[deleted];
+		for (int i = from; i != length; i++) {
+			//digits are never deleted
+			if (string[i] >= '0' && string[i] <= '9') {
+				continue;
+			}
+			System.arraycopy(string,0,delete,0,i);
+			System.arraycopy(string,i+1,delete,i,length-i-1);
+			findDeletes(scratch,delete,length-1,i,deleted+1,candidates,marked);
+		}
+	}
+	/** Checks each product stored under the given delete of the given length that is not already flagged against the query, flagging those that match. **/
+	private void lookUp(Scratch scratch,char[] delete,int length,boolean[] candidates,IntList marked) {
+		//hash the delete as String.hashCode() does, as the keys were stored by it
+		int hash = 0;
+		for (int i = 0; i != length; i++) {
+			hash = 31 * hash + delete[i];
+		}
+		for (int slot = spread(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (isEqual(keys[slot],delete,length)) {
+				int[] found = products[slot];
+				for (int i = 0; i != found.length; i++) {
+					int product = found[i];
+					if (!candidates[product] && scratch.isMatch(models[product],modelDistances[product])) {
+						candidates[product] = true;
+						marked.add(product);
+					}
+				}
+				return;
+			}
+		}
+	}
+	/** Adds the given string and every string formed by deleting up to the given number of its letters after the first digit to the given set. **/
+	private static void addDeletes(String string,int distance,Set<String> deletes) {
+		addDeletes(string,getPrefixLength(string),distance,deletes);
+	}
+	/** Adds the given string and every string formed by deleting up to the given number of its characters other than digits from the given index to the given set. **/
+	private static void addDeletes(String string,int start,int distance,Set<String> deletes) {
+		//if the string was already added, its deletes were too
+		if (!deletes.add(string) || distance == 0) {
+			return;
+		}
+		for (int i = start; i != string.length(); i++) {
+			//digits are never deleted
+			if (string.charAt(i) >= '0' && string.charAt(i) <= '9') {
+				continue;
+			}
+			addDeletes(string.substring(0,i)+string.substring(i+1),start,distance-1,deletes);
+		}
+	}
+	/** Returns the tokens of the given upper case string from the first index to the second (exclusive) joined without their separators. **/
+	private static String compact(TokenizedString string,int start,int end) {
+		//a single token is a substring
+		if (end - start == 1) {
+			return string.getToken(start);
+		}
+		StringBuilder compact = new StringBuilder();
+		for (int i = start; i != end; i++) {
+			compact.append(string.getValue(),string.getTokenStart(i),string.getTokenEnd(i));
+		}
+		return compact.toString();
+	}
+	/** Copies the tokens of the given upper case string from the first index to the second (exclusive) into the given buffer without their separators, returning their length. **/
+	private static int compact(TokenizedString string,int start,int end,char[] destination) {
+		int length = 0;
+		for (int i = start; i != end; i++) {
+			string.getValue().getChars(string.getTokenStart(i),string.getTokenEnd(i),destination,length);
+			length+= string.getTokenEnd(i) - string.getTokenStart(i);
+		}
+		return length;
+	}
+	/** Returns the length of the tokens of the given string from the first index to the second (exclusive) without their separators. **/
+	private static int getCompactLength(TokenizedString string,int start,int end) {
+		int length = 0;
+		for (int i = start; i != end; i++) {
+			length+= string.getTokenEnd(i) - string.getTokenStart(i);
+		}
+		return length;
+	}
+	/** Returns whether the given string has a digit. **/
+	private static boolean hasDigit(String string) {
+		return getPrefixLength(string) != string.length();
+	}
+	/** Returns whether the first given number of characters of the given buffer have a digit. **/
+	private static boolean hasDigit(char[] string,int length) {
+		return getPrefixLength(string,length) != length;
+	}
+	/** Returns the number of characters of the given string before its first digit, or its length if it has none. **/
+	private static int getPrefixLength(String string) {
+		int i = 0;
+		while (i != string.length() && (string.charAt(i) < '0' || string.charAt(i) > '9')) { i++; }
+		return i;
+	}
+	/** Returns the number of the first given number of characters of the given buffer before the first digit, or the length if there is none. **/
+	private static int getPrefixLength(char[] string,int length) {
+		int i = 0;
+		while (i != length && (string[i] < '0' || string[i] > '9')) { i++; }
+		return i;
+	}
+	/** Returns whether the given string is equal to the first given number of characters of the given buffer. **/
+	private static boolean isEqual(String string,char[] buffer,int length) {
+		if (string.length() != length) {
+			return false;
+		}
+		for (int i = 0; i != length; i++) {
+			if (string.charAt(i) != buffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/** Returns whether the token at the given index of the given upper case string is a word after which an accessory lists the products it fits. **/
+	private static boolean isAccessoryWord(TokenizedString string,int token) {
+		for (int i = 0; i != ACCESSORY_WORDS.length; i++) {
+			if (string.tokenEquals(token,ACCESSORY_WORDS[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/** Returns the given hash with its high bits mixed into its low bits, as only the low bits select a slot. **/
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+/**
+*** SortableHeapListingStore class
+*** A SortableListingStore holding a SortableListing object for each listing on the heap.
+**/
+
+public class SortableHeapListingStore implements SortableListingStore {
+	///The listings.
+	private final SortableListing[] listings;
+	/** Constructs a new SortableHeapListingStore for the given listings. The array is used directly and must not be modified. **/
+	public SortableHeapListingStore(SortableListing[] listings) {
+		this.listings = listings;
+	}
+	/** Returns the number of listings. **/
+	public int getListingCount() {
+		return listings.length;
+	}
+	/** Returns the listing at the given index. The listing to reuse is ignored, as each listing is its own object. **/
+	public SortableListing getListing(int i,SortableListing reuse) {
+		return listings[i];
+	}
+}
\ No newline at end of file
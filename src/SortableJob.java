@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+*** SortableJob class
+*** Controls a matching run through its parse, match and write phases: it reports progress to a listener, can be cancelled from any thread,
+*** stops itself at a deadline, and records the completed blocks of listings in a SortableCheckpoint so a stopped or killed run can resume.
+*** Cancellation is cooperative: the workers check isStopped() before claiming each block, so a stopped run finishes the blocks it has
+*** already claimed, recording them in the checkpoint, and then returns without writing the output.
+**/
+
+public class SortableJob {
+	/**
+	*** Phase enum
+	*** The phases of a run, in order.
+	**/
+	public enum Phase {
+		PARSE,
+		MATCH,
+		WRITE,
+		FINISHED
+	}
+	/**
+	*** ProgressListener interface
+	*** Receives the progress of a job. It is called at the start of each phase, then at most once per progress interval from whichever worker
+	*** thread completes a block, so it must be thread safe and should return quickly.
+	**/
+	public interface ProgressListener {
+		/** Called with the job whose progress has changed. **/
+		public void progress(SortableJob job);
+	}
+	///The current phase.
+	private volatile Phase phase = Phase.PARSE;
+	///Whether the job has been cancelled.
+	private volatile boolean isCancelled = false;
+	///The time in milliseconds at which the job stops itself, or Long.MAX_VALUE for none.
+	private volatile long deadline = Long.MAX_VALUE;
+	///The number of records done in the current phase.
+	private final AtomicLong done = new AtomicLong();
+	///The number of records in the current phase, or -1 if unknown.
+	private volatile long total = -1;
+	///The time in milliseconds at which the current phase started.
+	private volatile long phaseStart = System.currentTimeMillis();
+	///The number of records already done when the current phase started, such as those restored from a checkpoint.
+	private volatile long phaseDoneStart = 0;
+	///The listener receiving the progress, or null.
+	private ProgressListener listener = null;
+	///The minimum time in milliseconds between progress reports.
+	private long progressInterval = 1000;
+	///The time in milliseconds after which the next progress report is due.
+	private final AtomicLong nextProgress = new AtomicLong();
+	///The checkpoint recording the completed blocks, or null.
+	private SortableCheckpoint checkpoint = null;
+	///The lock signalled when the job finishes or stops.
+	private final Object finishLock = new Object();
+	///Whether the run has returned, finished or stopped.
+	private boolean isEnded = false;
+	/** Constructs a new SortableJob with no deadline, listener or checkpoint. **/
+	public SortableJob() {
+	}
+	/** Cancels the job. The workers stop before claiming their next block. **/
+	public void cancel() {
+		isCancelled = true;
+	}
+	/** Returns whether the job has been cancelled. **/
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+	/** Sets the time in milliseconds, as given by System.currentTimeMillis(), at which the job stops itself. **/
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	/** Returns the time in milliseconds at which the job stops itself, or Long.MAX_VALUE for none. **/
+	public long getDeadline() {
+		return deadline;
+	}
+	/** Returns whether the deadline has passed. **/
+	public boolean isDeadlinePassed() {
+		return ( deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline );
+	}
+	/** Returns whether the job should stop, because it was cancelled or its deadline has passed. **/
+	public boolean isStopped() {
+		return ( isCancelled || isDeadlinePassed() );
+	}
+	/** Sets the listener receiving the progress, with the minimum time in milliseconds between reports. **/
+	public void setProgressListener(ProgressListener listener,long progressInterval) {
+		this.listener = listener;
+		this.progressInterval = progressInterval;
+	}
+	/** Sets the checkpoint recording the completed blocks. **/
+	public void setCheckpoint(SortableCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+	/** Returns the checkpoint recording the completed blocks, or null. **/
+	public SortableCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+	/** Starts the given phase with the given number of records, or -1 if unknown, of which the given number are already done. **/
+	public void beginPhase(Phase phase,long total,long alreadyDone) {
+		this.phase = phase;
+		this.total = total;
+		this.done.set(alreadyDone);
+		this.phaseDoneStart = alreadyDone;
+		this.phaseStart = System.currentTimeMillis();
+		nextProgress.set(phaseStart + progressInterval);
+		//report the start of the phase
+		if (listener != null) {
+			listener.progress(this);
+		}
+	}
+	/** Returns the current phase. **/
+	public Phase getPhase() {
+		return phase;
+	}
+	/** Returns the number of records done in the current phase. **/
+	public long getDone() {
+		return done.get();
+	}
+	/** Returns the number of records in the current phase, or -1 if unknown. **/
+	public long getTotal() {
+		return total;
+	}
+	/** Returns the number of records done per second in the current phase, not counting those already done when it started. **/
+	public double getRate() {
+		long elapsed = System.currentTimeMillis() - phaseStart;
+		return ( elapsed <= 0 ? 0 : (done.get() - phaseDoneStart) * 1000.0 / elapsed );
+	}
+	/** Returns the estimated time in milliseconds until the current phase completes at the current rate, or -1 if it cannot be estimated. **/
+	public long getRemainingMillis() {
+		double rate = getRate();
+		return ( total < 0 || rate <= 0 ? -1 : (long)((total - done.get()) * 1000 / rate) );
+	}
+	/** Adds the given number of records done, reporting the progress if the progress interval has passed since the last report. **/
+	public void addDone(long count) {
+		done.addAndGet(count);
+		//if a report is due, and no other thread has taken it, report the progress
+		long due = nextProgress.get();
+		long now = System.currentTimeMillis();
+		if (listener != null && now >= due && nextProgress.compareAndSet(due,now + progressInterval)) {
+			listener.progress(this);
+		}
+	}
+	/** Marks the run as ended, whether it finished or stopped, waking any thread waiting for it. **/
+	public void end() {
+		synchronized (finishLock) {
+			isEnded = true;
+			finishLock.notifyAll();
+		}
+	}
+	/** Waits up to the given time in milliseconds for the run to end, returning whether it has. **/
+	public boolean awaitEnd(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		synchronized (finishLock) {
+			//wait until ended or the time is up, as waits can wake early
+			while (!isEnded) {
+				long remaining = end - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				finishLock.wait(remaining);
+			}
+			return true;
+		}
+	}
+}
\ No newline at end of file
@@ -1,3 +1,7 @@
+import tom.string.TokenizedString;
+import tom.string.Tokenizer;
+import tom.string.json.JSONData;
+
 /**
 *** SortableListing class
 *** Represents a product listing.
@@ -6,12 +10,28 @@
 **/
 
 public class SortableListing extends SortableProduct {
+	///The JSON fields read for each listing, in the order they are passed to the constructor: the fields known products have and any additional fields listings have that are relevant for comparison.
+	private static final String[] fields = {"product_name","manufacturer","model","family","announced-date","currency","price","title"};
 	///The title of the listing.
 	private String title;
 	///The currency of the listed product.
 	private String currency;
 	///The price of the listed product.
 	private String price;
+	///The price as a fixed-point long, parsed when first requested.
+	private long priceValue;
+	///Whether the price has been parsed.
+	private boolean isPriceParsed = false;
+	///The upper case and tokenized listing title, created when first requested.
+	private TokenizedString normalizedTitle;
+	///The "for" boundary of the title (see SortableProductMatcher.getForBoundary), found when first requested.
+	private int titleForBoundary;
+	///Whether the "for" boundary of the title has been found.
+	private boolean isTitleScanned = false;
+	///The "for" boundary of the name, found when first requested.
+	private int nameForBoundary;
+	///Whether the "for" boundary of the name has been found.
+	private boolean isNameScanned = false;
 	/** Constructs a new SortableListing. **/
 	public SortableListing() {
 	}
@@ -29,6 +49,37 @@ public class SortableListing extends SortableProduct {
 	/** Sets the listing title. **/
 	public void setTitle(String title) {
 		this.title = title;
+		this.normalizedTitle = null;
+		this.isTitleScanned = false;
+	}
+	/** Sets the product name. **/
+	public void setName(String name) {
+		super.setName(name);
+		this.isNameScanned = false;
+	}
+	/** Returns the listing title folded to upper case with its token boundaries, or null if the title is not specified. **/
+	public TokenizedString getNormalizedTitle() {
+		//if the title is specified and has not been normalised yet, normalise it
+		if (normalizedTitle == null && title != null) { normalizedTitle = Tokenizer.normalize(title); }
+		return normalizedTitle;
+	}
+	/** Returns the position in the upper case title after the first "for" between separators, as given by SortableProductMatcher.getForBoundary. The title is scanned only once. **/
+	public int getTitleForBoundary() {
+		//if the title has not been scanned yet, scan it
+		if (!isTitleScanned) {
+			titleForBoundary = ( getNormalizedTitle() == null ? SortableProductMatcher.FOR_NONE : SortableProductMatcher.getForBoundary(getNormalizedTitle().getValue()) );
+			isTitleScanned = true;
+		}
+		return titleForBoundary;
+	}
+	/** Returns the position in the upper case name after the first "for" between separators, as given by SortableProductMatcher.getForBoundary. The name is scanned only once. **/
+	public int getNameForBoundary() {
+		//if the name has not been scanned yet, scan it
+		if (!isNameScanned) {
+			nameForBoundary = ( getNormalizedName() == null ? SortableProductMatcher.FOR_NONE : SortableProductMatcher.getForBoundary(getNormalizedName().getValue()) );
+			isNameScanned = true;
+		}
+		return nameForBoundary;
 	}
 	/** Returns the listed product's currency. **/
 	public String getCurrency() {
@@ -42,8 +93,32 @@ public class SortableListing extends SortableProduct {
 	public String getPrice() {
 		return this.price;
 	}
+	/** Returns the listed product's price as a fixed-point long (see SortablePrice), or SortablePrice.INVALID if it cannot be parsed. The price is parsed only once. **/
+	public long getPriceValue() {
+		//if the price has not been parsed yet, parse it
+		if (!isPriceParsed) {
+			priceValue = SortablePrice.parse(price);
+			isPriceParsed = true;
+		}
+		return priceValue;
+	}
 	/** Sets the listed product's price. **/
 	public void setPrice(String price) {
 		this.price = price;
+		this.isPriceParsed = false;
+	}
+	/** Returns a new SortableListing with the field values of the given JSON object. **/
+	public static SortableListing read(JSONData data) {
+		//create a new String array with an element for each potential field
+		String[] value = new String[fields.length];
+		//for each field
+		for (int i = 0; i != fields.length; i++) {
+			//attempt to get the nth field data from the JSON object
+			JSONData d = data.getData(fields[i]);
+			//if the data exists, store it in the array, else ensure it is set to null
+			value[i] = ( d == null ? null : d.getValue() );
+		}
+		//create a SortableListing object for the read listing
+		return new SortableListing(value[0],value[1],value[2],value[3],value[4],value[5],value[6],value[7]);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+import tom.data.IntList;
+
+/**
+*** SortableListingComparer class
+*** Holds what one thread needs to compare listings against every known product of a catalog: a SortableProductMatcher per product,
+*** the candidate heap, the flags of the model token index, the token filter set and the plan ordering the checks. None of it is shared,
+*** so a comparer must only be used by one thread at a time, but it is meant to be kept and reused for listing after listing, as creating
+*** the matchers is the costly part. compare() finds the product a listing is assigned to as SortableMatchWorker assigns it, by the
+*** priority of the match type, or by score if the options assign listings by score.
+**/
+
+public class SortableListingComparer {
+	///The catalog snapshot the listings are compared against.
+	private final SortableCatalog catalog;
+	///The settings of the comparisons.
+	private final SortableOptions options;
+	///The plan ordering the checks of the comparisons.
+	private final SortableMatchPlan plan;
+	///The matcher of each known product, in catalog order.
+	private final SortableProductMatcher[] productMatcher;
+	///Whether the candidates are scored, for outputting alternatives or assigning listings by score.
+	private final boolean isScored;
+	///The heap of the highest scoring candidates, with a place for the assigned product as well as the alternatives.
+	private final SortableCandidateHeap candidates;
+	///The token filter, or null if the pairs are not prefiltered, and the set of the tokens of the listing being compared.
+	private final SortableTokenFilter tokenFilter;
+	private final long[] listingTokens;
+	///The flags of the products the model token index finds to be partial match candidates, and the products flagged.
+	private final boolean[] partialCandidates;
+	private final IntList markedCandidates = new IntList();
+	///The fuzzy index of the product models, or null if models are not matched fuzzily, the flags of the products it finds, and the products flagged.
+	private final SortableFuzzyModelIndex fuzzyModelIndex;
+	private final boolean[] fuzzyCandidates;
+	private final IntList markedFuzzyCandidates = new IntList();
+	///The working buffers of the searches of the fuzzy index, or null if models are not matched fuzzily.
+	private final SortableFuzzyModelIndex.Scratch fuzzyScratch;
+	///The match type of the last assignment.
+	private SortableMatchResult.MatchType matchType = SortableMatchResult.MatchType.NO_MATCH;
+	/** Constructs a new SortableListingComparer for the given catalog and options, ordering its checks with the given plan. **/
+	public SortableListingComparer(SortableCatalog catalog,SortableOptions options,SortableMatchPlan plan) {
+		this.catalog = catalog;
+		this.options = options;
+		this.plan = plan;
+		this.tokenFilter = ( options.getPrefilterBits() == 0 ? null : new SortableTokenFilter(options.getPrefilterBits()) );
+		this.listingTokens = ( tokenFilter == null ? null : tokenFilter.createSet() );
+		//create the SortableProductMatcher object for each known product separately to avoid carrying out the same String operations on the same data multiple times
+		this.productMatcher = catalog.createMatchers(tokenFilter);
+		this.isScored = ( options.getAlternatives() != 0 || options.isRankByScore() );
+		this.candidates = new SortableCandidateHeap(options.getAlternatives()+1);
+		this.partialCandidates = new boolean[catalog.getModelTokenIndex().getProductCount()];
+		this.fuzzyModelIndex = ( options.getFuzzyDistance() == 0 ? null : catalog.getFuzzyModelIndex() );
+		//the index is built with the catalog, so the catalog must have been built for the options' distance
+		if (options.getFuzzyDistance() != 0 && (fuzzyModelIndex == null || fuzzyModelIndex.getMaxDistance() != options.getFuzzyDistance())) {
+			throw new IllegalArgumentException("The catalog has no fuzzy index for the edit distance "+options.getFuzzyDistance());
+		}
+		this.fuzzyCandidates = ( fuzzyModelIndex == null ? null : new boolean[fuzzyModelIndex.getProductCount()] );
+		this.fuzzyScratch = ( fuzzyModelIndex == null ? null : fuzzyModelIndex.createScratch() );
+	}
+	/** Returns the catalog snapshot the listings are compared against. **/
+	public SortableCatalog getCatalog() {
+		return catalog;
+	}
+	/** Returns the plan ordering the checks of the comparisons. **/
+	public SortableMatchPlan getPlan() {
+		return plan;
+	}
+	/** Returns the matcher of each known product, in catalog order. **/
+	public SortableProductMatcher[] getMatchers() {
+		return productMatcher;
+	}
+	/** Returns the token filter, or null if the pairs are not prefiltered. **/
+	public SortableTokenFilter getTokenFilter() {
+		return tokenFilter;
+	}
+	/** Returns the fuzzy index of the product models, or null if models are not matched fuzzily. **/
+	public SortableFuzzyModelIndex getFuzzyModelIndex() {
+		return fuzzyModelIndex;
+	}
+	/** Returns whether the candidates are scored. **/
+	public boolean isScored() {
+		return isScored;
+	}
+	/** Returns the heap of the scored candidates of the last listing, sorted from highest to lowest score once it is assigned. **/
+	public SortableCandidateHeap getCandidates() {
+		return candidates;
+	}
+	/** Returns the match type of the last assignment, or NO_MATCH if the last listing matched no product. **/
+	public SortableMatchResult.MatchType getMatchType() {
+		return matchType;
+	}
+	/**
+	*** Compares the given listing against every known product and returns the index of the product it is assigned to, or -1 if it matches none.
+	*** The matchers are left set to the listing, so the assigned product's matcher can give its score, and getMatchType() gives the match type.
+	**/
+	public int compare(SortableListing listing) {
+		//find the products whose models can partially match the listing
+		catalog.getModelTokenIndex().findCandidates(listing,partialCandidates,markedCandidates);
+		//if the pairs are prefiltered, gather the tokens of the listing
+		if (tokenFilter != null) {
+			tokenFilter.fill(listingTokens,listing);
+		}
+		//each listing may only have one matching product, so keep the index of the best match and the priority of its match type, where 0 is highest
+		int best = -1;
+		int bestPriority = SortableMatchWorker.getMatchTypePriority(SortableMatchResult.MatchType.NO_MATCH);
+		//remove the candidates of the previous listing
+		candidates.clear();
+		//for each known product
+		for (int i = 0; i != productMatcher.length; i++) {
+			//set the listing for the matcher
+			productMatcher[i].setListing(listing,partialCandidates[i],listingTokens);
+			//carry out the comparison with the checks in the order of the plan and get the match type. no result object is created for the comparison
+			SortableMatchResult.MatchType matchType = productMatcher[i].getMatchType(plan);
+			//if there is a match
+			if (matchType != SortableMatchResult.MatchType.NO_MATCH) {
+				//get the priority of the match type
+				int priority = SortableMatchWorker.getMatchTypePriority(matchType);
+				//if it is higher than the best so far, keep it. the first product of a match type is kept when there are several
+				if (priority < bestPriority) {
+					best = i;
+					bestPriority = priority;
+				}
+				//if the candidates are scored
+				if (isScored) {
+					//offer the candidate to the heap, which keeps it only if it is among the highest scoring
+					candidates.offer(i,productMatcher[i].getMatchScore(matchType));
+				}
+			}
+		}
+		//if models are matched fuzzily and a fuzzy match can change the result, compare the products whose models are within the edit distance
+		if (isFuzzyNeeded(best)) {
+			int fuzzy = compareFuzzy(listing);
+			//a fuzzy match is the lowest level, so it is only the best if there is no other
+			if (best == -1 && fuzzy != -1) {
+				best = fuzzy;
+				bestPriority = SortableMatchWorker.getMatchTypePriority(SortableMatchResult.MatchType.FUZZY_MATCH);
+			}
+		}
+		return assign(best,bestPriority);
+	}
+	/** Returns whether fuzzy matches can change the result of a listing whose best match so far is the given product: if models are matched fuzzily, and the listing has no match or its candidates are scored. **/
+	public boolean isFuzzyNeeded(int best) {
+		return ( fuzzyModelIndex != null && (best == -1 || isScored) );
+	}
+	/**
+	*** Compares the given listing with the products whose models the fuzzy index finds within its edit distance, once it has been compared with
+	*** every product without it, and offers each product that only matches fuzzily to the candidates if they are scored. Returns the first such
+	*** product in catalog order, or -1 if there is none. The matchers of those products are left set to the listing.
+	**/
+	public int compareFuzzy(SortableListing listing) {
+		fuzzyModelIndex.findCandidates(listing,fuzzyScratch,fuzzyCandidates,markedFuzzyCandidates);
+		//compare the products in catalog order, so the first is kept
+		markedFuzzyCandidates.sort();
+		int first = -1;
+		for (int i = 0; i != markedFuzzyCandidates.getSize(); i++) {
+			int product = markedFuzzyCandidates.get(i);
+			productMatcher[product].setListing(listing);
+			productMatcher[product].setFuzzyCandidate(true);
+			//the products that match exactly were already compared, so only a fuzzy match is new
+			if (productMatcher[product].getMatchType(plan) == SortableMatchResult.MatchType.FUZZY_MATCH) {
+				if (first == -1) {
+					first = product;
+				}
+				if (isScored) {
+					candidates.offer(product,productMatcher[product].getMatchScore(SortableMatchResult.MatchType.FUZZY_MATCH));
+				}
+			}
+		}
+		return first;
+	}
+	/**
+	*** Returns the index of the product a listing is assigned to, given the first product of its best match type and the priority of that type,
+	*** once its candidates have been offered. The scored candidates are sorted, and if listings are assigned by score the highest scoring is used.
+	**/
+	public int assign(int best,int bestPriority) {
+		matchType = SortableMatchWorker.getPriorityMatchType(bestPriority);
+		//if there is no match, there is nothing to assign
+		if (best == -1) {
+			return -1;
+		}
+		//if the candidates are scored
+		if (isScored) {
+			//order the kept candidates from highest to lowest score
+			candidates.sort();
+			//if listings are assigned by score, use the highest scoring product
+			if (options.isRankByScore()) {
+				best = candidates.getProduct(0);
+				//its score gives its match type
+				matchType = SortableMatchResult.getScoreMatchType(candidates.getScore(0));
+			}
+		}
+		return best;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+*** SortableListingRecord class
+*** Encodes product listings as compact binary records, so they can be held outside of the Java heap or written to a file.
+*** A record starts with a presence bitmap byte, where bit n is set if field n is specified. Each specified field follows in
+*** field order as its UTF-8 length, written as an unsigned variable length integer of 7 bits per byte, followed by its UTF-8 bytes.
+*** Unspecified fields take no space, and a specified but empty field is a single zero length byte.
+**/
+
+public class SortableListingRecord {
+	///The index of the name field.
+	public static final int NAME = 0;
+	///The index of the manufacturer field.
+	public static final int MANUFACTURER = 1;
+	///The index of the model field.
+	public static final int MODEL = 2;
+	///The index of the family field.
+	public static final int FAMILY = 3;
+	///The index of the announced date field.
+	public static final int ANNOUNCED_DATE = 4;
+	///The index of the currency field.
+	public static final int CURRENCY = 5;
+	///The index of the price field.
+	public static final int PRICE = 6;
+	///The index of the title field.
+	public static final int TITLE = 7;
+	///The number of fields in a record, which must fit in the presence bitmap byte.
+	public static final int FIELD_COUNT = 8;
+	///The character set of the field values.
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** Prevents instantiation; all methods are static. **/
+	private SortableListingRecord() {
+	}
+	/** Returns the value of the given field of the given listing, or null if it is not specified. **/
+	public static String getValue(SortableListing listing,int field) {
+		switch (field) {
+			case NAME: return listing.getName();
+			case MANUFACTURER: return listing.getManufacturer();
+			case MODEL: return listing.getModel();
+			case FAMILY: return listing.getFamily();
+			case ANNOUNCED_DATE: return listing.getAnnouncedDate();
+			case CURRENCY: return listing.getCurrency();
+			case PRICE: return listing.getPrice();
+			case TITLE: return listing.getTitle();
+			default: throw new IllegalArgumentException("Invalid field: "+field);
+		}
+	}
+	/** Returns the given listing encoded as a new record. **/
+	public static byte[] encode(SortableListing listing) {
+		byte[][] values = new byte[FIELD_COUNT][];
+		int bitmap = 0;
+		int length = 1;
+		//for each field
+		for (int i = 0; i != FIELD_COUNT; i++) {
+			String value = getValue(listing,i);
+			//if the field is specified, encode it and add its length and bit
+			if (value != null) {
+				values[i] = value.getBytes(UTF_8);
+				length+= getVarIntLength(values[i].length) + values[i].length;
+				bitmap|= 1 << i;
+			}
+		}
+		//write the bitmap, then the length and bytes of each specified field
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.put((byte)bitmap);
+		for (int i = 0; i != FIELD_COUNT; i++) {
+			if (values[i] != null) {
+				putVarInt(record,values[i].length);
+				record.put(values[i]);
+			}
+		}
+		return record.array();
+	}
+	/** Returns the number of bytes the given unsigned value takes as a variable length integer. **/
+	public static int getVarIntLength(int value) {
+		int length = 1;
+		//for each further 7 bits that are in use
+		while ((value>>>= 7) != 0) { length++; }
+		return length;
+	}
+	/** Writes the given unsigned value as a variable length integer at the buffer's position. **/
+	public static void putVarInt(ByteBuffer buffer,int value) {
+		//while more than 7 bits remain, write the low 7 bits with the continuation bit set
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value>>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+	/**
+	*** Reads the field offsets and lengths of the record at the given position of the buffer without changing the buffer's position.
+	*** The offset of each unspecified field is set to -1. Returns the position after the end of the record.
+	**/
+	public static int readFields(ByteBuffer buffer,int position,int[] offsets,int[] lengths) {
+		int bitmap = buffer.get(position++) & 0xFF;
+		//for each field
+		for (int i = 0; i != FIELD_COUNT; i++) {
+			//if the field is not specified, mark it absent
+			if ((bitmap & (1 << i)) == 0) {
+				offsets[i] = -1;
+				lengths[i] = 0;
+				continue;
+			}
+			//read the variable length integer length
+			int length = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = buffer.get(position++);
+				length|= (b & 0x7F) << shift;
+				shift+= 7;
+			} while ((b & 0x80) != 0);
+			offsets[i] = position;
+			lengths[i] = length;
+			position+= length;
+		}
+		return position;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+/**
+*** SortableListingStore interface
+*** A read only, indexed set of 3rd party product listings that matching iterates over.
+*** Stores holding encoded records return flyweight views rather than listing objects, so callers pass back the listing they were last
+*** given, and the store moves it to the requested listing instead of creating a new one. Each thread must use its own listing.
+**/
+
+public interface SortableListingStore {
+	/** Returns the number of listings. **/
+	public int getListingCount();
+	/**
+	*** Returns the listing at the given index. If the store uses views and the given listing is a view, it is moved to the listing and
+	*** returned, otherwise a new view is returned. Pass null for a listing that is not changed by later calls.
+	**/
+	public SortableListing getListing(int i,SortableListing reuse);
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+import tom.string.TokenizedString;
+import tom.string.Tokenizer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+*** SortableListingView class
+*** A read only SortableListing over an encoded listing record (see SortableListingRecord) held in a ByteBuffer, such as a direct buffer
+*** or a memory mapped file. A view is a flyweight: it is moved from record to record with setRecord, and a field is only decoded into
+*** a String when it is first requested after a move. Fields are read from the buffer in place with absolute gets: ASCII fields are decoded
+*** and folded by the Tokenizer's buffer kernel straight into the working characters, and only fields with other characters are copied out to
+*** be decoded as UTF-8. A String is still created for each field requested, as the SortableListing methods return Strings. A view reuses its working buffers, so it must only be used by one thread at a time, and any object taken
+*** from it, such as a matcher holding it as its listing, sees the next record once it is moved.
+**/
+
+public class SortableListingView extends SortableListing {
+	///The buffer holding the current record.
+	private ByteBuffer buffer;
+	///The offset of each field of the current record in the buffer, or -1 if the field is not specified.
+	private final int[] fieldOffsets = new int[SortableListingRecord.FIELD_COUNT];
+	///The UTF-8 length of each field of the current record.
+	private final int[] fieldLengths = new int[SortableListingRecord.FIELD_COUNT];
+	///The decoded value of each field of the current record, or null if it has not been decoded.
+	private final String[] values = new String[SortableListingRecord.FIELD_COUNT];
+	///The normalised value of each field of the current record, or null if it has not been normalised.
+	private final TokenizedString[] normalizedValues = new TokenizedString[SortableListingRecord.FIELD_COUNT];
+	///The price of the current record as a fixed-point long.
+	private long priceValue;
+	///Whether the price of the current record has been parsed.
+	private boolean isPriceParsed = false;
+	///The "for" boundary of the title of the current record.
+	private int titleForBoundary;
+	///Whether the title of the current record has been scanned for its "for" boundary.
+	private boolean isTitleScanned = false;
+	///The "for" boundary of the name of the current record.
+	private int nameForBoundary;
+	///Whether the name of the current record has been scanned for its "for" boundary.
+	private boolean isNameScanned = false;
+	///The working buffer for the bytes of a field that is not ASCII.
+	private byte[] bytes = new byte[256];
+	///The working buffer for the decoded or folded characters of a field.
+	private char[] chars = new char[256];
+	///The working buffer for the token boundaries of a field.
+	private int[] offsets = new int[257];
+	/** Constructs a new SortableListingView with no record. **/
+	public SortableListingView() {
+	}
+	/** Moves the view to the record at the given position of the given buffer. The buffer's position is not used or changed. **/
+	public void setRecord(ByteBuffer buffer,int position) {
+		this.buffer = buffer;
+		SortableListingRecord.readFields(buffer,position,fieldOffsets,fieldLengths);
+		//forget the values of the previous record
+		Arrays.fill(values,null);
+		Arrays.fill(normalizedValues,null);
+		isPriceParsed = false;
+		isTitleScanned = false;
+		isNameScanned = false;
+	}
+	/** Grows the working buffers to hold a field of the given length, returning the length. **/
+	private int reserve(int length) {
+		if (length > bytes.length) {
+			bytes = new byte[length];
+			chars = new char[length];
+			offsets = new int[length+1];
+		}
+		return length;
+	}
+	/** Returns the value of the given field of the current record, decoding it if it has not been, or null if it is not specified. **/
+	private String getValue(int field) {
+		//if the field is specified and has not been decoded yet, decode it
+		if (values[field] == null && fieldOffsets[field] != -1) {
+			int offset = fieldOffsets[field];
+			int length = reserve(fieldLengths[field]);
+			//decode ASCII bytes in place with absolute reads, so views on other threads can share the buffer
+			int bits = 0;
+			for (int i = 0; i != length; i++) {
+				int c = buffer.get(offset+i);
+				bits|= c;
+				chars[i] = (char)c;
+			}
+			//if the field was ASCII, its bytes are its characters, else copy the bytes out and decode them as UTF-8
+			if ((bits & 0xFFFFFF80) == 0) {
+				values[field] = new String(chars,0,length);
+			}
+			else {
+				for (int i = 0; i != length; i++) {
+					bytes[i] = buffer.get(offset+i);
+				}
+				values[field] = new String(bytes,0,length,SortableListingRecord.UTF_8);
+			}
+		}
+		return values[field];
+	}
+	/** Returns the value of the given field of the current record folded to upper case with its token boundaries, or null if it is not specified. **/
+	private TokenizedString getNormalizedValue(int field) {
+		//if the field is specified and has not been normalised yet, normalise it
+		if (normalizedValues[field] == null && fieldOffsets[field] != -1) {
+			int length = reserve(fieldLengths[field]);
+			//fold the bytes in the buffer directly, without copying or decoding them into a String first
+			int count = Tokenizer.normalize(buffer,fieldOffsets[field],length,chars,offsets);
+			//if the field was ASCII, use the kernel result, else decode the field and use the full Unicode case mapping
+			normalizedValues[field] = ( count != -1 ? new TokenizedString(new String(chars,0,length),Arrays.copyOf(offsets,count),count/2) : Tokenizer.normalize(getValue(field)) );
+		}
+		return normalizedValues[field];
+	}
+	/** Returns the product name. **/
+	public String getName() {
+		return getValue(SortableListingRecord.NAME);
+	}
+	/** Returns the product manufacturer. **/
+	public String getManufacturer() {
+		return getValue(SortableListingRecord.MANUFACTURER);
+	}
+	/** Returns the product model. **/
+	public String getModel() {
+		return getValue(SortableListingRecord.MODEL);
+	}
+	/** Returns the family. **/
+	public String getFamily() {
+		return getValue(SortableListingRecord.FAMILY);
+	}
+	/** Returns the announced date. **/
+	public String getAnnouncedDate() {
+		return getValue(SortableListingRecord.ANNOUNCED_DATE);
+	}
+	/** Returns the listed product's currency. **/
+	public String getCurrency() {
+		return getValue(SortableListingRecord.CURRENCY);
+	}
+	/** Returns the listed product's price. **/
+	public String getPrice() {
+		return getValue(SortableListingRecord.PRICE);
+	}
+	/** Returns the listing title. **/
+	public String getTitle() {
+		return getValue(SortableListingRecord.TITLE);
+	}
+	/** Returns the product name folded to upper case with its token boundaries, or null if the name is not specified. **/
+	public TokenizedString getNormalizedName() {
+		return getNormalizedValue(SortableListingRecord.NAME);
+	}
+	/** Returns the product manufacturer folded to upper case with its token boundaries, or null if the manufacturer is not specified. **/
+	public TokenizedString getNormalizedManufacturer() {
+		return getNormalizedValue(SortableListingRecord.MANUFACTURER);
+	}
+	/** Returns the product model folded to upper case with its token boundaries, or null if the model is not specified. **/
+	public TokenizedString getNormalizedModel() {
+		return getNormalizedValue(SortableListingRecord.MODEL);
+	}
+	/** Returns the model family folded to upper case with its token boundaries, or null if the family is not specified. **/
+	public TokenizedString getNormalizedFamily() {
+		return getNormalizedValue(SortableListingRecord.FAMILY);
+	}
+	/** Returns the listing title folded to upper case with its token boundaries, or null if the title is not specified. **/
+	public TokenizedString getNormalizedTitle() {
+		return getNormalizedValue(SortableListingRecord.TITLE);
+	}
+	/** Returns the position in the upper case title after the first "for" between separators. The title is scanned only once per record. **/
+	public int getTitleForBoundary() {
+		//if the title has not been scanned yet, scan it
+		if (!isTitleScanned) {
+			titleForBoundary = ( getNormalizedTitle() == null ? SortableProductMatcher.FOR_NONE : SortableProductMatcher.getForBoundary(getNormalizedTitle().getValue()) );
+			isTitleScanned = true;
+		}
+		return titleForBoundary;
+	}
+	/** Returns the position in the upper case name after the first "for" between separators. The name is scanned only once per record. **/
+	public int getNameForBoundary() {
+		//if the name has not been scanned yet, scan it
+		if (!isNameScanned) {
+			nameForBoundary = ( getNormalizedName() == null ? SortableProductMatcher.FOR_NONE : SortableProductMatcher.getForBoundary(getNormalizedName().getValue()) );
+			isNameScanned = true;
+		}
+		return nameForBoundary;
+	}
+	/** Returns the listed product's price as a fixed-point long (see SortablePrice), or SortablePrice.INVALID if it cannot be parsed. The price is parsed only once per record. **/
+	public long getPriceValue() {
+		//if the price has not been parsed yet, parse it
+		if (!isPriceParsed) {
+			priceValue = SortablePrice.parse(getPrice());
+			isPriceParsed = true;
+		}
+		return priceValue;
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setName(String name) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setManufactuer(String manufacturer) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setModel(String model) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setFamily(String family) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setAnnouncedDate(String announcedDate) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setTitle(String title) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setCurrency(String currency) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+	/** Views are read only; throws UnsupportedOperationException. **/
+	public void setPrice(String price) {
+		throw new UnsupportedOperationException("SortableListingView is read only");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import tom.string.json.JSONDocument;
+
+/**
+*** SortableMatchEngine class
+*** Matches listings against the known products in process, for embedding in another service, without files or JSON.
+*** An engine is built from a collection of products, or from a SortableCatalogManager whose current catalog it follows, and matchBatch()
+*** returns a SortableMatchRecord for each listing given, in the same order, assigned as a matching run assigns it under the engine's options.
+*** A batch is split into micro-batches of listings, which the calling thread and the engine's pool of threads claim one at a time, so a
+*** large batch uses every thread while a small one is matched on the calling thread alone. The threads are created once, with the engine,
+*** and each micro-batch is compared with a SortableListingComparer taken from those kept by the engine, so the product matchers are created
+*** once per thread and catalog version, not once per call. matchBatch() may be called from any number of threads at once; each batch
+*** uses the catalog that is current when it starts. If a rate limit is set, each batch first waits until it is within the limit, so a
+*** burst of calls is spread out rather than taking every thread.
+*** The listings' normalized fields are cached in the listing objects as they are compared, so a listing should not be in two batches at once.
+*** Price filtering needs every match of a product, so it is not applied; the options are read when comparers are created and should not be
+*** changed once the engine is built. If models are matched fuzzily, a manager must be created with the options' edit distance, as each catalog
+*** builds its fuzzy index once, when it is created. close() stops the threads.
+*** main() is an example of embedding an engine: it matches a listings file against a products file and counts the records of each match type.
+**/
+
+public class SortableMatchEngine implements AutoCloseable {
+	///The default number of listings in a micro-batch.
+	public static final int DEFAULT_MICRO_BATCH_SIZE = SortableMatchWorker.BLOCK_SIZE;
+	///The manager of the catalog, or null if the engine was built from a collection of products.
+	private final SortableCatalogManager catalogManager;
+	///The catalog built from a collection of products, or null if the engine follows a manager.
+	private volatile SortableCatalog catalog;
+	///The settings of the comparisons.
+	private final SortableOptions options;
+	///The threads matching micro-batches alongside the calling thread, or null if the options give a single thread.
+	private final ExecutorService executor;
+	///The comparers not in use, each holding the matchers of a catalog version.
+	private final ConcurrentLinkedQueue<SortableListingComparer> comparers = new ConcurrentLinkedQueue<SortableListingComparer>();
+	///The number of listings in a micro-batch.
+	private volatile int microBatchSize = DEFAULT_MICRO_BATCH_SIZE;
+	///The limit of the rate listings are matched at, or null for no limit.
+	private volatile RateLimiter rateLimiter = null;
+	/** Constructs a new SortableMatchEngine matching against the given products, with the given options. **/
+	public SortableMatchEngine(Collection<? extends SortableProduct> products,SortableOptions options) {
+		this((SortableCatalogManager)null,options);
+		this.catalog = new SortableCatalog(1,products.toArray(new SortableProduct[products.size()]),options.getFuzzyDistance());
+	}
+	/** Constructs a new SortableMatchEngine matching against the current catalog of the given manager, with the given options. **/
+	public SortableMatchEngine(SortableCatalogManager catalogManager,SortableOptions options) {
+		this.catalogManager = catalogManager;
+		this.options = options;
+		//create daemon threads so an engine that is not closed never keeps the program running
+		if (options.getThreads() > 1) {
+			this.executor = Executors.newFixedThreadPool(options.getThreads()-1,new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,"match-engine-"+count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		else {
+			this.executor = null;
+		}
+	}
+	/** Returns the current catalog, or null if the engine follows a manager that has not loaded one. **/
+	public SortableCatalog getCatalog() {
+		return ( catalogManager == null ? catalog : catalogManager.getCatalog() );
+	}
+	/** Replaces the products matched against with the given products, as a new catalog version. Batches already started finish on the old version. **/
+	public synchronized void setProducts(Collection<? extends SortableProduct> products) {
+		if (catalogManager != null) {
+			throw new IllegalStateException("The engine follows the catalog of its manager");
+		}
+		catalog = new SortableCatalog(catalog.getVersion()+1,products.toArray(new SortableProduct[products.size()]),options.getFuzzyDistance());
+	}
+	/** Returns the number of listings in a micro-batch. **/
+	public int getMicroBatchSize() {
+		return microBatchSize;
+	}
+	/** Sets the number of listings in a micro-batch. **/
+	public void setMicroBatchSize(int microBatchSize) {
+		if (microBatchSize < 1) {
+			throw new IllegalArgumentException("The micro-batch size must be at least 1: "+microBatchSize);
+		}
+		this.microBatchSize = microBatchSize;
+	}
+	/** Sets the limit of the rate listings are matched at, in listings per second, or 0 for no limit. **/
+	public void setRateLimit(double listingsPerSecond) {
+		if (listingsPerSecond < 0) {
+			throw new IllegalArgumentException("The rate limit must not be negative: "+listingsPerSecond);
+		}
+		this.rateLimiter = ( listingsPerSecond == 0 ? null : new RateLimiter(listingsPerSecond) );
+	}
+	/** Returns the record of matching the given listing. **/
+	public SortableMatchRecord match(SortableListing listing) {
+		return matchBatch(Collections.singletonList(listing)).get(0);
+	}
+	/** Returns the record of matching each of the given listings, in the same order. **/
+	public List<SortableMatchRecord> matchBatch(List<SortableListing> listings) {
+		final SortableListing[] batch = listings.toArray(new SortableListing[listings.size()]);
+		final SortableMatchRecord[] records = new SortableMatchRecord[batch.length];
+		//if the rate is limited, wait until the batch is within the limit
+		RateLimiter limiter = rateLimiter;
+		if (limiter != null) {
+			limiter.acquire(batch.length);
+		}
+		//use the same catalog for the whole batch
+		final SortableCatalog batchCatalog = getCatalog();
+		if (batchCatalog == null) {
+			throw new IllegalStateException("No catalog has been loaded");
+		}
+		final int size = microBatchSize;
+		int microBatchCount = (int)(((long)batch.length + size - 1) / size);
+		final AtomicInteger nextMicroBatch = new AtomicInteger();
+		final CountDownLatch remaining = new CountDownLatch(microBatchCount);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Runnable task = new Runnable() {
+			public void run() {
+				matchMicroBatches(batchCatalog,batch,records,size,nextMicroBatch,remaining,failure);
+			}
+		};
+		//ask the threads to help with the micro-batches after the first, which the calling thread takes
+		int helpers = ( executor == null || microBatchCount < 2 ? 0 : Math.min(options.getThreads(),microBatchCount)-1 );
+		Future<?>[] futures = new Future<?>[helpers];
+		for (int i = 0; i != helpers; i++) {
+			futures[i] = executor.submit(task);
+		}
+		task.run();
+		//every micro-batch is claimed, so wait for those the threads are matching, and drop the help that has not started
+		awaitUninterruptibly(remaining);
+		for (int i = 0; i != helpers; i++) {
+			futures[i].cancel(false);
+		}
+		//if a micro-batch failed, pass on its error
+		Throwable error = failure.get();
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException)error;
+		}
+		if (error instanceof Error) {
+			throw (Error)error;
+		}
+		return Collections.unmodifiableList(Arrays.asList(records));
+	}
+	/** Example method: matches a listings file against a products file with an engine, in batches, and outputs the count of each match type. **/
+	public static void main(String[] args) {
+		//separate the optional settings from the file arguments
+		SortableOptions options = new SortableOptions();
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i != args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				files.add(args[i]);
+			}
+			else if (!options.parse(args[i])) {
+				System.out.println("Invalid option: "+args[i]+"\r\n"+SortableOptions.getSyntax());
+				return;
+			}
+		}
+		//if there are too few arguments, output the syntax
+		if (files.size() < 2) {
+			System.out.println("Insufficient parameters.\r\nSyntax: <3rd party product file> <known products file> [Options]\r\n"+SortableOptions.getSyntax());
+			return;
+		}
+		System.out.println("matching...");
+		long c = System.currentTimeMillis();
+		//anticipate IO errors
+		try {
+			//load the catalog, and read the listings as the calling service would have them
+			SortableCatalogManager catalogManager = new SortableCatalogManager(files.get(1),options.getFuzzyDistance());
+			catalogManager.load();
+			JSONDocument jsonListings = new JSONDocument(files.get(0));
+			List<SortableListing> listings = new ArrayList<SortableListing>(jsonListings.getChildCount());
+			for (int i = 0; i != jsonListings.getChildCount(); i++) {
+				listings.add(SortableListing.read(jsonListings.getData(i)));
+			}
+			jsonListings = null;
+			//count the records of each match type, matching a batch at a time
+			int[] counts = new int[SortableMatchResult.MatchType.values().length];
+			int unmatched = 0;
+			SortableMatchEngine engine = new SortableMatchEngine(catalogManager,options);
+			//ensure the threads of the engine and manager are stopped
+			try {
+				for (int i = 0; i < listings.size(); i+= DEFAULT_MICRO_BATCH_SIZE * 4) {
+					for (SortableMatchRecord record : engine.matchBatch(listings.subList(i,Math.min(listings.size(),i + DEFAULT_MICRO_BATCH_SIZE * 4)))) {
+						if (record.isMatched()) {
+							counts[record.getMatchType().ordinal()]++;
+						}
+						else {
+							unmatched++;
+						}
+					}
+				}
+			}
+			finally {
+				engine.close();
+				catalogManager.shutdown();
+			}
+			StringBuilder summary = new StringBuilder();
+			for (SortableMatchResult.MatchType matchType : SortableMatchResult.MatchType.values()) {
+				if (counts[matchType.ordinal()] != 0) {
+					summary.append(matchType).append(": ").append(counts[matchType.ordinal()]).append(", ");
+				}
+			}
+			System.out.println("complete. Matched "+(listings.size()-unmatched)+" of "+listings.size()+" listings ("+summary+"unmatched: "+unmatched+"). Time taken: "+((System.currentTimeMillis()-c)/1000)+"secs.");
+		}
+		//catch IO errors
+		catch(IOException e) {
+			//output the error to the console
+			e.printStackTrace();
+			System.out.println("An IO error occurred.");
+		}
+	}
+	/** Stops the threads of the engine once the batches they are helping with are done. **/
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+	/**
+	*** Matches the listings of unclaimed micro-batches of the given batch against the given catalog until none are left, storing the record of each
+	*** listing at its index. Each micro-batch counts down the latch once it is done, and the first error raised by any micro-batch is kept.
+	**/
+	private void matchMicroBatches(SortableCatalog batchCatalog,SortableListing[] batch,SortableMatchRecord[] records,int size,AtomicInteger nextMicroBatch,CountDownLatch remaining,AtomicReference<Throwable> failure) {
+		SortableListingComparer comparer = null;
+		long start;
+		//while there are unclaimed micro-batches, claim the next
+		while ((start = (long)nextMicroBatch.getAndIncrement() * size) < batch.length) {
+			//anticipate errors, ensuring the micro-batch is counted as done
+			try {
+				//take a comparer for the first micro-batch claimed
+				if (comparer == null) {
+					comparer = takeComparer(batchCatalog);
+				}
+				int end = (int)Math.min(start+size,batch.length);
+				for (int i = (int)start; i != end; i++) {
+					records[i] = match(comparer,batch[i]);
+				}
+			}
+			catch(Throwable e) {
+				failure.compareAndSet(null,e);
+				//a comparer that failed part way through a listing is not kept
+				comparer = null;
+			}
+			finally {
+				remaining.countDown();
+			}
+		}
+		if (comparer != null) {
+			releaseComparer(comparer);
+		}
+	}
+	/** Returns the record of comparing the given listing with the given comparer. **/
+	private SortableMatchRecord match(SortableListingComparer comparer,SortableListing listing) {
+		int best = comparer.compare(listing);
+		//if there is no match, the record has no product
+		if (best == -1) {
+			return new SortableMatchRecord(listing);
+		}
+		SortableCatalog batchCatalog = comparer.getCatalog();
+		//if the candidates are not scored, the record has no score or alternatives
+		if (!comparer.isScored()) {
+			return new SortableMatchRecord(listing,batchCatalog.getProduct(best),best,comparer.getMatchType());
+		}
+		//gather the kept candidates other than the assigned product, up to the number of alternatives
+		SortableCandidateHeap candidates = comparer.getCandidates();
+		int count = Math.min(options.getAlternatives(),candidates.getSize());
+		SortableProduct[] alternatives = new SortableProduct[count];
+		double[] alternativeScores = new double[count];
+		int size = 0;
+		for (int i = 0; i != candidates.getSize() && size != count; i++) {
+			if (candidates.getProduct(i) != best) {
+				alternatives[size] = batchCatalog.getProduct(candidates.getProduct(i));
+				alternativeScores[size++] = candidates.getScore(i);
+			}
+		}
+		//if the assigned product was not among the kept candidates, there are fewer alternatives than places
+		if (size != count) {
+			alternatives = Arrays.copyOf(alternatives,size);
+			alternativeScores = Arrays.copyOf(alternativeScores,size);
+		}
+		double score = comparer.getMatchers()[best].getMatchScore(comparer.getMatchType());
+		return new SortableMatchRecord(listing,batchCatalog.getProduct(best),best,comparer.getMatchType(),score,alternatives,alternativeScores);
+	}
+	/** Returns a comparer not in use for the given catalog, creating one if none is kept. **/
+	private SortableListingComparer takeComparer(SortableCatalog batchCatalog) {
+		SortableListingComparer comparer;
+		//take kept comparers until one is for the catalog, dropping those for other versions
+		while ((comparer = comparers.poll()) != null) {
+			if (comparer.getCatalog() == batchCatalog) {
+				return comparer;
+			}
+		}
+		return new SortableListingComparer(batchCatalog,options,new SortableMatchPlan(!options.isFixedOrder()));
+	}
+	/** Keeps the given comparer for later batches, unless its catalog has been replaced. **/
+	private void releaseComparer(SortableListingComparer comparer) {
+		if (comparer.getCatalog() == getCatalog()) {
+			comparers.offer(comparer);
+		}
+	}
+	/** Waits for the given latch to reach zero, restoring the interrupt for the caller if interrupted while waiting. **/
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean isInterrupted = false;
+		//keep waiting if interrupted, as the records are not complete until every micro-batch is done
+		while (true) {
+			try {
+				latch.await();
+				break;
+			}
+			catch(InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	*** RateLimiter class
+	*** Limits the rate listings are matched at with a bucket of permits, one per listing, refilled at the rate and holding at most a second's worth.
+	*** A batch takes its permits at once, and if there are too few it borrows them and waits until they would have been refilled, so
+	*** the batches after it wait for the debt to be repaid as well.
+	**/
+	private static class RateLimiter {
+		///The number of permits added per nanosecond.
+		private final double permitsPerNano;
+		///The most permits the bucket holds.
+		private final double capacity;
+		///The permits in the bucket, negative when borrowed.
+		private double permits;
+		///The time the bucket was last refilled, in nanoseconds.
+		private long refillTime;
+		/** Constructs a new RateLimiter of the given number of permits per second, starting with a full bucket. **/
+		RateLimiter(double permitsPerSecond) {
+			this.permitsPerNano = permitsPerSecond / 1e9;
+			this.capacity = permitsPerSecond;
+			this.permits = capacity;
+			this.refillTime = System.nanoTime();
+		}
+		/** Takes the given number of permits, waiting until the permits borrowed would have been refilled. **/
+		void acquire(int count) {
+			long wait = reserve(count);
+			boolean isInterrupted = false;
+			long end = System.nanoTime() + wait;
+			//sleep until the end of the wait, resuming if interrupted
+			while (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000,(int)(wait % 1000000));
+				}
+				catch(InterruptedException e) {
+					isInterrupted = true;
+				}
+				wait = end - System.nanoTime();
+			}
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		/** Refills the bucket, takes the given number of permits, and returns the nanoseconds to wait for those borrowed. **/
+		private synchronized long reserve(int count) {
+			long now = System.nanoTime();
+			permits = Math.min(capacity,permits + (now - refillTime) * permitsPerNano);
+			refillTime = now;
+			permits-= count;
+			return ( permits >= 0 ? 0 : (long)(-permits / permitsPerNano) );
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+/**
+*** SortableMatchPlan class
+*** Chooses the order of the checks that must all pass for a known product and product listing to match: the manufacturer, the family, and
+*** the model (a full or partial model match). The checks are pure, so any order gives the same result, but the cheapest check that rejects
+*** the most pairs should run first. The plan samples one comparison in the sample interval, on which every check is run and timed, and
+*** after each reorder interval of samples orders the checks by their expected time per rejected pair: the average time of the check
+*** divided by the share of pairs it rejects. A plan is updated by the comparisons of one worker, so it must only be used by one thread at a time.
+**/
+
+public class SortableMatchPlan {
+	///The manufacturer check.
+	public static final int MANUFACTURER = 0;
+	///The family check.
+	public static final int FAMILY = 1;
+	///The full or partial model check.
+	public static final int MODEL = 2;
+	///The number of checks.
+	public static final int CHECK_COUNT = 3;
+	///The names of the checks, for the statistics.
+	private static final String[] checkNames = {"manufacturer","family","model"};
+	///The order the checks are run in.
+	private final int[] order = {MANUFACTURER,FAMILY,MODEL};
+	///Whether the order is chosen from the samples, rather than fixed.
+	private final boolean isAdaptive;
+	///The number of comparisons between samples.
+	private int sampleInterval = 256;
+	///The number of samples between reorders.
+	private int reorderInterval = 64;
+	///The number of comparisons until the next sample.
+	private int untilSample = 1;
+	///The number of samples taken.
+	private long samples = 0;
+	///The number of sampled pairs each check rejected.
+	private final long[] rejections = new long[CHECK_COUNT];
+	///The total sampled time of each check in nanoseconds.
+	private final long[] nanos = new long[CHECK_COUNT];
+	///The number of times the checks have been reordered.
+	private int reorders = 0;
+	/** Constructs a new SortableMatchPlan, which reorders the checks if it is adaptive, else keeps the manufacturer, family, model order. **/
+	public SortableMatchPlan(boolean isAdaptive) {
+		this.isAdaptive = isAdaptive;
+	}
+	/** Returns whether the order is chosen from the samples. **/
+	public boolean isAdaptive() {
+		return isAdaptive;
+	}
+	/** Returns the order the checks are run in. The array is updated in place when the checks are reordered. **/
+	public int[] getOrder() {
+		return order;
+	}
+	/** Counts a comparison and returns whether it is to be sampled, by running and timing every check. A plan that is not adaptive never samples. **/
+	public boolean isSample() {
+		return ( isAdaptive && --untilSample == 0 );
+	}
+	/** Records the result and time in nanoseconds of each check of a sampled comparison, reordering the checks after each reorder interval of samples. **/
+	public void record(boolean[] passed,long[] checkNanos) {
+		untilSample = sampleInterval;
+		samples++;
+		//for each check, add its result and time
+		for (int i = 0; i != CHECK_COUNT; i++) {
+			if (!passed[i]) { rejections[i]++; }
+			nanos[i]+= checkNanos[i];
+		}
+		//if a reorder interval of samples has been taken, reorder the checks
+		if (samples % reorderInterval == 0) {
+			reorder();
+		}
+	}
+	/** Orders the checks by their expected time per rejected pair, lowest first. **/
+	private void reorder() {
+		//insertion sort the few checks by their score
+		for (int i = 1; i != CHECK_COUNT; i++) {
+			int check = order[i];
+			double score = getScore(check);
+			int ii = i - 1;
+			while (ii >= 0 && getScore(order[ii]) > score) {
+				order[ii+1] = order[ii];
+				ii--;
+			}
+			order[ii+1] = check;
+		}
+		reorders++;
+	}
+	/** Returns the expected time per rejected pair of the given check. A check that has rejected nothing scores as if it had rejected half a pair. **/
+	private double getScore(int check) {
+		return nanos[check] / Math.max(rejections[check],0.5);
+	}
+	/** Sets the number of comparisons between samples. **/
+	public void setSampleInterval(int sampleInterval) {
+		this.sampleInterval = Math.max(sampleInterval,1);
+	}
+	/** Sets the number of samples between reorders. **/
+	public void setReorderInterval(int reorderInterval) {
+		this.reorderInterval = Math.max(reorderInterval,1);
+	}
+	/** Adds the samples of the given plan to this plan and reorders the checks by the combined samples, for reporting the statistics of several workers. **/
+	public void merge(SortableMatchPlan plan) {
+		samples+= plan.samples;
+		reorders+= plan.reorders;
+		for (int i = 0; i != CHECK_COUNT; i++) {
+			rejections[i]+= plan.rejections[i];
+			nanos[i]+= plan.nanos[i];
+		}
+		if (isAdaptive && samples != 0) {
+			reorder();
+			reorders--;
+		}
+	}
+	/** Returns the chosen order and the sampled rejection rate and time of each check, as text. **/
+	public String getStats() {
+		StringBuilder stats = new StringBuilder();
+		stats.append("Check order: ");
+		for (int i = 0; i != CHECK_COUNT; i++) {
+			stats.append(( i == 0 ? "" : ", " )).append(checkNames[order[i]]);
+		}
+		stats.append(( isAdaptive ? " (adaptive, "+reorders+" reorders from "+samples+" sampled comparisons)" : " (fixed)" ));
+		//for each check, if there are samples, add its rejection rate and average time
+		for (int i = 0; i != CHECK_COUNT && samples != 0; i++) {
+			stats.append("\r\n  ").append(checkNames[i]).append(": rejects ");
+			stats.append(String.format(java.util.Locale.ROOT,"%.1f%% of pairs, %.0fns per check",rejections[i]*100.0/samples,nanos[i]/(double)samples));
+		}
+		return stats.toString();
+	}
+}
\ No newline at end of file
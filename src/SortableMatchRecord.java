@@ -0,0 +1,79 @@
+/**
+*** SortableMatchRecord class
+*** The result of matching one listing with SortableMatchEngine: the listing, the product it is assigned to and the match type, or no product
+*** and NO_MATCH if it matches none. If the engine's options score the candidates, the record also holds the score of the assigned product
+*** and its alternatives, the other highest scoring candidates, from highest to lowest score. A record is not changed once it is created.
+**/
+
+public class SortableMatchRecord {
+	///The empty list of alternatives.
+	private static final SortableProduct[] NO_PRODUCTS = new SortableProduct[0];
+	private static final double[] NO_SCORES = new double[0];
+	///The listing matched.
+	private final SortableListing listing;
+	///The product the listing is assigned to, or null if it matches none.
+	private final SortableProduct product;
+	///The index of the product in the catalog the listing was compared against, or -1 if it matches none.
+	private final int productIndex;
+	///The match type of the assigned product.
+	private final SortableMatchResult.MatchType matchType;
+	///The score of the assigned product, or NaN if the candidates are not scored or the listing matches none.
+	private final double score;
+	///The alternative products and their scores, from highest to lowest score.
+	private final SortableProduct[] alternatives;
+	private final double[] alternativeScores;
+	/** Constructs a new SortableMatchRecord of the given listing, matching no product. **/
+	public SortableMatchRecord(SortableListing listing) {
+		this(listing,null,-1,SortableMatchResult.MatchType.NO_MATCH,Double.NaN,NO_PRODUCTS,NO_SCORES);
+	}
+	/** Constructs a new SortableMatchRecord of the given listing, assigned to the given product at the given catalog index with the given match type, without a score. **/
+	public SortableMatchRecord(SortableListing listing,SortableProduct product,int productIndex,SortableMatchResult.MatchType matchType) {
+		this(listing,product,productIndex,matchType,Double.NaN,NO_PRODUCTS,NO_SCORES);
+	}
+	/** Constructs a new SortableMatchRecord of the given listing, assigned to the given product at the given catalog index with the given match type, score and alternatives. **/
+	public SortableMatchRecord(SortableListing listing,SortableProduct product,int productIndex,SortableMatchResult.MatchType matchType,double score,SortableProduct[] alternatives,double[] alternativeScores) {
+		this.listing = listing;
+		this.product = product;
+		this.productIndex = productIndex;
+		this.matchType = matchType;
+		this.score = score;
+		this.alternatives = alternatives;
+		this.alternativeScores = alternativeScores;
+	}
+	/** Returns the listing matched. **/
+	public SortableListing getListing() {
+		return listing;
+	}
+	/** Returns whether the listing is assigned to a product. **/
+	public boolean isMatched() {
+		return ( product != null );
+	}
+	/** Returns the product the listing is assigned to, or null if it matches none. **/
+	public SortableProduct getProduct() {
+		return product;
+	}
+	/** Returns the index of the assigned product in the catalog the listing was compared against, or -1 if it matches none. **/
+	public int getProductIndex() {
+		return productIndex;
+	}
+	/** Returns the match type of the assigned product, or NO_MATCH if the listing matches none. **/
+	public SortableMatchResult.MatchType getMatchType() {
+		return matchType;
+	}
+	/** Returns the score of the assigned product, or NaN if the candidates are not scored or the listing matches none. **/
+	public double getScore() {
+		return score;
+	}
+	/** Returns the number of alternative products. **/
+	public int getAlternativeCount() {
+		return alternatives.length;
+	}
+	/** Returns the alternative product at the given position, from highest to lowest score. **/
+	public SortableProduct getAlternative(int i) {
+		return alternatives[i];
+	}
+	/** Returns the score of the alternative product at the given position. **/
+	public double getAlternativeScore(int i) {
+		return alternativeScores[i];
+	}
+}
\ No newline at end of file
@@ -22,10 +22,14 @@ public class SortableMatchResult {
 		///Indicates a STARTS_WITH_MATCH for a partial test or value.
 		STARTS_WITH_PARTIAL_MATCH,
 		///Indicates a CONTAINS_MATCH for a partial test or value.
-		CONTAINS_PARTIAL_MATCH
+		CONTAINS_PARTIAL_MATCH,
+		///Indicates the model only matches within the fuzzy edit distance, the lowest level, which is only found when fuzzy matching is enabled.
+		FUZZY_MATCH
 	};
 	///The match type.
 	private MatchType matchType;
+	///The match score. Higher is better and 0 indicates no match.
+	private double score;
 	/** Constructs a new SortableMatchResult. **/
 	public SortableMatchResult() {
 	}
@@ -41,4 +45,41 @@ public class SortableMatchResult {
 	public void setMatchType(MatchType matchType) {
 		this.matchType = matchType;
 	}
+	/** Returns the match score. **/
+	public double getScore() {
+		return this.score;
+	}
+	/** Sets the match score. **/
+	public void setScore(double score) {
+		this.score = score;
+	}
+	/** Returns the whole part of the score for the given match type: 6 for a full match down to 1 for a contains partial match, and 0 for a fuzzy match or no match. **/
+	public static int getTierScore(MatchType matchType) {
+		switch(matchType) {
+			case FULL_MATCH: return 6;
+			case STARTS_WITH_MATCH: return 5;
+			case CONTAINS_MATCH: return 4;
+			case FULL_PARTIAL_MATCH: return 3;
+			case STARTS_WITH_PARTIAL_MATCH: return 2;
+			case CONTAINS_PARTIAL_MATCH: return 1;
+			default: return 0;
+		}
+	}
+	/** Returns the match type of the given whole part of a score, the reverse of getTierScore, or NO_MATCH if it is not a tier. **/
+	public static MatchType getTierMatchType(int tier) {
+		switch(tier) {
+			case 6: return MatchType.FULL_MATCH;
+			case 5: return MatchType.STARTS_WITH_MATCH;
+			case 4: return MatchType.CONTAINS_MATCH;
+			case 3: return MatchType.FULL_PARTIAL_MATCH;
+			case 2: return MatchType.STARTS_WITH_PARTIAL_MATCH;
+			case 1: return MatchType.CONTAINS_PARTIAL_MATCH;
+			default: return MatchType.NO_MATCH;
+		}
+	}
+	/** Returns the match type of the given score: the match type of its whole part, or FUZZY_MATCH if the whole part is 0 and the score is not, as only a fuzzy match scores below 1. **/
+	public static MatchType getScoreMatchType(double score) {
+		int tier = (int)score;
+		return ( tier == 0 && score > 0 ? MatchType.FUZZY_MATCH : getTierMatchType(tier) );
+	}
 }
\ No newline at end of file
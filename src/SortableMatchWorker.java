@@ -0,0 +1,395 @@
+import tom.data.IntList;
+import tom.string.json.JSONData;
+import tom.string.json.JSONText;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+*** SortableMatchWorker class
+*** Compares blocks of 3rd party product listings against every known product of a catalog and records the best match of each listing.
+*** Any number of workers can run at once over the same listings: each takes the next unclaimed block from a shared counter,
+*** compares them with its own SortableListingComparer, holding its matchers and candidate heap, and appends the index of each matched listing
+*** to its own SortableResultBuckets, in the bucket of the product's index, so recording a match takes no lookup or lock. The JSONData element
+*** for a match is stored at the listing's index, which only that worker writes. The buckets of every worker are merged once they are all done,
+*** and sorted, as blocks finish in any order.
+*** If the options give a prefilter, each worker fills a SortableTokenFilter set of each listing's tokens, which its matchers check before any string comparison.
+*** Each worker orders the checks of its comparisons with its own SortableMatchPlan, so the plans need no synchronisation.
+**/
+
+public class SortableMatchWorker implements Runnable {
+	/**
+	*** Strategy enum
+	*** The order the listings and known products are compared in: each listing against every product (listing-major),
+	*** or the products of each manufacturer against cache blocks of listings (product-major).
+	**/
+	public enum Strategy {
+		LISTING,
+		PRODUCT
+	}
+	///The number of listings in a block.
+	public static final int BLOCK_SIZE = 256;
+	///The number of listings in a cache block of the product-major strategy, one for each bit of a long.
+	private static final int CACHE_BLOCK_SIZE = 64;
+	///The match types in order of accuracy and therefore priority.
+	private static final SortableMatchResult.MatchType[] matchTypes = {
+			SortableMatchResult.MatchType.FULL_MATCH,
+			SortableMatchResult.MatchType.STARTS_WITH_MATCH,
+			SortableMatchResult.MatchType.CONTAINS_MATCH,
+			SortableMatchResult.MatchType.FULL_PARTIAL_MATCH,
+			SortableMatchResult.MatchType.STARTS_WITH_PARTIAL_MATCH,
+			SortableMatchResult.MatchType.CONTAINS_PARTIAL_MATCH,
+			SortableMatchResult.MatchType.FUZZY_MATCH,
+	};
+	///The catalog snapshot the listings are compared against.
+	private final SortableCatalog catalog;
+	///The listings to compare.
+	private final SortableListingStore listings;
+	///The settings of the run.
+	private final SortableOptions options;
+	///The result buckets of this worker, which the indexes of matched listings are appended to by product index.
+	private final SortableResultBuckets buckets;
+	///The JSONData element for each matched listing, by listing index.
+	private final JSONData[] matches;
+	///The shared counter of the next unclaimed block.
+	private final AtomicInteger nextBlock;
+	///The plan ordering the checks of this worker's comparisons.
+	private final SortableMatchPlan plan;
+	///The match type ordinal of each matched listing, by listing index, or null if match types are not recorded.
+	private byte[] matchTypeOrdinals = null;
+	///Whether the match elements are held as their text rather than as trees of JSONData, to fit a heap budget.
+	private boolean isCompactMatches = false;
+	///The job the worker runs for, which can stop it and records its completed blocks, or null.
+	private SortableJob job = null;
+	///The indexes of the matched listings of the current block, and of the products they matched.
+	private final IntList blockMatchedListings = new IntList();
+	private final IntList blockMatchedProducts = new IntList();
+	/** Constructs a new SortableMatchWorker sharing the given listings, match array and block counter with the other workers of a run. **/
+	public SortableMatchWorker(SortableCatalog catalog,SortableListingStore listings,SortableOptions options,JSONData[] matches,AtomicInteger nextBlock) {
+		this.catalog = catalog;
+		this.listings = listings;
+		this.options = options;
+		this.buckets = new SortableResultBuckets(catalog.getProductCount());
+		this.matches = matches;
+		this.nextBlock = nextBlock;
+		this.plan = new SortableMatchPlan(!options.isFixedOrder());
+	}
+	/** Sets the job the worker runs for. The worker stops claiming blocks once the job stops, skips the blocks its checkpoint holds, and reports each block it completes. **/
+	public void setJob(SortableJob job) {
+		this.job = job;
+	}
+	/** Sets the array the match type of each matched listing is recorded in, as its ordinal, by listing index. As with the match elements, only the worker comparing a listing writes its place. **/
+	public void setMatchTypes(byte[] matchTypeOrdinals) {
+		this.matchTypeOrdinals = matchTypeOrdinals;
+	}
+	/** Sets whether the match elements are held as the text they are written as (see JSONText), which takes about a third of the heap of the tree. **/
+	public void setCompactMatches(boolean isCompactMatches) {
+		this.isCompactMatches = isCompactMatches;
+	}
+	/** Returns the result buckets of the listings this worker matched, by product index. **/
+	public SortableResultBuckets getBuckets() {
+		return buckets;
+	}
+	/** Returns the plan ordering the checks of this worker's comparisons, with the statistics it sampled. **/
+	public SortableMatchPlan getPlan() {
+		return plan;
+	}
+	/** Compares blocks of listings until none are left, in the order of the strategy of the run. **/
+	public void run() {
+		//if the products are compared against blocks of listings, use the product-major loop
+		if (options.getStrategy() == Strategy.PRODUCT) {
+			runProductMajor();
+			return;
+		}
+		//create the comparer of this worker, with a matcher for each known product, reused for every listing
+		SortableListingComparer comparer = new SortableListingComparer(catalog,options,plan);
+		//the listing being compared, which stores of encoded listings move from listing to listing rather than creating new objects
+		SortableListing listing = null;
+		int start;
+		//while there are unclaimed blocks, claim the next
+		while ((start = claimBlock()) != -1) {
+			int end = Math.min(start+BLOCK_SIZE,listings.getListingCount());
+			//for each 3rd party product listing in the block
+			for (int i = start; i != end; i++) {
+				listing = listings.getListing(i,listing);
+				//compare it against every known product, and if there is a match, record it
+				int best = comparer.compare(listing);
+				if (best != -1) {
+					addMatch(i,comparer,best);
+				}
+			}
+			completeBlock(start,end);
+		}
+	}
+	/**
+	*** Compares blocks of listings until none are left, product-major: each block is split into cache blocks of listings, and for each group of
+	*** products with the same manufacturer, the manufacturer check is run once per listing of the cache block. Each product of the group is then
+	*** compared against the listings that passed it, one product after another, with the family check run once per family and listing. The
+	*** matches of each listing are collected and replayed in catalog order once every group is done, so the results are the same as run().
+	**/
+	private void runProductMajor() {
+		SortableListingComparer comparer = new SortableListingComparer(catalog,options,plan);
+		SortableTokenFilter tokenFilter = comparer.getTokenFilter();
+		SortableProductMatcher[] productMatcher = comparer.getMatchers();
+		boolean isScored = comparer.isScored();
+		SortableCandidateHeap candidates = comparer.getCandidates();
+		SortableProductGroups groups = catalog.getProductGroups();
+		SortableModelTokenIndex modelTokenIndex = catalog.getModelTokenIndex();
+		boolean[] partialCandidates = new boolean[modelTokenIndex.getProductCount()];
+		IntList markedCandidates = new IntList();
+		//the listings of the cache block, each reused for the listing at its place in the next cache block
+		SortableListing[] blockListings = new SortableListing[CACHE_BLOCK_SIZE];
+		//the matches of each listing of the cache block, as the product index shifted left 3 bits, plus the priority of the match type
+		IntList[] blockMatches = new IntList[CACHE_BLOCK_SIZE];
+		//the token filter set of each listing of the cache block, if the pairs are prefiltered
+		long[][] blockTokens = new long[CACHE_BLOCK_SIZE][];
+		for (int i = 0; i != CACHE_BLOCK_SIZE; i++) {
+			blockMatches[i] = new IntList();
+			blockTokens[i] = ( tokenFilter == null ? null : tokenFilter.createSet() );
+		}
+		//for each product, a bit for each listing of the cache block it can partially match, and the products with any bit set
+		long[] partialBits = new long[productMatcher.length];
+		IntList partialProducts = new IntList();
+		//for each family, a bit for each listing of the cache block whose family check has run, and a bit for each that passed
+		long[] familyChecked = new long[groups.getFamilyCount()];
+		long[] familyPassed = new long[groups.getFamilyCount()];
+		int start;
+		//while there are unclaimed blocks, claim the next
+		while ((start = claimBlock()) != -1) {
+			int end = Math.min(start+BLOCK_SIZE,listings.getListingCount());
+			//for each cache block of the block
+			for (int blockStart = start; blockStart < end; blockStart+= CACHE_BLOCK_SIZE) {
+				int size = Math.min(CACHE_BLOCK_SIZE,end-blockStart);
+				//get each listing, and set the bits of the products it can partially match
+				for (int i = 0; i != size; i++) {
+					blockListings[i] = listings.getListing(blockStart+i,blockListings[i]);
+					blockMatches[i].clear();
+					if (tokenFilter != null) {
+						tokenFilter.fill(blockTokens[i],blockListings[i]);
+					}
+					modelTokenIndex.findCandidates(blockListings[i],partialCandidates,markedCandidates);
+					for (int ii = 0; ii != markedCandidates.getSize(); ii++) {
+						int product = markedCandidates.get(ii);
+						if (partialBits[product] == 0) {
+							partialProducts.add(product);
+						}
+						partialBits[product]|= 1L << i;
+					}
+				}
+				//compare each group of products against the cache block
+				for (int i = 0; i != groups.getGroupCount(); i++) {
+					compareGroup(groups,groups.getProducts(i),productMatcher,blockListings,blockTokens,size,blockMatches,partialBits,familyChecked,familyPassed);
+				}
+				//clear the partial match bits for the next cache block
+				for (int i = 0; i != partialProducts.getSize(); i++) {
+					partialBits[partialProducts.get(i)] = 0;
+				}
+				partialProducts.clear();
+				//for each listing of the cache block
+				for (int i = 0; i != size; i++) {
+					IntList listingMatches = blockMatches[i];
+					//put the matches in catalog order, and keep the first product of the best match type, as run() does
+					listingMatches.sort();
+					int best = -1;
+					int bestPriority = matchTypes.length;
+					candidates.clear();
+					for (int ii = 0; ii != listingMatches.getSize(); ii++) {
+						int product = listingMatches.get(ii) >>> 3;
+						int priority = listingMatches.get(ii) & 7;
+						//set the listing for the matcher, for its score and match element
+						productMatcher[product].setListing(blockListings[i]);
+						if (priority < bestPriority) {
+							best = product;
+							bestPriority = priority;
+						}
+						if (isScored) {
+							candidates.offer(product,productMatcher[product].getMatchScore(getPriorityMatchType(priority)));
+						}
+					}
+					//if models are matched fuzzily and a fuzzy match can change the result, compare the products whose models are within the edit distance
+					if (comparer.isFuzzyNeeded(best)) {
+						int fuzzy = comparer.compareFuzzy(blockListings[i]);
+						if (best == -1 && fuzzy != -1) {
+							best = fuzzy;
+							bestPriority = getMatchTypePriority(SortableMatchResult.MatchType.FUZZY_MATCH);
+						}
+					}
+					//assign the listing, and if there is a match, record it
+					best = comparer.assign(best,bestPriority);
+					if (best != -1) {
+						addMatch(blockStart+i,comparer,best);
+					}
+				}
+			}
+			completeBlock(start,end);
+		}
+	}
+	/** Claims the next block of listings not completed by an earlier run, returning the index of its first listing, or -1 if none are left or the job has stopped. **/
+	private int claimBlock() {
+		//while the job has not stopped
+		while (job == null || !job.isStopped()) {
+			int block = nextBlock.getAndIncrement();
+			//if there are no blocks left, stop
+			if ((long)block * BLOCK_SIZE >= listings.getListingCount()) {
+				return -1;
+			}
+			//if the block was not completed by an earlier run, claim it
+			if (job == null || job.getCheckpoint() == null || !job.getCheckpoint().isBlockDone(block)) {
+				blockMatchedListings.clear();
+				blockMatchedProducts.clear();
+				return block * BLOCK_SIZE;
+			}
+		}
+		return -1;
+	}
+	/** Records the completion of the block of listings from the given start to end (exclusive) in the job and its checkpoint. **/
+	private void completeBlock(int start,int end) {
+		//if there is no job, there is nothing to record
+		if (job == null) {
+			return;
+		}
+		if (job.getCheckpoint() != null) {
+			job.getCheckpoint().write(start / BLOCK_SIZE,blockMatchedListings,blockMatchedProducts,matches);
+		}
+		job.addDone(end - start);
+	}
+	/**
+	*** Compares the given products of a group against the listings of a cache block, adding the matches of each listing to its list.
+	*** The manufacturer check is run by the first product for the whole group, and each family check by the first product of the family for each listing.
+	**/
+	private void compareGroup(SortableProductGroups groups,int[] products,SortableProductMatcher[] productMatcher,SortableListing[] blockListings,long[][] blockTokens,int size,IntList[] blockMatches,long[] partialBits,long[] familyChecked,long[] familyPassed) {
+		//find the listings of the cache block that pass the manufacturer check of the group
+		SortableProductMatcher first = productMatcher[products[0]];
+		long passed = 0;
+		for (int i = 0; i != size; i++) {
+			first.setListing(blockListings[i],true,blockTokens[i]);
+			if (first.isManufacturerMatch()) {
+				passed|= 1L << i;
+			}
+		}
+		//if none passed, no product of the group can match
+		if (passed == 0) {
+			return;
+		}
+		//for each product of the group
+		for (int i = 0; i != products.length; i++) {
+			int product = products[i];
+			int family = groups.getFamily(product);
+			SortableProductMatcher matcher = productMatcher[product];
+			//for each listing that passed the manufacturer check
+			for (long bits = passed; bits != 0; bits&= bits - 1) {
+				int listing = Long.numberOfTrailingZeros(bits);
+				long bit = 1L << listing;
+				matcher.setListing(blockListings[listing],(partialBits[product] & bit) != 0,blockTokens[listing]);
+				//if the family check has not run for the listing, run it
+				if ((familyChecked[family] & bit) == 0) {
+					familyChecked[family]|= bit;
+					if (matcher.isFamilyMatch()) {
+						familyPassed[family]|= bit;
+					}
+				}
+				//if the family matched, the model and name checks decide the match type
+				if ((familyPassed[family] & bit) != 0) {
+					SortableMatchResult.MatchType matchType = matcher.getMatchTypeByModel();
+					if (matchType != SortableMatchResult.MatchType.NO_MATCH) {
+						blockMatches[listing].add(product << 3 | getMatchTypePriority(matchType));
+					}
+				}
+			}
+		}
+		//clear the family check bits of the group for the next group
+		for (int i = 0; i != products.length; i++) {
+			familyChecked[groups.getFamily(products[i])] = 0;
+			familyPassed[groups.getFamily(products[i])] = 0;
+		}
+	}
+	/** Records the match of the listing at the given index to the product at the given index, as assigned by the given comparer, whose matchers are set to the listing. **/
+	private void addMatch(int i,SortableListingComparer comparer,int best) {
+		SortableProductMatcher[] productMatcher = comparer.getMatchers();
+		SortableCandidateHeap candidates = ( comparer.isScored() ? comparer.getCandidates() : null );
+		SortableMatchResult.MatchType matchType = comparer.getMatchType();
+		//store the element for the match and add the listing to the bucket of the product
+		matches[i] = getMatchData(productMatcher,best,matchType,candidates);
+		//if the elements are held as text, render it now so the tree can be collected
+		if (isCompactMatches) {
+			matches[i] = new JSONText(matches[i]);
+		}
+		buckets.add(best,i);
+		//if the match types are recorded, record it
+		if (matchTypeOrdinals != null) {
+			matchTypeOrdinals[i] = (byte)matchType.ordinal();
+		}
+		//keep the match for the record of the block
+		blockMatchedListings.add(i);
+		blockMatchedProducts.add(best);
+	}
+	/** Returns the JSONData element for the listing currently set in the matchers, matched to the product at the given index with the given match type, with its score and alternatives if the candidates are given. **/
+	private JSONData getMatchData(SortableProductMatcher[] productMatcher,int best,SortableMatchResult.MatchType matchType,SortableCandidateHeap candidates) {
+		//get the listing object used in the matcher
+		SortableListing listing = productMatcher[best].getListing();
+		//create a string for the field name, and a string for the value
+		String name = "title";
+		String value = listing.getTitle();
+		//if the value is null
+		if (value == null) {
+			//change the name to name, and get the name
+			name = "name";
+			value = listing.getName();
+		}
+		//create a new JSONData object of type object for the element in the listings array
+		JSONData object = new JSONData(JSONData.Type.OBJECT);
+		//create and add a new JSONData object to the element, containing the name value and of data type string
+		object.addChild(new JSONData(name,value,JSONData.Type.STRING));
+		//create and add new JSONData objects to the element for other fields in the listing
+		object.addChild(new JSONData("manufacturer",listing.getManufacturer(),JSONData.Type.STRING));
+		object.addChild(new JSONData("currency",listing.getCurrency(),JSONData.Type.STRING));
+		object.addChild(new JSONData("price",listing.getPrice(),JSONData.Type.STRING));
+		//if the candidates are scored
+		if (candidates != null) {
+			//add the score of the assigned product
+			object.addChild(new JSONData("score",formatScore(productMatcher[best].getMatchScore(matchType)),JSONData.Type.NUMBER));
+			//if alternatives are to be output
+			if (options.getAlternatives() != 0) {
+				//add the alternatives array to the element
+				object.addChild(getAlternatives(candidates,best,productMatcher));
+			}
+		}
+		return object;
+	}
+	/** Returns a JSONData array of the kept candidates other than the assigned product, from highest to lowest score, up to the number of alternatives to output. **/
+	private JSONData getAlternatives(SortableCandidateHeap candidates,int assigned,SortableProductMatcher[] productMatcher) {
+		//create a JSONData object of type array for the alternatives
+		JSONData array = new JSONData(JSONData.Type.ARRAY);
+		array.setName("alternatives");
+		int count = 0;
+		//for each kept candidate, until the number of alternatives to output is reached
+		for (int i = 0; i != candidates.getSize() && count != options.getAlternatives(); i++) {
+			//if it is not the assigned product
+			if (candidates.getProduct(i) != assigned) {
+				//create an element containing the product name and score
+				JSONData object = new JSONData(JSONData.Type.OBJECT);
+				object.addChild(new JSONData("product_name",productMatcher[candidates.getProduct(i)].getProduct().getName(),JSONData.Type.STRING));
+				object.addChild(new JSONData("score",formatScore(candidates.getScore(i)),JSONData.Type.NUMBER));
+				array.addChild(object);
+				count++;
+			}
+		}
+		return array;
+	}
+	/** Returns the given score as a JSON number with 4 decimal places. **/
+	private static String formatScore(double score) {
+		return String.format(java.util.Locale.ROOT,"%.4f",score);
+	}
+	/** Returns the priority level of the given SortableMatchResult match type where 0 = highest, or the number of match types if it has no priority. **/
+	public static int getMatchTypePriority(SortableMatchResult.MatchType matchType) {
+		//for each match type in order of priority
+		for (int i = 0; i != matchTypes.length; i++) {
+			//if it is the given match type, return its priority
+			if (matchTypes[i] == matchType) { return i; }
+		}
+		return matchTypes.length;
+	}
+	/** Returns the SortableMatchResult match type corresponding to the given priority level where 0 = highest. **/
+	public static SortableMatchResult.MatchType getPriorityMatchType(int priority) {
+		return ( priority < matchTypes.length ? matchTypes[priority] : SortableMatchResult.MatchType.NO_MATCH );
+	}
+}
\ No newline at end of file
@@ -0,0 +1,195 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+*** SortableMemoryEstimator class
+*** Estimates the heap a run needs from live counters, and decides whether each phase fits the heap budget.
+*** The heap in use is measured at the boundaries of the phases after a garbage collection, so the difference between two measurements is
+*** what a phase keeps rather than the garbage it makes on the way. Only those measurements, a few per run, force a collection; the checks
+*** against the budget read the heap the pools held after the last collection the JVM made (see getUsedHeap()). Dividing it by the number of records parsed, listings held or matches
+*** made gives the bytes per parsed record (the JSONDocument with the listings read from it), per listing held and per match (the element and
+*** its place in the result tree), which are reported at the end of the run. Listings held on the heap cache their normalized text as they are
+*** compared, which is kept by matching too, so for them the bytes per match include it.
+*** A phase is projected before it starts from the defaults below, measured on the sample feed, except that parsing is projected from the run's
+*** own measurement once a document has been parsed, as when the listings are parsed in shards. Matches are projected for every listing, as
+*** the number that will match is only known afterwards, so the projection is an upper bound.
+*** Listings held off the heap take direct memory instead, which is limited separately (see getDirectLimit()), so moving them off the heap
+*** is only a way out of the budget if their projected records fit the direct memory left.
+*** Each measurement takes a full collection, so an estimator is only created when a heap budget or a memory report is requested.
+**/
+
+public class SortableMemoryEstimator {
+	///The default heap bytes per byte of listing file parsed into a JSONDocument along with the listings read from it.
+	public static final double DEFAULT_PARSE_BYTES_PER_FILE_BYTE = 11;
+	///The default heap bytes per match element as a tree of JSONData, and as text (see JSONText).
+	public static final long DEFAULT_MATCH_BYTES = 800;
+	public static final long DEFAULT_COMPACT_MATCH_BYTES = 320;
+	///The default heap bytes a listing held on the heap caches as it is compared.
+	public static final long DEFAULT_NORMALIZED_BYTES = 850;
+	///The default bytes of encoded records (see SortableListingRecord) per byte of listing file, measured on the sample feed.
+	public static final double DEFAULT_RECORD_BYTES_PER_FILE_BYTE = 0.7;
+	///The smallest shard of a listings file parsed at a time, in characters, so a small budget does not parse a record at a time.
+	public static final int MIN_SHARD_LENGTH = 64 * 1024;
+	///The number of bytes in a megabyte, the unit of the budget and the report.
+	private static final long MB = 1024 * 1024;
+	///The heap budget in bytes, or 0 for none.
+	private final long budget;
+	///The heap in use at the start of the phase being measured.
+	private long phaseStart = 0;
+	///The most heap in use measured.
+	private long peak = 0;
+	///The number of records parsed, and the heap they took while their document was held.
+	private int parsedRecords = 0;
+	private long parsedBytes = 0;
+	///The bytes per byte of listing file parsed, measured once a document is parsed.
+	private double parseBytesPerFileByte = DEFAULT_PARSE_BYTES_PER_FILE_BYTE;
+	///The number of listings held, and the heap they take.
+	private int heldListings = 0;
+	private long heldBytes = 0;
+	///The number of matches made, and the heap kept by matching once the result tree is complete.
+	private int matches = 0;
+	private long matchBytes = 0;
+	///Whether the listings cache their normalized text on the heap as they are compared.
+	private boolean isHeapListings = false;
+	///Whether the match elements are held as text.
+	private boolean isCompactMatches = false;
+	/** Constructs a new SortableMemoryEstimator for the given heap budget in bytes, or 0 for none. **/
+	public SortableMemoryEstimator(long budget) {
+		this.budget = budget;
+	}
+	/** Returns the default heap budget: 80% of the maximum heap of the JVM, leaving room for the garbage made between measurements. **/
+	public static long getDefaultBudget() {
+		return Runtime.getRuntime().maxMemory() / 5 * 4;
+	}
+	/** Returns the heap budget in bytes, or 0 for none. **/
+	public long getBudget() {
+		return budget;
+	}
+	/** Returns the maximum direct memory of the JVM: the -XX:MaxDirectMemorySize option if given, else the maximum heap, which is its default. **/
+	public static long getDirectLimit() {
+		for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (argument.startsWith("-XX:MaxDirectMemorySize=")) {
+				return parseSize(argument.substring(argument.indexOf('=')+1));
+			}
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+	/** Returns the direct memory allocated by the JVM's direct buffers. **/
+	public static long getUsedDirect() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getTotalCapacity();
+			}
+		}
+		return 0;
+	}
+	/**
+	*** Returns the heap in use after the last garbage collection the JVM made, without forcing one: the sum of what each heap pool held after
+	*** it was last collected, or of what it holds now if it has not been. Objects allocated since that collection are not counted.
+	**/
+	public long getUsedHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				MemoryUsage usage = pool.getCollectionUsage();
+				used+= ( usage == null || usage.getCommitted() == 0 ? pool.getUsage().getUsed() : usage.getUsed() );
+			}
+		}
+		return used;
+	}
+	/** Returns the heap in use after forcing a garbage collection, keeping the most measured as the peak. It is only called at the boundaries of phases. **/
+	private long measureHeap() {
+		System.gc();
+		long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		peak = Math.max(peak,used);
+		return used;
+	}
+	/** Returns whether the given number of bytes more than the heap in use fits the budget. There is always room if there is no budget. **/
+	public boolean isWithinBudget(long bytes) {
+		return ( budget == 0 || getUsedHeap() + bytes <= budget );
+	}
+	/** Returns whether the given number of bytes more than the direct memory allocated fits the direct memory limit. **/
+	public boolean isWithinDirectLimit(long bytes) {
+		return ( getUsedDirect() + bytes <= getDirectLimit() );
+	}
+	/**
+	*** Returns the direct memory projected for holding the listings of a listings file of the given length off the heap: twice their records,
+	*** as the chunks of a SortableOffHeapListingStore double in size, so the last may be up to half empty.
+	**/
+	public long getProjectedOffHeapBytes(long fileLength) {
+		return (long)(fileLength * DEFAULT_RECORD_BYTES_PER_FILE_BYTE) * 2;
+	}
+	/** Returns the heap projected for parsing a listings file of the given length into a JSONDocument and reading its listings onto the heap. **/
+	public long getProjectedParseBytes(long fileLength) {
+		return (long)(fileLength * parseBytesPerFileByte);
+	}
+	/** Returns the number of characters of a listings file to parse at a time so that a shard takes at most half the room left in the budget. **/
+	public int getShardLength() {
+		long room = budget - getUsedHeap();
+		return (int)Math.max(MIN_SHARD_LENGTH,Math.min(Integer.MAX_VALUE / 2,(long)(room / 2 / parseBytesPerFileByte)));
+	}
+	/**
+	*** Returns the heap projected for matching the given number of listings: the match elements, as trees or as text, and result tree if every
+	*** listing matches, and the normalized text the listings cache if they are held on the heap.
+	**/
+	public long getProjectedMatchBytes(int listingCount,boolean isCompact) {
+		return listingCount * (( isCompact ? DEFAULT_COMPACT_MATCH_BYTES : DEFAULT_MATCH_BYTES ) + ( isHeapListings ? DEFAULT_NORMALIZED_BYTES : 0 ));
+	}
+	/** Measures the heap in use at the start of a phase. **/
+	public void beginPhase() {
+		phaseStart = measureHeap();
+	}
+	/**
+	*** Records that the given number of records were parsed from the given number of characters since the phase began, and are held with their
+	*** document, measuring the heap they take. The measurement replaces the default projection of parsing.
+	**/
+	public void recordParsed(int records,long length) {
+		long bytes = Math.max(measureHeap() - phaseStart,0);
+		parsedRecords = records;
+		parsedBytes = bytes;
+		if (length != 0 && bytes != 0) {
+			parseBytesPerFileByte = (double)bytes / length;
+		}
+	}
+	/** Records that the given number of listings are held since the phase began, without their document, measuring the heap they take. **/
+	public void recordListings(int listings) {
+		heldListings = listings;
+		heldBytes = Math.max(measureHeap() - phaseStart,0);
+	}
+	/** Sets whether the match elements are held as text. **/
+	public void setCompactMatches(boolean isCompactMatches) {
+		this.isCompactMatches = isCompactMatches;
+	}
+	/** Adds the given number of matches to the count made since the phase began. **/
+	public void addMatches(int count) {
+		matches+= count;
+	}
+	/** Sets whether the listings are held on the heap, where they cache their normalized text as they are compared. **/
+	public void setHeapListings(boolean isHeapListings) {
+		this.isHeapListings = isHeapListings;
+	}
+	/** Measures the heap kept by matching since the phase began, once the result tree is complete. **/
+	public void recordMatches() {
+		matchBytes = Math.max(measureHeap() - phaseStart,0);
+	}
+	/** Returns the estimated bytes per parsed record, per listing held and per match, with the peak heap measured, the budget and the direct memory allocated, as text. **/
+	public String getReport() {
+		return "memory: "+parsedRecords+" records parsed at about "+getAverage(parsedBytes,parsedRecords)+" bytes each with their document, "+
+			heldListings+" listings held at about "+getAverage(heldBytes,heldListings)+" bytes each, "+
+			matches+" matches at about "+getAverage(matchBytes,matches)+" bytes each"+( isCompactMatches ? " as text" : "" )+( isHeapListings ? " with the text the listings cached" : "" )+
+			". Peak measured heap "+(peak / MB)+"MB"+( budget == 0 ? "" : " of a "+(budget / MB)+"MB budget" )+", direct memory "+(getUsedDirect() / MB)+"MB of "+(getDirectLimit() / MB)+"MB.";
+	}
+	/** Returns the number of bytes given by a JVM size option value: a number with an optional k, m or g suffix. **/
+	private static long parseSize(String value) {
+		char suffix = Character.toLowerCase(value.charAt(value.length()-1));
+		int shift = ( suffix == 'k' ? 10 : suffix == 'm' ? 20 : suffix == 'g' ? 30 : 0 );
+		return Long.parseLong(shift == 0 ? value : value.substring(0,value.length()-1)) << shift;
+	}
+	/** Returns the given number of bytes divided by the given count, or 0 if the count is 0. **/
+	private static long getAverage(long bytes,int count) {
+		return ( count == 0 ? 0 : bytes / count );
+	}
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+import tom.data.HashTable;
+import tom.data.IntList;
+import tom.string.TokenizedString;
+
+/**
+*** SortableModelTokenIndex class
+*** An inverted index from the model tokens of the known products of a catalog, such as "DSC", "W310" or "SX130", to the indexes of the products with them.
+*** A partial model match needs a model token to be in the listing title or name between separators, which makes it one of the listing's tokens,
+*** so looking up each listing token gives every product that can partially match the listing. Products whose models split into an empty
+*** token, which matches between any two adjacent separators, are always candidates. The candidates are a superset: each one is still checked
+*** by its SortableProductMatcher, which also rules out tokens after "for", so using the index does not change any result.
+*** Tokens are looked up by their region of the listing string, without creating substrings, in an open addressing table with linear probing.
+*** The index is immutable once built, so it can be shared between threads.
+**/
+
+public class SortableModelTokenIndex {
+	///The number of products indexed.
+	private final int productCount;
+	///The tokens, at the slot of their hash, or null for empty slots.
+	private final String[] keys;
+	///The indexes of the products with the token at the same slot, in catalog order.
+	private final int[][] products;
+	///The mask giving a slot from a hash.
+	private final int mask;
+	///The indexes of the products that are always candidates.
+	private final int[] alwaysCandidates;
+	/** Builds the index for the given catalog. **/
+	public SortableModelTokenIndex(SortableCatalog catalog) {
+		productCount = catalog.getProductCount();
+		//gather the products of each distinct token
+		HashTable<IntList> tokenProducts = new HashTable<IntList>(Math.max(productCount*2,20));
+		IntList always = new IntList();
+		//for each product
+		for (int i = 0; i != productCount; i++) {
+			String[] tokens = SortableProductMatcher.getModelTokens(catalog.getProduct(i));
+			//if the model is not specified, the product cannot match partially
+			if (tokens == null) {
+				continue;
+			}
+			//for each token
+			for (int ii = 0; ii != tokens.length; ii++) {
+				//if the token is empty, the product is always a candidate
+				if (tokens[ii].length() == 0) {
+					always.add(i);
+					continue;
+				}
+				IntList list = tokenProducts.get(tokens[ii]);
+				if (list == null) {
+					list = new IntList(2);
+					tokenProducts.add(tokens[ii],list);
+				}
+				//add the product once, even if the model repeats the token
+				if (list.getSize() == 0 || list.get(list.getSize()-1) != i) {
+					list.add(i);
+				}
+			}
+		}
+		//size the table to at most half full
+		String[] tokens = tokenProducts.getKeys();
+		int capacity = 16;
+		while (capacity < tokens.length*2) { capacity<<= 1; }
+		keys = new String[capacity];
+		products = new int[capacity][];
+		mask = capacity - 1;
+		//for each distinct token, store it at the first free slot from its hash
+		for (int i = 0; i != tokens.length; i++) {
+			int slot = spread(tokens[i].hashCode()) & mask;
+			while (keys[slot] != null) { slot = (slot + 1) & mask; }
+			keys[slot] = tokens[i];
+			products[slot] = tokenProducts.get(tokens[i]).toArray();
+		}
+		alwaysCandidates = always.toArray();
+	}
+	/** Returns the number of products indexed, which is the length the candidate flags array must have. **/
+	public int getProductCount() {
+		return productCount;
+	}
+	/**
+	*** Sets the flag of every product that can partially match the given listing's title or name.
+	*** The flags set for the previous listing, listed in the marked list, are cleared first, and the newly set flags are listed in it.
+	**/
+	public void findCandidates(SortableListing listing,boolean[] candidates,IntList marked) {
+		//clear the flags of the previous listing
+		for (int i = 0; i != marked.getSize(); i++) {
+			candidates[marked.get(i)] = false;
+		}
+		marked.clear();
+		//mark the products that are always candidates
+		mark(alwaysCandidates,candidates,marked);
+		//mark the products with each token of the title and name
+		findCandidates(listing.getNormalizedTitle(),candidates,marked);
+		findCandidates(listing.getNormalizedName(),candidates,marked);
+	}
+	/** Sets the flag of every product with a model token equal to one of the tokens of the given subject, listing them in the marked list. **/
+	private void findCandidates(TokenizedString subject,boolean[] candidates,IntList marked) {
+		//if the subject is not specified, it has no tokens
+		if (subject == null) {
+			return;
+		}
+		String value = subject.getValue();
+		//for each token
+		for (int i = 0; i != subject.getTokenCount(); i++) {
+			int start = subject.getTokenStart(i);
+			int length = subject.getTokenEnd(i) - start;
+			//hash the token region in the same way as String.hashCode
+			int hash = 0;
+			for (int ii = 0; ii != length; ii++) {
+				hash = 31 * hash + value.charAt(start+ii);
+			}
+			//probe from the slot of the hash until the token or an empty slot is found
+			for (int slot = spread(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot].length() == length && keys[slot].regionMatches(0,value,start,length)) {
+					mark(products[slot],candidates,marked);
+					break;
+				}
+			}
+		}
+	}
+	/** Sets the flags of the given products that are not yet set, listing them in the marked list. **/
+	private static void mark(int[] products,boolean[] candidates,IntList marked) {
+		for (int i = 0; i != products.length; i++) {
+			if (!candidates[products[i]]) {
+				candidates[products[i]] = true;
+				marked.add(products[i]);
+			}
+		}
+	}
+	/** Returns the given hash with its high bits mixed into its low bits, as only the low bits select a slot. **/
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
\ No newline at end of file
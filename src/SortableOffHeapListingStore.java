@@ -0,0 +1,78 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+*** SortableOffHeapListingStore class
+*** A SortableListingStore holding the listings as encoded records (see SortableListingRecord) in direct ByteBuffers outside of the Java heap,
+*** so that large listing sets add almost nothing to the heap the garbage collector has to trace. Records are appended to chunks, and a record
+*** never spans two chunks. The first chunk is of the size given, which should be about the size of the input, and each chunk after it is
+*** twice the size of the one before, up to MAX_CHUNK_SIZE, so a small input takes little direct memory and a large one few chunks. The only heap structure is an index of one long per listing, holding the
+*** chunk in its high 32 bits and the offset in the chunk in its low 32 bits. Listings are read through SortableListingView flyweights.
+*** Adding is not thread safe, but once filled the store can be read by any number of threads, each with its own view.
+*** Direct memory is limited by the -XX:MaxDirectMemorySize JVM option, which defaults to the maximum heap size.
+**/
+
+public class SortableOffHeapListingStore implements SortableListingStore {
+	///The default size of the first chunk in bytes.
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	///The largest size a chunk grows to in bytes.
+	public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+	///The size of the next chunk in bytes, unless a record is larger.
+	private int chunkSize;
+	///The chunks holding the records.
+	private ByteBuffer[] chunks = new ByteBuffer[4];
+	///The number of chunks.
+	private int chunkCount = 0;
+	///The position of each record, as the chunk in the high 32 bits and the offset in the low 32 bits.
+	private long[] index;
+	///The number of records.
+	private int count = 0;
+	/** Constructs a new SortableOffHeapListingStore with the default size of the first chunk. **/
+	public SortableOffHeapListingStore() {
+		this(DEFAULT_CHUNK_SIZE,1024);
+	}
+	/** Constructs a new SortableOffHeapListingStore with the given size of the first chunk in bytes, up to MAX_CHUNK_SIZE, and room in the index for the given number of listings. **/
+	public SortableOffHeapListingStore(int chunkSize,int capacity) {
+		this.chunkSize = Math.max(1,Math.min(chunkSize,MAX_CHUNK_SIZE));
+		this.index = new long[Math.max(capacity,16)];
+	}
+	/** Encodes and appends the given listing. **/
+	public void add(SortableListing listing) {
+		byte[] record = SortableListingRecord.encode(listing);
+		//if there is no chunk or the current one is too full for the record, allocate a new one
+		if (chunkCount == 0 || chunks[chunkCount-1].remaining() < record.length) {
+			if (chunkCount == chunks.length) {
+				chunks = Arrays.copyOf(chunks,chunkCount*2);
+			}
+			chunks[chunkCount++] = ByteBuffer.allocateDirect(Math.max(chunkSize,record.length));
+			//double the size of the next chunk, up to the largest
+			chunkSize = (int)Math.min((long)chunkSize * 2,MAX_CHUNK_SIZE);
+		}
+		ByteBuffer chunk = chunks[chunkCount-1];
+		//grow the index if needed
+		if (count == index.length) {
+			index = Arrays.copyOf(index,count*2);
+		}
+		index[count++] = ((long)(chunkCount-1) << 32) | chunk.position();
+		chunk.put(record);
+	}
+	/** Returns the number of listings. **/
+	public int getListingCount() {
+		return count;
+	}
+	/** Returns the number of bytes of direct memory allocated for the records. **/
+	public long getAllocatedBytes() {
+		long bytes = 0;
+		for (int i = 0; i != chunkCount; i++) {
+			bytes+= chunks[i].capacity();
+		}
+		return bytes;
+	}
+	/** Returns the listing at the given index, moving the given listing to it if it is a view, else returning a new view. **/
+	public SortableListing getListing(int i,SortableListing reuse) {
+		SortableListingView view = ( reuse instanceof SortableListingView ? (SortableListingView)reuse : new SortableListingView() );
+		long position = index[i];
+		view.setRecord(chunks[(int)(position >>> 32)],(int)position);
+		return view;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,390 @@
+/**
+*** SortableOptions class
+*** Holds the optional settings for a matching run, given on the command line as arguments of the form --name or --name=value.
+**/
+
+public class SortableOptions {
+	///The number of alternative products to output for each matched listing. 0 outputs none.
+	private int alternatives = 0;
+	///Whether listings are assigned to the highest scoring product instead of the first product of the best match type.
+	private boolean rankByScore = false;
+	///The number of threads comparing listings.
+	private int threads = 1;
+	///Whether matches with outlying prices are rejected.
+	private boolean priceFilter = false;
+	///The number of scaled median absolute deviations beyond which a price is an outlier.
+	private double priceThreshold = 3.0;
+	///The file to read currency rates from, or null to compare prices without conversion.
+	private String ratesFile = null;
+	///Whether the listings are held as encoded records outside of the Java heap.
+	private boolean offHeap = false;
+	///The number of threads parsing the newline delimited JSON listings file.
+	private int parseThreads = 1;
+	///The file to also write the matches to in the columnar format, or null for none.
+	private String columnarFile = null;
+	///Whether the listings file is parsed into a JSONTape rather than a tree of JSONData objects.
+	private boolean tape = false;
+	///The number of bits of the token filter set of each listing, or 0 to compare every pair without the token filter.
+	private int prefilterBits = 0;
+	///The maximum edit distance of a fuzzy model match, or 0 for no fuzzy matching.
+	private int fuzzyDistance = 0;
+	///The size of the output buffers in bytes.
+	private int outputBufferSize = SortableOutputSink.DEFAULT_BUFFER_SIZE;
+	///The compression applied to the output file.
+	private SortableOutputSink.Compression compression = SortableOutputSink.Compression.NONE;
+	///Whether the output file is written to a temporary file and moved into place once complete.
+	private boolean atomicOutput = false;
+	///Whether the comparison checks keep a fixed order, rather than being reordered by their sampled cost and selectivity.
+	private boolean fixedOrder = false;
+	///Whether the run statistics are output.
+	private boolean stats = false;
+	///Whether the progress of the run is output.
+	private boolean progress = false;
+	///The number of seconds after which the run stops, or 0 for no deadline.
+	private double deadline = 0;
+	///The file recording the completed blocks of listings, for resuming a stopped run, or null for none.
+	private String checkpointFile = null;
+	///The heap budget in bytes the run switches to sharded parsing and compact match elements to stay within, or 0 for none.
+	private long heapBudget = 0;
+	///Whether the estimated memory footprint of the run is output.
+	private boolean memoryReport = false;
+	///The order the listings and known products are compared in.
+	private SortableMatchWorker.Strategy strategy = SortableMatchWorker.Strategy.LISTING;
+	/** Constructs a new SortableOptions with the default settings. **/
+	public SortableOptions() {
+	}
+	/** Applies the given command line option, returning false if it is not a recognised option or its value is invalid. **/
+	public boolean parse(String argument) {
+		//if it is not an option
+		if (!argument.startsWith("--")) {
+			return false;
+		}
+		//split the option into its name and value
+		int separator = argument.indexOf('=');
+		String name = ( separator == -1 ? argument.substring(2) : argument.substring(2,separator) );
+		String value = ( separator == -1 ? null : argument.substring(separator+1) );
+		//anticipate invalid numbers
+		try {
+			if (name.equals("alternatives") && value != null) {
+				setAlternatives(Integer.parseInt(value));
+				return alternatives >= 0;
+			}
+			else if (name.equals("rank-by-score") && value == null) {
+				setRankByScore(true);
+				return true;
+			}
+			else if (name.equals("price-filter")) {
+				setPriceFilter(true);
+				//if a threshold is given, use it
+				if (value != null) {
+					setPriceThreshold(Double.parseDouble(value));
+				}
+				return priceThreshold > 0;
+			}
+			else if (name.equals("threads") && value != null) {
+				setThreads(Integer.parseInt(value));
+				return threads >= 1;
+			}
+			else if (name.equals("rates") && value != null) {
+				setRatesFile(value);
+				return true;
+			}
+			else if (name.equals("offheap") && value == null) {
+				setOffHeap(true);
+				return true;
+			}
+			else if (name.equals("parse-threads") && value != null) {
+				setParseThreads(Integer.parseInt(value));
+				return parseThreads >= 1;
+			}
+			else if (name.equals("prefilter")) {
+				setPrefilterBits(( value == null ? SortableTokenFilter.DEFAULT_BITS : Integer.parseInt(value) ));
+				return SortableTokenFilter.isValidBits(prefilterBits);
+			}
+			else if (name.equals("fuzzy")) {
+				setFuzzyDistance(( value == null ? 1 : Integer.parseInt(value) ));
+				return fuzzyDistance >= 1 && fuzzyDistance <= SortableFuzzyModelIndex.MAX_DISTANCE;
+			}
+			else if (name.equals("columnar") && value != null) {
+				setColumnarFile(value);
+				return true;
+			}
+			else if (name.equals("tape") && value == null) {
+				setTape(true);
+				return true;
+			}
+			else if (name.equals("output-buffer") && value != null) {
+				setOutputBufferSize(Integer.parseInt(value));
+				return outputBufferSize >= 1;
+			}
+			else if (name.equals("compress") && value != null) {
+				//anticipate unknown compressions
+				try {
+					setCompression(SortableOutputSink.Compression.valueOf(value.toUpperCase(java.util.Locale.ROOT)));
+					return true;
+				}
+				catch(IllegalArgumentException e) {
+					return false;
+				}
+			}
+			else if (name.equals("atomic-output") && value == null) {
+				setAtomicOutput(true);
+				return true;
+			}
+			else if (name.equals("fixed-order") && value == null) {
+				setFixedOrder(true);
+				return true;
+			}
+			else if (name.equals("stats") && value == null) {
+				setStats(true);
+				return true;
+			}
+			else if (name.equals("progress") && value == null) {
+				setProgress(true);
+				return true;
+			}
+			else if (name.equals("deadline") && value != null) {
+				setDeadline(Double.parseDouble(value));
+				return deadline > 0;
+			}
+			else if (name.equals("checkpoint") && value != null) {
+				setCheckpointFile(value);
+				return true;
+			}
+			else if (name.equals("heap-budget")) {
+				//if no size is given, use the default budget, else the size in megabytes
+				setHeapBudget(( value == null ? SortableMemoryEstimator.getDefaultBudget() : Long.parseLong(value) * 1024 * 1024 ));
+				return heapBudget > 0;
+			}
+			else if (name.equals("memory-report") && value == null) {
+				setMemoryReport(true);
+				return true;
+			}
+			else if (name.equals("strategy") && value != null) {
+				//anticipate unknown strategies
+				try {
+					setStrategy(SortableMatchWorker.Strategy.valueOf(value.toUpperCase(java.util.Locale.ROOT)));
+					return true;
+				}
+				catch(IllegalArgumentException e) {
+					return false;
+				}
+			}
+		}
+		catch(NumberFormatException e) {
+			return false;
+		}
+		//unknown option
+		return false;
+	}
+	/** Returns the syntax of the options for the usage message. **/
+	public static String getSyntax() {
+		return "Options:\r\n"+
+			"  --alternatives=<n>  output up to n runner-up products with scores for each matched listing\r\n"+
+			"  --rank-by-score     assign each listing to its highest scoring product instead of the first product of the best match type\r\n"+
+			"  --price-filter[=t]  reject matches priced more than t (default 3) robust deviations from the product's typical price\r\n"+
+			"  --rates=<file>      read currency rates (CODE=rate lines) used to compare prices in different currencies\r\n"+
+			"  --threads=<n>       compare listings on n threads (default 1)\r\n"+
+			"  --offheap           hold the listings as encoded records outside of the Java heap, parsing the listings file a shard of lines at a time\r\n"+
+			"  --parse-threads=<n> parse the listings file on n threads; it must hold one listing object per line (default 1, not with --offheap)\r\n"+
+			"  --tape              parse the listings file into node arrays rather than an object per value, on one thread\r\n"+
+			"  --output-buffer=<n> write the output through buffers of n bytes (default 1048576)\r\n"+
+			"  --compress=<c>      compress the output file with none, gzip or deflate (default none)\r\n"+
+			"  --atomic-output     write the output to a temporary file and move it into place once complete\r\n"+
+			"  --columnar=<file>   also write the matches to file as typed columns of product name, listing index, match type, price and currency\r\n"+
+			"  --fixed-order       run the manufacturer, family and model checks in that order instead of by their sampled cost and selectivity\r\n"+
+			"  --stats             output the order chosen for the checks and their sampled rejection rates and times\r\n"+
+			"  --prefilter[=b]     reject pairs by a b bit filter of each listing's tokens (default 256, a power of two of at least 64) before comparing strings\r\n"+
+			"  --fuzzy[=k]         match models within k edits (default 1, at most 3) of the listing as the lowest match type, when no other matches\r\n"+
+			"  --strategy=<s>      compare each listing against every product (listing), or each manufacturer's products against blocks of listings (product) (default listing)\r\n"+
+			"  --progress          output the progress of the run each second, with the rate and the time left\r\n"+
+			"  --deadline=<s>      stop the run after s seconds, recording the completed listings if there is a checkpoint\r\n"+
+			"  --checkpoint=<file> record the completed listings in file, and resume from it if it exists; it is deleted once the output is written\r\n"+
+			"  --heap-budget[=mb]  parse the listings in shards off the heap, and hold matches as text, when the projected heap would exceed mb (default 80% of the maximum heap)\r\n"+
+			"  --memory-report     output the estimated bytes per parsed record, listing held and match, measured during the run";
+	}
+	/** Returns the number of alternative products to output for each matched listing. **/
+	public int getAlternatives() {
+		return this.alternatives;
+	}
+	/** Sets the number of alternative products to output for each matched listing. **/
+	public void setAlternatives(int alternatives) {
+		this.alternatives = alternatives;
+	}
+	/** Returns whether listings are assigned to the highest scoring product. **/
+	public boolean isRankByScore() {
+		return this.rankByScore;
+	}
+	/** Sets whether listings are assigned to the highest scoring product. **/
+	public void setRankByScore(boolean rankByScore) {
+		this.rankByScore = rankByScore;
+	}
+	/** Returns the number of threads comparing listings. **/
+	public int getThreads() {
+		return this.threads;
+	}
+	/** Sets the number of threads comparing listings. **/
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	/** Returns whether matches with outlying prices are rejected. **/
+	public boolean isPriceFilter() {
+		return this.priceFilter;
+	}
+	/** Sets whether matches with outlying prices are rejected. **/
+	public void setPriceFilter(boolean priceFilter) {
+		this.priceFilter = priceFilter;
+	}
+	/** Returns the number of scaled median absolute deviations beyond which a price is an outlier. **/
+	public double getPriceThreshold() {
+		return this.priceThreshold;
+	}
+	/** Sets the number of scaled median absolute deviations beyond which a price is an outlier. **/
+	public void setPriceThreshold(double priceThreshold) {
+		this.priceThreshold = priceThreshold;
+	}
+	/** Returns the file to read currency rates from, or null. **/
+	public String getRatesFile() {
+		return this.ratesFile;
+	}
+	/** Sets the file to read currency rates from. **/
+	public void setRatesFile(String ratesFile) {
+		this.ratesFile = ratesFile;
+	}
+	/** Returns whether the listings are held outside of the Java heap. **/
+	public boolean isOffHeap() {
+		return this.offHeap;
+	}
+	/** Sets whether the listings are held outside of the Java heap. **/
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+	/** Returns the number of threads parsing the listings file. **/
+	public int getParseThreads() {
+		return this.parseThreads;
+	}
+	/** Sets the number of threads parsing the listings file. The file must be newline delimited when more than one is used. **/
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+	/** Returns the number of bits of the token filter set of each listing, or 0 if the pairs are not prefiltered. **/
+	public int getPrefilterBits() {
+		return this.prefilterBits;
+	}
+	/** Sets the number of bits of the token filter set of each listing, a power of two of at least 64, or 0 not to prefilter the pairs. **/
+	public void setPrefilterBits(int prefilterBits) {
+		this.prefilterBits = prefilterBits;
+	}
+	/** Returns the maximum edit distance of a fuzzy model match, or 0 if models are not matched fuzzily. **/
+	public int getFuzzyDistance() {
+		return this.fuzzyDistance;
+	}
+	/** Sets the maximum edit distance of a fuzzy model match, from 1 to SortableFuzzyModelIndex.MAX_DISTANCE, or 0 not to match models fuzzily. **/
+	public void setFuzzyDistance(int fuzzyDistance) {
+		this.fuzzyDistance = fuzzyDistance;
+	}
+	/** Returns the file to also write the matches to in the columnar format, or null. **/
+	public String getColumnarFile() {
+		return this.columnarFile;
+	}
+	/** Sets the file to also write the matches to in the columnar format (see SortableColumnarWriter). **/
+	public void setColumnarFile(String columnarFile) {
+		this.columnarFile = columnarFile;
+	}
+	/** Returns whether the listings file is parsed into a JSONTape. **/
+	public boolean isTape() {
+		return this.tape;
+	}
+	/** Sets whether the listings file is parsed into a JSONTape. The parse threads are not used when it is. **/
+	public void setTape(boolean tape) {
+		this.tape = tape;
+	}
+	/** Returns the size of the output buffers in bytes. **/
+	public int getOutputBufferSize() {
+		return this.outputBufferSize;
+	}
+	/** Sets the size of the output buffers in bytes. **/
+	public void setOutputBufferSize(int outputBufferSize) {
+		this.outputBufferSize = outputBufferSize;
+	}
+	/** Returns the compression applied to the output file. **/
+	public SortableOutputSink.Compression getCompression() {
+		return this.compression;
+	}
+	/** Sets the compression applied to the output file. **/
+	public void setCompression(SortableOutputSink.Compression compression) {
+		this.compression = compression;
+	}
+	/** Returns whether the output file is written to a temporary file and moved into place once complete. **/
+	public boolean isAtomicOutput() {
+		return this.atomicOutput;
+	}
+	/** Sets whether the output file is written to a temporary file and moved into place once complete. **/
+	public void setAtomicOutput(boolean atomicOutput) {
+		this.atomicOutput = atomicOutput;
+	}
+	/** Returns whether the comparison checks keep a fixed order. **/
+	public boolean isFixedOrder() {
+		return this.fixedOrder;
+	}
+	/** Sets whether the comparison checks keep a fixed order. **/
+	public void setFixedOrder(boolean fixedOrder) {
+		this.fixedOrder = fixedOrder;
+	}
+	/** Returns whether the run statistics are output. **/
+	public boolean isStats() {
+		return this.stats;
+	}
+	/** Sets whether the run statistics are output. **/
+	public void setStats(boolean stats) {
+		this.stats = stats;
+	}
+	/** Returns the order the listings and known products are compared in. **/
+	public SortableMatchWorker.Strategy getStrategy() {
+		return this.strategy;
+	}
+	/** Sets the order the listings and known products are compared in. **/
+	public void setStrategy(SortableMatchWorker.Strategy strategy) {
+		this.strategy = strategy;
+	}
+	/** Returns whether the progress of the run is output. **/
+	public boolean isProgress() {
+		return this.progress;
+	}
+	/** Sets whether the progress of the run is output. **/
+	public void setProgress(boolean progress) {
+		this.progress = progress;
+	}
+	/** Returns the number of seconds after which the run stops, or 0 for no deadline. **/
+	public double getDeadline() {
+		return this.deadline;
+	}
+	/** Sets the number of seconds after which the run stops, or 0 for no deadline. **/
+	public void setDeadline(double deadline) {
+		this.deadline = deadline;
+	}
+	/** Returns the file recording the completed blocks of listings, or null. **/
+	public String getCheckpointFile() {
+		return this.checkpointFile;
+	}
+	/** Sets the file recording the completed blocks of listings. **/
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+	/** Returns the heap budget in bytes, or 0 for none. **/
+	public long getHeapBudget() {
+		return this.heapBudget;
+	}
+	/** Sets the heap budget in bytes the run switches to sharded parsing and compact match elements to stay within, or 0 for none. **/
+	public void setHeapBudget(long heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+	/** Returns whether the estimated memory footprint of the run is output. **/
+	public boolean isMemoryReport() {
+		return this.memoryReport;
+	}
+	/** Sets whether the estimated memory footprint of the run is output. **/
+	public void setMemoryReport(boolean memoryReport) {
+		this.memoryReport = memoryReport;
+	}
+}
\ No newline at end of file
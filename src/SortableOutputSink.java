@@ -0,0 +1,179 @@
+import tom.string.json.JSONDocument;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+*** SortableOutputSink class
+*** Writes JSON documents to files through one large buffer of the buffer size, optionally compressed with gzip or deflate.
+*** Characters are gathered in a BufferedWriter of the buffer size and encoded as UTF-8, the character set JSON files are read in. The encoded,
+*** and optionally compressed, bytes are gathered in a direct ByteBuffer of the buffer size and written to the file's channel a whole buffer at a time,
+*** so the operating system sees few large writes. With an atomic commit the document is written to a temporary file in the same directory
+*** that is only moved over the destination once it is complete, so readers never see a partial file; on failure the temporary file is deleted.
+**/
+
+public class SortableOutputSink {
+	/**
+	*** Compression enum
+	*** The compression applied to the written bytes.
+	**/
+	public enum Compression {
+		NONE,
+		GZIP,
+		DEFLATE
+	}
+	///The default size of the buffers in bytes.
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	///The size of the character and byte buffers.
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	///The compression applied to the written bytes.
+	private Compression compression = Compression.NONE;
+	///Whether documents are written to a temporary file and moved over the destination once complete.
+	private boolean atomic = false;
+	/** Constructs a new SortableOutputSink with the default settings: a 1MB buffer, no compression and no atomic commit. **/
+	public SortableOutputSink() {
+	}
+	/** Writes the given JSON document to the given file with the given write option. **/
+	public void write(JSONDocument document,String file,JSONDocument.WriteOption writeOption) throws IOException {
+		File destination = new File(file).getAbsoluteFile();
+		//if the commit is atomic, write to a temporary file in the destination's directory, so it can be moved without copying
+		File target = ( atomic ? File.createTempFile(destination.getName()+".",".tmp",destination.getParentFile()) : destination );
+		boolean isComplete = false;
+		//anticipate IO errors, ensuring a failed temporary file is deleted
+		try {
+			Writer writer = open(target);
+			//anticipate IO errors, ensuring the writer is closed
+			try {
+				document.write(writer,writeOption);
+			}
+			finally {
+				//close the writer, which flushes the buffers and finishes the compression
+				writer.close();
+			}
+			//if the commit is atomic, move the complete file over the destination
+			if (atomic) {
+				//anticipate file systems that cannot move atomically
+				try {
+					Files.move(target.toPath(),destination.toPath(),StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+				}
+				catch(AtomicMoveNotSupportedException e) {
+					Files.move(target.toPath(),destination.toPath(),StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			isComplete = true;
+		}
+		finally {
+			if (atomic && !isComplete) {
+				Files.deleteIfExists(target.toPath());
+			}
+		}
+	}
+	/** Returns a Writer for the given file, creating or truncating it, through the buffers and compression of the sink. **/
+	private Writer open(File file) throws IOException {
+		OutputStream output = new ChannelOutputStream(FileChannel.open(file.toPath(),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING),bufferSize);
+		//anticipate IO errors, ensuring the file is closed if the compressor cannot be created
+		try {
+			//wrap the file in the compressor, which has its own input buffer of the buffer size
+			if (compression == Compression.GZIP) {
+				output = new GZIPOutputStream(output,bufferSize);
+			}
+			else if (compression == Compression.DEFLATE) {
+				output = new DeflaterOutputStream(output,new Deflater(Deflater.DEFAULT_COMPRESSION),bufferSize);
+			}
+		}
+		catch(IOException e) {
+			output.close();
+			throw e;
+		}
+		return new BufferedWriter(new OutputStreamWriter(output,JSONDocument.CHARSET),bufferSize);
+	}
+	/** Returns the size of the buffers in bytes. **/
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+	/** Sets the size of the buffers in bytes. **/
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+	/** Returns the compression applied to the written bytes. **/
+	public Compression getCompression() {
+		return this.compression;
+	}
+	/** Sets the compression applied to the written bytes. **/
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+	/** Returns whether documents are written to a temporary file and moved over the destination once complete. **/
+	public boolean isAtomic() {
+		return this.atomic;
+	}
+	/** Sets whether documents are written to a temporary file and moved over the destination once complete. **/
+	public void setAtomic(boolean atomic) {
+		this.atomic = atomic;
+	}
+	/**
+	*** ChannelOutputStream class
+	*** Gathers bytes in a direct ByteBuffer and writes it to a FileChannel whenever it is full, so the channel does not copy each write into a temporary direct buffer.
+	**/
+	private static class ChannelOutputStream extends OutputStream {
+		///The channel of the file.
+		private final FileChannel channel;
+		///The buffer gathering the bytes.
+		private final ByteBuffer buffer;
+		/** Constructs a new ChannelOutputStream writing to the given channel through a direct buffer of the given size. **/
+		public ChannelOutputStream(FileChannel channel,int bufferSize) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+		/** Writes the given byte. **/
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining()) { drain(); }
+			buffer.put((byte)b);
+		}
+		/** Writes the given number of bytes of the array from the given offset. **/
+		public void write(byte[] bytes,int offset,int length) throws IOException {
+			//while there are bytes left, fill the buffer and write it out when full
+			while (length != 0) {
+				if (!buffer.hasRemaining()) { drain(); }
+				int count = Math.min(length,buffer.remaining());
+				buffer.put(bytes,offset,count);
+				offset+= count;
+				length-= count;
+			}
+		}
+		/** Writes the gathered bytes to the channel. **/
+		private void drain() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) { channel.write(buffer); }
+			buffer.clear();
+		}
+		/** Writes the gathered bytes to the channel. The channel is only forced to disk by close. **/
+		public void flush() throws IOException {
+			drain();
+		}
+		/** Writes the gathered bytes, forces them to disk so a following atomic move cannot expose an incomplete file, and closes the channel. **/
+		public void close() throws IOException {
+			//anticipate IO errors, ensuring the channel is closed
+			try {
+				drain();
+				channel.force(false);
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/**
+*** SortablePrice class
+*** Parses listing prices into fixed-point longs so they can be compared numerically without floating point rounding.
+*** A fixed-point price is the amount multiplied by SCALE, so "199.96" is 1999600. Thousands separators are ignored and fractional
+*** digits beyond the scale are rounded half up. Prices that cannot be parsed are returned as INVALID.
+**/
+
+public class SortablePrice {
+	///The number of fixed-point units in one whole currency unit.
+	public static final long SCALE = 10000;
+	///The number of fractional digits held by a fixed-point price.
+	private static final int SCALE_DIGITS = 4;
+	///The value returned for prices that cannot be parsed.
+	public static final long INVALID = Long.MIN_VALUE;
+	/** Prevents instantiation; all methods are static. **/
+	private SortablePrice() {
+	}
+	/** Returns the given price as a fixed-point long, or INVALID if it is null, empty, negative or not a number. **/
+	public static long parse(String price) {
+		//if the price is not specified
+		if (price == null) {
+			return INVALID;
+		}
+		//skip leading and trailing whitespace without creating a new string
+		int start = 0;
+		int end = price.length();
+		while (start != end && price.charAt(start) <= ' ') { start++; }
+		while (end != start && price.charAt(end-1) <= ' ') { end--; }
+		long whole = 0; //the whole part
+		long fraction = 0; //the fractional part, up to the scale
+		int fractionDigits = -1; //the number of fractional digits read, or -1 before the decimal point
+		boolean roundUp = false; //whether the first digit beyond the scale is 5 or more
+		boolean hasDigits = false; //whether any digit was read
+		//for each character
+		for (int i = start; i != end; i++) {
+			char c = price.charAt(i);
+			//if it is a digit
+			if (c >= '0' && c <= '9') {
+				hasDigits = true;
+				//if it is part of the whole number
+				if (fractionDigits == -1) {
+					whole = whole*10 + (c - '0');
+					//if the amount cannot be held at the scale
+					if (whole > Long.MAX_VALUE / SCALE / 10) { return INVALID; }
+				}
+				//else if it is within the scale
+				else if (fractionDigits < SCALE_DIGITS) {
+					fraction = fraction*10 + (c - '0');
+					fractionDigits++;
+				}
+				//else if it is the first digit beyond the scale
+				else if (fractionDigits == SCALE_DIGITS) {
+					roundUp = ( c >= '5' );
+					fractionDigits++;
+				}
+			}
+			//else if it is the decimal point and there has not been one
+			else if (c == '.' && fractionDigits == -1) {
+				fractionDigits = 0;
+			}
+			//else if it is a thousands separator in the whole number, ignore it
+			else if (c == ',' && fractionDigits == -1 && hasDigits) {
+			}
+			//else it is not a price
+			else {
+				return INVALID;
+			}
+		}
+		//if there were no digits, it is not a price
+		if (!hasDigits) {
+			return INVALID;
+		}
+		//pad the fraction to the scale
+		for (int i = Math.max(fractionDigits,0); i < SCALE_DIGITS; i++) {
+			fraction*= 10;
+		}
+		//combine the parts and round
+		return whole*SCALE + fraction + ( roundUp ? 1 : 0 );
+	}
+	/** Returns the given fixed-point price as a decimal string with 2 decimal places, rounded half up. **/
+	public static String toString(long price) {
+		//if the price is invalid
+		if (price == INVALID) {
+			return null;
+		}
+		//round to cents
+		long cents = (price + SCALE/200) / (SCALE/100);
+		long remainder = cents % 100;
+		return (cents / 100)+( remainder < 10 ? ".0" : "." )+remainder;
+	}
+}
\ No newline at end of file
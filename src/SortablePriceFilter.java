@@ -0,0 +1,126 @@
+import tom.data.IntList;
+
+import java.util.Arrays;
+
+/**
+*** SortablePriceFilter class
+*** Rejects matched listings whose price is far from the typical price of the other listings matched to the same product,
+*** such as a $5 battery "for" a camera matched to the $500 camera itself.
+*** For each product the filter takes the median and the median absolute deviation (MAD) of the logarithms of the matched prices,
+*** which unlike the mean and standard deviation are not pulled towards the outliers being looked for. A listing is rejected when its
+*** log price is more than the threshold number of scaled MADs from the median, and also more than the minimum factor away from the median price,
+*** so that a product whose listings share almost the same price does not reject every listing that differs slightly.
+*** It is applied to one product at a time as the result table is written, so only the prices of one product are held at once.
+*** Listings without a comparable price are never rejected, and products with fewer than the minimum number of priced listings are left unchanged.
+**/
+
+public class SortablePriceFilter {
+	///The factor converting a MAD into an estimate of the standard deviation of normally distributed values.
+	private static final double MAD_SCALE = 1.4826;
+	///The rates used to convert listing prices into one currency.
+	private SortableCurrencyRates rates;
+	///The number of scaled MADs from the median beyond which a price is rejected.
+	private double threshold = 3.0;
+	///The factor from the median price within which a price is never rejected.
+	private double minimumFactor = 2.0;
+	///The number of priced listings a product needs before any are rejected.
+	private int minimumListings = 4;
+	///The listing read from the store, reused for stores of encoded listings.
+	private SortableListing listing;
+	///The working buffer for the log prices of a product.
+	private double[] logPrices = new double[16];
+	///The working buffer for the deviations of the log prices of a product.
+	private double[] deviations = new double[16];
+	/** Constructs a new SortablePriceFilter using the given currency rates. **/
+	public SortablePriceFilter(SortableCurrencyRates rates) {
+		this.rates = rates;
+	}
+	/** Returns the number of scaled MADs from the median beyond which a price is rejected. **/
+	public double getThreshold() {
+		return this.threshold;
+	}
+	/** Sets the number of scaled MADs from the median beyond which a price is rejected. **/
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	/** Returns the factor from the median price within which a price is never rejected. **/
+	public double getMinimumFactor() {
+		return this.minimumFactor;
+	}
+	/** Sets the factor from the median price within which a price is never rejected. **/
+	public void setMinimumFactor(double minimumFactor) {
+		this.minimumFactor = minimumFactor;
+	}
+	/** Returns the number of priced listings a product needs before any are rejected. **/
+	public int getMinimumListings() {
+		return this.minimumListings;
+	}
+	/** Sets the number of priced listings a product needs before any are rejected. **/
+	public void setMinimumListings(int minimumListings) {
+		this.minimumListings = minimumListings;
+	}
+	/**
+	*** Rejects the price outliers among the listings matched to one product, given by their indexes in the listing store.
+	*** The rejected indexes are removed from the list, keeping the order of the others. Returns the number of listings rejected.
+	*** The filter reuses its working buffers for each product, so it must only be used by one thread at a time.
+	**/
+	public int filter(SortableListingStore listings,IntList matches) {
+		int count = 0;
+		//for each listing matched to the product
+		for (int i = 0; i != matches.getSize(); i++) {
+			long price = getPrice(listings,matches.get(i));
+			//if the price can be compared
+			if (price != SortablePrice.INVALID) {
+				//grow the buffers if needed
+				if (count == logPrices.length) {
+					logPrices = Arrays.copyOf(logPrices,count*2);
+					deviations = new double[count*2];
+				}
+				logPrices[count++] = Math.log(price);
+			}
+		}
+		//if there are too few prices to tell what is typical, keep every listing
+		if (count < minimumListings) {
+			return 0;
+		}
+		//find the median and the MAD of the log prices
+		double median = getMedian(logPrices,count,deviations);
+		for (int i = 0; i != count; i++) {
+			deviations[i] = Math.abs(logPrices[i] - median);
+		}
+		double mad = getMedian(deviations,count,deviations);
+		//the log distance from the median beyond which a price is rejected
+		double limit = Math.max(threshold * MAD_SCALE * mad,Math.log(minimumFactor));
+		int kept = 0;
+		//for each listing matched to the product
+		for (int i = 0; i != matches.getSize(); i++) {
+			int listing = matches.get(i);
+			long price = getPrice(listings,listing);
+			//if the price cannot be compared or is close enough to the median, keep the match
+			if (price == SortablePrice.INVALID || Math.abs(Math.log(price) - median) <= limit) {
+				matches.set(kept++,listing);
+			}
+		}
+		//remove the rejected matches from the end of the list
+		int rejected = matches.getSize() - kept;
+		matches.truncate(kept);
+		return rejected;
+	}
+	/** Returns the price of the listing at the given index in the base currency, or SortablePrice.INVALID if it cannot be compared. **/
+	private long getPrice(SortableListingStore listings,int i) {
+		listing = listings.getListing(i,listing);
+		long price = rates.toBase(listing.getPriceValue(),listing.getCurrency());
+		//only positive prices have a logarithm
+		return ( price > 0 ? price : SortablePrice.INVALID );
+	}
+	/** Returns the median of the first count values, using the given buffer, which may be the values array itself, as working space. **/
+	private static double getMedian(double[] values,int count,double[] buffer) {
+		//copy the values into the buffer if they are not already in it, then sort them
+		if (buffer != values) {
+			System.arraycopy(values,0,buffer,0,count);
+		}
+		Arrays.sort(buffer,0,count);
+		//take the middle value, or the mean of the two middle values
+		return ( count % 2 == 1 ? buffer[count/2] : (buffer[count/2-1] + buffer[count/2]) / 2 );
+	}
+}
\ No newline at end of file
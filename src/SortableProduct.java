@@ -1,3 +1,6 @@
+import tom.string.TokenizedString;
+import tom.string.Tokenizer;
+
 /**
 *** SortableProduct class
 *** Represents a product and has fields for each potential field of a "known product".
@@ -14,6 +17,14 @@ public class SortableProduct {
 	private String family;
 	///The product announced date.
 	private String announcedDate;
+	///The upper case and tokenized product name, created when first requested.
+	private TokenizedString normalizedName;
+	///The upper case and tokenized product manufacturer, created when first requested.
+	private TokenizedString normalizedManufacturer;
+	///The upper case and tokenized product model, created when first requested.
+	private TokenizedString normalizedModel;
+	///The upper case and tokenized model family, created when first requested.
+	private TokenizedString normalizedFamily;
 	/** Constructs a new SortableProduct. **/
 	public SortableProduct() {
 	}
@@ -32,6 +43,7 @@ public class SortableProduct {
 	/** Sets the product name. **/
 	public void setName(String name) {
 		this.name = name;
+		this.normalizedName = null;
 	}
 	/** Returns the product manufacturer. **/
 	public String getManufacturer() {
@@ -40,6 +52,7 @@ public class SortableProduct {
 	/** Sets the product manufacturer. **/
 	public void setManufactuer(String manufacturer) {
 		this.manufacturer = manufacturer;
+		this.normalizedManufacturer = null;
 	}
 	/** Returns the product model. **/
 	public String getModel() {
@@ -48,6 +61,7 @@ public class SortableProduct {
 	/** Sets the product model. **/
 	public void setModel(String model) {
 		this.model = model;
+		this.normalizedModel = null;
 	}
 	/** Returns the family. **/
 	public String getFamily() {
@@ -56,6 +70,31 @@ public class SortableProduct {
 	/** Sets the family. **/
 	public void setFamily(String family) {
 		this.family = family;
+		this.normalizedFamily = null;
+	}
+	/** Returns the product name folded to upper case with its token boundaries, or null if the name is not specified. **/
+	public TokenizedString getNormalizedName() {
+		//if the name is specified and has not been normalised yet, normalise it
+		if (normalizedName == null && name != null) { normalizedName = Tokenizer.normalize(name); }
+		return normalizedName;
+	}
+	/** Returns the product manufacturer folded to upper case with its token boundaries, or null if the manufacturer is not specified. **/
+	public TokenizedString getNormalizedManufacturer() {
+		//if the manufacturer is specified and has not been normalised yet, normalise it
+		if (normalizedManufacturer == null && manufacturer != null) { normalizedManufacturer = Tokenizer.normalize(manufacturer); }
+		return normalizedManufacturer;
+	}
+	/** Returns the product model folded to upper case with its token boundaries, or null if the model is not specified. **/
+	public TokenizedString getNormalizedModel() {
+		//if the model is specified and has not been normalised yet, normalise it
+		if (normalizedModel == null && model != null) { normalizedModel = Tokenizer.normalize(model); }
+		return normalizedModel;
+	}
+	/** Returns the model family folded to upper case with its token boundaries, or null if the family is not specified. **/
+	public TokenizedString getNormalizedFamily() {
+		//if the family is specified and has not been normalised yet, normalise it
+		if (normalizedFamily == null && family != null) { normalizedFamily = Tokenizer.normalize(family); }
+		return normalizedFamily;
 	}
 	/** Returns the announced date. **/
 	public String getAnnouncedDate() {
@@ -0,0 +1,79 @@
+import tom.data.HashTable;
+import tom.data.IntList;
+import tom.string.TokenizedString;
+
+import java.util.ArrayList;
+
+/**
+*** SortableProductGroups class
+*** Groups the known products of a catalog by manufacturer, for comparing listings product-major.
+*** The manufacturer check of a product only depends on its upper case manufacturer, so it gives the same answer for every product of a group
+*** and is run once per group and listing. Likewise the family check only depends on the upper case family, so the products of a group with the
+*** same family share a family number, and the check is run once per family and listing. Products without a manufacturer or family are grouped
+*** together, apart from those with an empty one. The products of each group are in catalog order. The groups are immutable once built, so
+*** they can be shared between threads.
+**/
+
+public class SortableProductGroups {
+	///The indexes of the products of each group, in catalog order.
+	private final int[][] groups;
+	///The family number of each product.
+	private final int[] families;
+	///The number of families.
+	private final int familyCount;
+	/** Constructs a new SortableProductGroups for the known products of the given catalog. **/
+	public SortableProductGroups(SortableCatalog catalog) {
+		HashTable<IntList> groupTable = new HashTable<IntList>();
+		ArrayList<IntList> groupList = new ArrayList<IntList>();
+		HashTable<Integer> familyTable = new HashTable<Integer>();
+		families = new int[catalog.getProductCount()];
+		int count = 0;
+		//for each product
+		for (int i = 0; i != catalog.getProductCount(); i++) {
+			SortableProduct product = catalog.getProduct(i);
+			String manufacturer = getKey(product.getNormalizedManufacturer());
+			//add the product to the group of its manufacturer, creating the group if it is the first
+			IntList group = groupTable.get(manufacturer);
+			if (group == null) {
+				group = new IntList();
+				groupTable.add(manufacturer,group);
+				groupList.add(group);
+			}
+			group.add(i);
+			//give the product the number of its family within the group, numbering the family if it is the first
+			String family = manufacturer+"\u0000"+getKey(product.getNormalizedFamily());
+			Integer number = familyTable.get(family);
+			if (number == null) {
+				number = Integer.valueOf(count++);
+				familyTable.add(family,number);
+			}
+			families[i] = number.intValue();
+		}
+		familyCount = count;
+		//store the groups as arrays
+		groups = new int[groupList.size()][];
+		for (int i = 0; i != groups.length; i++) {
+			groups[i] = groupList.get(i).toArray();
+		}
+	}
+	/** Returns the key of the given upper case manufacturer or family, which keeps a missing one apart from an empty one. **/
+	private static String getKey(TokenizedString value) {
+		return ( value == null ? "!" : "="+value.getValue() );
+	}
+	/** Returns the number of groups. **/
+	public int getGroupCount() {
+		return groups.length;
+	}
+	/** Returns the indexes of the products of the given group, in catalog order. The array must not be modified. **/
+	public int[] getProducts(int group) {
+		return groups[group];
+	}
+	/** Returns the family number of the product at the given index. **/
+	public int getFamily(int product) {
+		return families[product];
+	}
+	/** Returns the number of families, which are numbered from 0. **/
+	public int getFamilyCount() {
+		return familyCount;
+	}
+}
\ No newline at end of file
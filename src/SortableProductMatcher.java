@@ -1,6 +1,25 @@
+import tom.string.TokenizedString;
+import tom.string.Tokenizer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
 *** SortableProductMatcher class
 *** Compares a SortableListing against a SortableProduct and yields a SortableMatchResult.
+*** The comparison itself does not allocate: getMatchType() returns the match type directly, the regular expressions are compiled once per product
+*** and their Matcher objects are reset for each listing, so a SortableMatchResult is only created when one is requested.
+*** Because it keeps the listing and the reusable Matcher objects, a SortableProductMatcher must only be used by one thread at a time.
+*** When the listing is set with the result of a SortableModelTokenIndex lookup, the partial model check is skipped for products the index rules out.
+*** A model found in the listing is ruled out when it follows the word "for", as in an accessory "for" the product. Rather than running a regular
+*** expression per product, the position after the first "for" between separators is found once per listing by getForBoundary, and each model
+*** only needs an occurrence from that position between separators. The regular expression is still used for models containing regular expression
+*** characters, which it has always interpreted as a pattern, and for subjects containing line terminators, which its "." does not match.
+*** When a SortableTokenFilter is set, the manufacturer and family checks first reject listings whose token set lacks a bit of the field's tokens.
+*** getMatchType(SortableMatchPlan) runs the manufacturer, family and model checks in the order a SortableMatchPlan chooses from their sampled cost and selectivity.
+*** When a SortableFuzzyModelIndex finds the product's model within its edit distance of the listing, setFuzzyCandidate(true) lets a listing whose
+*** manufacturer and family match, but whose model matches neither fully nor partially, match at the lowest level, FUZZY_MATCH.
 **/
 
 public class SortableProductMatcher {
@@ -10,6 +29,37 @@ public class SortableProductMatcher {
 	private SortableProduct product;
 	///The pattern string created for comparisons for the product name.
 	private String productNamePattern;
+	///The product model split into upper case tokens for partial matching.
+	private String[] modelTokens;
+	///The reusable matcher for the product name pattern, created when first used.
+	private Matcher nameMatcher;
+	///The reusable matcher finding the model after "for", created when first used.
+	private Matcher modelForMatcher;
+	///The reusable matchers finding each model token after "for", each created when first used.
+	private Matcher[] tokenForMatchers;
+	///Whether the model is free of regular expression characters, so it can be found after "for" without the regular expression.
+	private boolean isModelLiteral;
+	///Whether each model token is free of regular expression characters.
+	private boolean[] isTokenLiteral;
+	///The "for" boundary of a subject with no "for" between separators.
+	public static final int FOR_NONE = Integer.MAX_VALUE;
+	///The "for" boundary of a subject that must be checked with the regular expression.
+	public static final int FOR_UNSCANNABLE = -1;
+	///Whether the listing has a token equal to a model token, so that the model can match partially. True unless a model token index rules it out.
+	private boolean isPartialCandidate = true;
+	///Whether a fuzzy model index found the product's model within its edit distance of the listing. False unless set for the listing.
+	private boolean isFuzzyCandidate = false;
+	///Whether the manufacturer, family and model checks can run in any order, which is false if a "for" pattern of the model is not a valid regular expression.
+	private boolean isReorderable;
+	///The result of each check of a sampled comparison, reused.
+	private final boolean[] samplePassed = new boolean[SortableMatchPlan.CHECK_COUNT];
+	///The time of each check of a sampled comparison in nanoseconds, reused.
+	private final long[] sampleNanos = new long[SortableMatchPlan.CHECK_COUNT];
+	///The token filter fingerprints of the manufacturer and family, or null if there is no token filter.
+	private long[] manufacturerFingerprint;
+	private long[] familyFingerprint;
+	///The token filter set of the listing, or null if the listing's tokens are not filtered.
+	private long[] listingTokens;
 	/** Constructs a new SortableProductMatcher. **/
 	public SortableProductMatcher() {
 	}
@@ -25,24 +75,59 @@ public class SortableProductMatcher {
 	/** Sets the known product for comparison. **/
 	public void setProduct(SortableProduct product) {
 		this.product = product;
+		this.manufacturerFingerprint = null;
+		this.familyFingerprint = null;
 		createProductNamePattern();
+		createModelTokens();
+		//discard the matchers for the previous product. the name matcher is compiled when first used, and the "for" matchers of models with regular expression characters once they are known
+		this.nameMatcher = null;
+		this.modelForMatcher = null;
+		this.tokenForMatchers = ( modelTokens == null ? null : new Matcher[modelTokens.length] );
+		//determine which of the model and its tokens can be found after "for" without the regular expression
+		this.isModelLiteral = ( product.getModel() != null && isLiteral(product.getNormalizedModel().getValue()) );
+		this.isTokenLiteral = ( modelTokens == null ? null : new boolean[modelTokens.length] );
+		for (int i = 0; modelTokens != null && i != modelTokens.length; i++) {
+			isTokenLiteral[i] = isLiteral(modelTokens[i]);
+		}
+		this.isReorderable = createForMatchers();
+	}
+	/**
+	*** Creates the "for" matchers of a model and its tokens that contain regular expression characters, returning false if any is not a valid pattern.
+	*** The model check must then only run after the manufacturer and family checks pass, so that it fails for the same listings as it always has.
+	**/
+	private boolean createForMatchers() {
+		//anticipate invalid patterns
+		try {
+			if (product.getModel() != null && !isModelLiteral) {
+				modelForMatcher = Pattern.compile(getForPattern(product.getNormalizedModel().getValue())).matcher("");
+			}
+			for (int i = 0; modelTokens != null && i != modelTokens.length; i++) {
+				if (!isTokenLiteral[i]) {
+					tokenForMatchers[i] = Pattern.compile(getForPattern(modelTokens[i])).matcher("");
+				}
+			}
+		}
+		catch(PatternSyntaxException e) {
+			return false;
+		}
+		return true;
 	}
 	/** Creates the product name pattern used for matching. **/
 	private void createProductNamePattern() {
 		String name = product.getName();
 		//if the name is not null
 		if (name != null) {
-			name = name.toUpperCase();
-			String[] fields = {product.getManufacturer(),product.getFamily(),product.getModel()};
+			name = product.getNormalizedName().getValue();
+			TokenizedString[] fields = {product.getNormalizedManufacturer(),product.getNormalizedFamily(),product.getNormalizedModel()};
 			//for each field
 			for (int i = 0; i != fields.length; i++) {
 				//if it is not null
 				if (fields[i] != null) {
-					fields[i] = fields[i].toUpperCase();
+					String field = fields[i].getValue();
 					//if it is in the product name
-					if (name.contains(fields[i])) {
+					if (name.contains(field)) {
 						//remove it
-						name = name.replace(fields[i],"");
+						name = name.replace(field,"");
 					}
 				}
 			}
@@ -50,73 +135,295 @@ public class SortableProductMatcher {
 		//the name string should now be whitespaces or contain key word(s) for matching
 		//remove leading and trailing whitespaces and separators
 		name = name.replaceAll("(^[_\\-\\s+]|[_\\-\\s]$)","");
-		this.productNamePattern = this.getEscaptedPattern(name);
-		this.productNamePattern = this.productNamePattern.replaceAll("[_\\-\\s]+","[_\\\\-\\\\s]*");
+		//tokenize the remaining text, escape each token and replace each run of separators with a pattern allowing any separators
+		TokenizedString tokens = Tokenizer.normalize(name);
+		StringBuilder pattern = new StringBuilder();
+		int end = 0;
+		//for each token
+		for (int i = 0; i != tokens.getTokenCount(); i++) {
+			//if there are separators before the token
+			if (tokens.getTokenStart(i) != end) {
+				pattern.append("[_\\-\\s]*");
+			}
+			pattern.append(this.getEscaptedPattern(tokens.getToken(i)));
+			end = tokens.getTokenEnd(i);
+		}
+		//if there are separators after the last token
+		if (end != tokens.length()) {
+			pattern.append("[_\\-\\s]*");
+		}
+		this.productNamePattern = pattern.toString();
+	}
+	/** Splits the product model into the upper case tokens used for partial matching. **/
+	private void createModelTokens() {
+		this.modelTokens = getModelTokens(product);
+	}
+	/** Returns the model of the given product split into the upper case tokens used for partial matching, or null if the model is not specified. **/
+	public static String[] getModelTokens(SortableProduct product) {
+		TokenizedString model = product.getNormalizedModel();
+		//if the model is not specified there are no tokens
+		if (model == null) {
+			return null;
+		}
+		String[] tokens = model.getTokens();
+		//keep the semantics of String.split: an empty model yields one empty token, and a leading separator yields a leading empty token
+		if (model.length() == 0 || (tokens.length != 0 && model.getTokenStart(0) != 0)) {
+			String[] leading = new String[tokens.length+1];
+			leading[0] = "";
+			System.arraycopy(tokens,0,leading,1,tokens.length);
+			tokens = leading;
+		}
+		return tokens;
 	}
 	/** Returns the given string with special regular expression characters escaped, excluding hyphens because they will be handled separately. **/
 	private String getEscaptedPattern(String pattern) {
 		return pattern.replaceAll("(\\\\|\\.|\\{|\\}|\\[|\\]|\\*|\\?|\\+|\\^|\\$|\\!|\\(|\\)|\\<|\\>|\\/|\\|)","\\\\$1");
 	}
+	/** Sets the token filter used to reject listings without the product's manufacturer or family tokens, or null for none. It must be set after the product. **/
+	public void setTokenFilter(SortableTokenFilter filter) {
+		this.manufacturerFingerprint = ( filter == null ? null : filter.getFingerprint(product.getNormalizedManufacturer()) );
+		this.familyFingerprint = ( filter == null ? null : filter.getFingerprint(product.getNormalizedFamily()) );
+	}
 	/** Returns the product listing. **/
 	public SortableListing getListing() {
 		return this.listing;
 	}
 	/** Sets the product listing for comparison. **/
 	public void setListing(SortableListing listing) {
+		setListing(listing,true);
+	}
+	/** Sets the product listing for comparison, and whether a model token index found it to be a candidate for a partial model match. **/
+	public void setListing(SortableListing listing,boolean isPartialCandidate) {
+		setListing(listing,isPartialCandidate,null);
+	}
+	/**
+	*** Sets the product listing for comparison, whether a model token index found it to be a candidate for a partial model match,
+	*** and its set of the token filter of the matcher, filled by SortableTokenFilter.fill, or null to compare without the filter.
+	**/
+	public void setListing(SortableListing listing,boolean isPartialCandidate,long[] listingTokens) {
 		this.listing = listing;
+		this.isPartialCandidate = isPartialCandidate;
+		this.listingTokens = listingTokens;
+		this.isFuzzyCandidate = false;
+	}
+	/** Sets whether a fuzzy model index found the product's model within its edit distance of the listing. It must be set after the listing, which clears it. **/
+	public void setFuzzyCandidate(boolean isFuzzyCandidate) {
+		this.isFuzzyCandidate = isFuzzyCandidate;
 	}
 	/** Returns whether the known product and product listing match. **/
 	public boolean isMatch() {
-		return ( getMatchResult().getMatchType() == SortableMatchResult.MatchType.NO_MATCH ? false : true );
+		return ( getMatchType() == SortableMatchResult.MatchType.NO_MATCH ? false : true );
 	}
-	/** Returns a SortableMatchResult object for the match result of the known product and product listing. **/
+	/** Returns a new SortableMatchResult object for the match result of the known product and product listing. **/
 	public SortableMatchResult getMatchResult() {
-		//create a new result object with no match
-		SortableMatchResult result = new SortableMatchResult(SortableMatchResult.MatchType.NO_MATCH);
+		return getMatchResult(new SortableMatchResult());
+	}
+	/** Sets the match type and score of the known product and product listing in the given SortableMatchResult object, which is returned so it can be reused. **/
+	public SortableMatchResult getMatchResult(SortableMatchResult result) {
+		SortableMatchResult.MatchType matchType = getMatchType();
+		result.setMatchType(matchType);
+		result.setScore(getMatchScore(matchType));
+		return result;
+	}
+	/** Returns the match type of the known product and product listing without creating any objects. **/
+	public SortableMatchResult.MatchType getMatchType() {
+		//start with no match
+		SortableMatchResult.MatchType matchType = SortableMatchResult.MatchType.NO_MATCH;
 		//compare the known product and product listing
 		//if the manufacturer and family match
 		if (isManufacturerMatch() && isFamilyMatch()) {
 			//if the model matches
 			if (isModelMatch()) {
 				//if the remaning text in the product name matches
-				if ((listing.getTitle() != null && listing.getTitle().toUpperCase().matches(".*"+productNamePattern+".*")) ||
-					(listing.getName() != null && listing.getName().toUpperCase().matches(".*"+productNamePattern+".*"))) {
+				if (isNameMatch()) {
 					//set the type to full match
-					result.setMatchType(SortableMatchResult.MatchType.FULL_MATCH);
+					matchType = SortableMatchResult.MatchType.FULL_MATCH;
 				}
 				else {
 					//set the match type to partial
-					result.setMatchType(SortableMatchResult.MatchType.FULL_PARTIAL_MATCH);
+					matchType = SortableMatchResult.MatchType.FULL_PARTIAL_MATCH;
 				}
 			}
 			//else if the model can be matched partially
 			else if (isModelPartialMatch()) {
+				//set the match type to the lowest exact level
+				matchType = SortableMatchResult.MatchType.CONTAINS_PARTIAL_MATCH;
+			}
+			//else if the model is within the fuzzy edit distance
+			else if (isFuzzyCandidate) {
 				//set the match type to the lowest level
-				result.setMatchType(SortableMatchResult.MatchType.CONTAINS_PARTIAL_MATCH);
+				matchType = SortableMatchResult.MatchType.FUZZY_MATCH;
 			}
 		}
-		//return the result
-		return result;
+		//return the match type
+		return matchType;
+	}
+	/**
+	*** Returns the match type of the known product and product listing, running the manufacturer, family and model checks in the order of the given plan.
+	*** Every check must pass for any match, and each check gives the same answer in any order, so the match type is the same as getMatchType().
+	*** On the comparisons the plan samples, every check is run and timed. A product whose model is not a valid pattern keeps the fixed order.
+	**/
+	public SortableMatchResult.MatchType getMatchType(SortableMatchPlan plan) {
+		//if the checks cannot be reordered, use the fixed order
+		if (!isReorderable || !plan.isAdaptive()) {
+			return getMatchType();
+		}
+		//if the comparison is sampled, run and time every check
+		if (plan.isSample()) {
+			return getSampledMatchType(plan);
+		}
+		boolean isModelMatch = false;
+		boolean isFuzzyMatch = false;
+		//run the checks in the order of the plan, stopping at the first that fails
+		int[] order = plan.getOrder();
+		for (int i = 0; i != order.length; i++) {
+			switch (order[i]) {
+				case SortableMatchPlan.MANUFACTURER:
+					if (!isManufacturerMatch()) { return SortableMatchResult.MatchType.NO_MATCH; }
+					break;
+				case SortableMatchPlan.FAMILY:
+					if (!isFamilyMatch()) { return SortableMatchResult.MatchType.NO_MATCH; }
+					break;
+				default:
+					//keep whether the model matched fully, as it decides the match type
+					isModelMatch = isModelMatch();
+					if (!isModelMatch && !isModelPartialMatch()) {
+						//if the model is not within the fuzzy edit distance either, there is no match
+						if (!isFuzzyCandidate) { return SortableMatchResult.MatchType.NO_MATCH; }
+						isFuzzyMatch = true;
+					}
+					break;
+			}
+		}
+		return ( isFuzzyMatch ? SortableMatchResult.MatchType.FUZZY_MATCH : getModelMatchType(isModelMatch) );
+	}
+	/** Returns the match type of a comparison sampled by the given plan, running and timing every check and recording them in the plan. **/
+	private SortableMatchResult.MatchType getSampledMatchType(SortableMatchPlan plan) {
+		//normalize the listing fields first, as they are cached for every check, so the first check timed does not pay for them
+		listing.getNormalizedManufacturer();
+		listing.getNormalizedFamily();
+		listing.getNormalizedModel();
+		listing.getNormalizedTitle();
+		listing.getNormalizedName();
+		listing.getTitleForBoundary();
+		listing.getNameForBoundary();
+		long time = System.nanoTime();
+		samplePassed[SortableMatchPlan.MANUFACTURER] = isManufacturerMatch();
+		long checkTime = System.nanoTime();
+		sampleNanos[SortableMatchPlan.MANUFACTURER] = checkTime - time;
+		samplePassed[SortableMatchPlan.FAMILY] = isFamilyMatch();
+		time = System.nanoTime();
+		sampleNanos[SortableMatchPlan.FAMILY] = time - checkTime;
+		boolean isModelMatch = isModelMatch();
+		boolean isExactModelMatch = ( isModelMatch || isModelPartialMatch() );
+		samplePassed[SortableMatchPlan.MODEL] = ( isExactModelMatch || isFuzzyCandidate );
+		sampleNanos[SortableMatchPlan.MODEL] = System.nanoTime() - time;
+		plan.record(samplePassed,sampleNanos);
+		//if any check failed, there is no match
+		for (int i = 0; i != SortableMatchPlan.CHECK_COUNT; i++) {
+			if (!samplePassed[i]) {
+				return SortableMatchResult.MatchType.NO_MATCH;
+			}
+		}
+		return ( isExactModelMatch ? getModelMatchType(isModelMatch) : SortableMatchResult.MatchType.FUZZY_MATCH );
+	}
+	/**
+	*** Returns the match type of the known product and product listing when the manufacturers and families are already known to match, as when
+	*** the checks are shared by a group of products. The model and name checks decide it, as in getMatchType().
+	**/
+	public SortableMatchResult.MatchType getMatchTypeByModel() {
+		//if the model matches fully, or else partially, the match type follows from it
+		if (isModelMatch()) {
+			return getModelMatchType(true);
+		}
+		if (isModelPartialMatch()) {
+			return getModelMatchType(false);
+		}
+		return ( isFuzzyCandidate ? SortableMatchResult.MatchType.FUZZY_MATCH : SortableMatchResult.MatchType.NO_MATCH );
+	}
+	/** Returns the match type of a comparison where every check passed, given whether the model matched fully rather than partially. **/
+	private SortableMatchResult.MatchType getModelMatchType(boolean isModelMatch) {
+		//if the model matches fully, the remaining text in the product name decides between a full and a full partial match
+		if (isModelMatch) {
+			return ( isNameMatch() ? SortableMatchResult.MatchType.FULL_MATCH : SortableMatchResult.MatchType.FULL_PARTIAL_MATCH );
+		}
+		//else the model matched partially, the lowest exact level
+		return SortableMatchResult.MatchType.CONTAINS_PARTIAL_MATCH;
+	}
+	/** Returns whether the remaining text in the product name, once the manufacturer, family and model are removed, is in the listing title or name. **/
+	private boolean isNameMatch() {
+		//if the matcher has not been created yet, create it
+		if (nameMatcher == null) {
+			nameMatcher = Pattern.compile(".*"+productNamePattern+".*").matcher("");
+		}
+		return ((listing.getTitle() != null && nameMatcher.reset(listing.getNormalizedTitle().getValue()).matches()) ||
+			(listing.getName() != null && nameMatcher.reset(listing.getNormalizedName().getValue()).matches()));
+	}
+	/** Returns the match score of the known product and product listing. **/
+	public double getMatchScore() {
+		return getMatchScore(getMatchType());
+	}
+	/**
+	*** Returns the match score of the known product and product listing for the given, already determined, match type.
+	*** The whole part of the score is the tier of the match type, so a better match type always scores higher. The fraction is the share of
+	*** product name tokens also found in the listing title or name, which ranks candidates of the same match type.
+	*** A fuzzy match has no whole part, and scores from 0.01 to 0.99, so it is below every other match type but never 0.
+	**/
+	public double getMatchScore(SortableMatchResult.MatchType matchType) {
+		//if the match is fuzzy, keep the score above 0, which indicates no match
+		if (matchType == SortableMatchResult.MatchType.FUZZY_MATCH) {
+			return 0.01 + getNameCoverage() * 0.98;
+		}
+		int tier = SortableMatchResult.getTierScore(matchType);
+		//if there is no match, the score is 0
+		if (tier == 0) {
+			return 0;
+		}
+		//scale the fraction so the score stays below the next tier
+		return tier + getNameCoverage() * 0.99;
+	}
+	/** Returns the share of product name tokens found as whole tokens in the listing title or name. **/
+	private double getNameCoverage() {
+		TokenizedString name = product.getNormalizedName();
+		//if there is no name, there is nothing to cover
+		if (name == null || name.getTokenCount() == 0) {
+			return 0;
+		}
+		TokenizedString title = listing.getNormalizedTitle();
+		TokenizedString listingName = listing.getNormalizedName();
+		int found = 0;
+		//for each product name token
+		for (int i = 0; i != name.getTokenCount(); i++) {
+			//if the title or name has the same token, count it
+			if ((title != null && title.containsToken(name,i)) || (listingName != null && listingName.containsToken(name,i))) {
+				found++;
+			}
+		}
+		return found / (double)name.getTokenCount();
 	}
 	/** Returns whether the manufacturers match. **/
 	public boolean isManufacturerMatch() {
 		//get the manufacturers from the product and listing
-		String productManufacturer = product.getManufacturer();
-		String listingManufacturer = listing.getManufacturer();
+		TokenizedString productManufacturer = product.getNormalizedManufacturer();
+		TokenizedString listingManufacturer = listing.getNormalizedManufacturer();
 		//if the product manufacturer isn't specified
 		if (productManufacturer == null) {
 			//it can't be matched
 			return false;
 		}
+		//if the listing lacks a token of the manufacturer, it can't be matched
+		if (listingTokens != null && manufacturerFingerprint != null && !SortableTokenFilter.mayContainAll(listingTokens,manufacturerFingerprint)) {
+			return false;
+		}
 		//compare using the same casing
-		productManufacturer = productManufacturer.toUpperCase();
+		String manufacturer = productManufacturer.getValue();
 		//if the manufacturer can be matched in field
-		if (listingManufacturer != null && productManufacturer.equals(listingManufacturer.toUpperCase())) {
+		if (listingManufacturer != null && manufacturer.equals(listingManufacturer.getValue())) {
 			return true;
 		}
 		else {
 			//if the manufacturer can be matched in title or name
-			if (contains(listing.getTitle(),productManufacturer) || contains(listing.getName(),productManufacturer)) {
+			if (contains(listing.getNormalizedTitle(),manufacturer) || contains(listing.getNormalizedName(),manufacturer)) {
 				return true;
 			}
 		}
@@ -126,22 +433,26 @@ public class SortableProductMatcher {
 	/** Returns whether the families match. **/
 	public boolean isFamilyMatch() {
 		//get the families from the product and listing
-		String productFamily = product.getFamily();
-		String listingFamily = listing.getFamily();
+		TokenizedString productFamily = product.getNormalizedFamily();
+		TokenizedString listingFamily = listing.getNormalizedFamily();
 		//if the product family isn't specified
 		if (productFamily == null) {
 			//it can't be matched
 			return false;
 		}
+		//if the listing lacks a token of the family, it can't be matched
+		if (listingTokens != null && familyFingerprint != null && !SortableTokenFilter.mayContainAll(listingTokens,familyFingerprint)) {
+			return false;
+		}
 		//compare using the same casing
-		productFamily = productFamily.toUpperCase();
+		String family = productFamily.getValue();
 		//if the family can be matched in field, title or name
-		if (listingFamily != null && productFamily.equals(listingFamily.toUpperCase())) {
+		if (listingFamily != null && family.equals(listingFamily.getValue())) {
 			return true;
 		}
 		else {
 			//if the family can be matched in title or name
-			if (contains(listing.getTitle(),productFamily) || contains(listing.getName(),productFamily)) {
+			if (contains(listing.getNormalizedTitle(),family) || contains(listing.getNormalizedName(),family)) {
 				//return true
 				return true;
 			}
@@ -152,24 +463,25 @@ public class SortableProductMatcher {
 	/** Returns whether the models match. **/
 	public boolean isModelMatch() {
 		//get the models form the product and listing
-		String productModel = product.getModel();
-		String listingModel = listing.getModel();
+		TokenizedString productModel = product.getNormalizedModel();
+		TokenizedString listingModel = listing.getNormalizedModel();
 		//if the product model is not specified
 		if (productModel == null) {
 			//it can't be matched
 			return false;
 		}
 		//compare using the same casing
-		productModel = productModel.toUpperCase();
+		String model = productModel.getValue();
 		//if the model can be matched in field, title or name
-		if (listingModel != null && productModel.equals(listingModel.toUpperCase())) {
+		if (listingModel != null && model.equals(listingModel.getValue())) {
 			return true;
 		}
 		else {
-			String forPattern = "^.*[_\\-\\s]FOR[_\\-\\s](?:.*[_\\-\\s])?"+productModel+"(?:[_\\-\\s\\,].*|$)";
-			//if the model can be matched in title or name
-			if ((contains(listing.getTitle(),productModel) && !listing.getTitle().toUpperCase().matches(forPattern)) ||
-				(contains(listing.getName(),productModel) && !listing.getName().toUpperCase().matches(forPattern))) {
+			TokenizedString title = listing.getNormalizedTitle();
+			TokenizedString name = listing.getNormalizedName();
+			//if the model can be matched in title or name, other than after "for"
+			if ((contains(title,model) && !isModelAfterFor(title,listing.getTitleForBoundary())) ||
+				(contains(name,model) && !isModelAfterFor(name,listing.getNameForBoundary()))) {
 				//return true
 				return true;
 			}
@@ -177,66 +489,154 @@ public class SortableProductMatcher {
 		//else return false
 		return false;
 	}
+	/** Returns whether the model is in the given subject after "for", given the subject's "for" boundary. **/
+	private boolean isModelAfterFor(TokenizedString subject,int forBoundary) {
+		String model = product.getNormalizedModel().getValue();
+		//if the model is a plain string and the subject was scanned, check from the boundary
+		if (isModelLiteral && forBoundary != FOR_UNSCANNABLE) {
+			return isAfterFor(subject.getValue(),forBoundary,model);
+		}
+		//otherwise use the regular expression. if the matcher has not been created yet, create it
+		if (modelForMatcher == null) {
+			modelForMatcher = Pattern.compile(getForPattern(model)).matcher("");
+		}
+		return modelForMatcher.reset(subject.getValue()).matches();
+	}
+	/** Returns the regular expression matching an upper case subject containing the given model, or model token, after "for". **/
+	private static String getForPattern(String model) {
+		return "^.*[_\\-\\s]FOR[_\\-\\s](?:.*[_\\-\\s])?"+model+"(?:[_\\-\\s,].*|$)";
+	}
 	/** Returns whether the models match partially. **/
 	public boolean isModelPartialMatch() {
-		//get the product model
-		String productModel = product.getModel();
-		//if it is not specified
-		if (productModel == null) {
+		//get the product model tokens, split by whitespace, dash and underscore separators when the product was set
+		String[] tokens = this.modelTokens;
+		//if the model is not specified, or the model token index found none of its tokens in the listing
+		if (tokens == null || !isPartialCandidate) {
 			//it can't be matched
 			return false;
 		}
-		//compare using the same casing
-		productModel = productModel.toUpperCase();
-		//get the title and name of the listing for comparison
-		String[] subjects = {listing.getTitle(),listing.getName()};
-		//for each
-		for (int i = 0; i != subjects.length; i++) {
-			//if the subject is not null
-			if (subjects[i] != null) {
-				//compare using the same casing
-				subjects[i] = subjects[i].toUpperCase();
-				//split the product model into tokens by whitespace, dash and underscore separators
-				String[] tokens = productModel.split("[_\\-\\s]+");
-				//for each token
-				for (int ii = 0; ii != tokens.length; ii++) {
-					tokens[ii] = tokens[ii].toUpperCase();
-					//if the subject contains the token, and is not preceded by "for" indicating a different product for use with this product
-					if (contains(subjects[i],tokens[ii]) && !subjects[i].matches("^.*[_\\-\\s]FOR[_\\-\\s](?:.*[_\\-\\s])?"+tokens[ii]+"(?:[_\\-\\s,].*|$)")) {
-						//partial match found
-						return true;
+		//compare the upper case title and name of the listing
+		return (isModelPartialMatch(listing.getNormalizedTitle(),listing.getTitleForBoundary(),tokens) || isModelPartialMatch(listing.getNormalizedName(),listing.getNameForBoundary(),tokens));
+	}
+	/** Returns whether the given listing subject, with the given "for" boundary, contains any of the given model tokens, other than after "for". **/
+	private boolean isModelPartialMatch(TokenizedString subject,int forBoundary,String[] tokens) {
+		//if the subject is null
+		if (subject == null) {
+			return false;
+		}
+		//for each token
+		for (int i = 0; i != tokens.length; i++) {
+			//if the subject contains the token
+			if (contains(subject,tokens[i])) {
+				boolean isAfterFor;
+				//if the token is a plain string and the subject was scanned, check from the boundary
+				if (isTokenLiteral[i] && forBoundary != FOR_UNSCANNABLE) {
+					isAfterFor = isAfterFor(subject.getValue(),forBoundary,tokens[i]);
+				}
+				//otherwise use the regular expression
+				else {
+					//if the matcher for the token has not been created yet, create it
+					if (tokenForMatchers[i] == null) {
+						tokenForMatchers[i] = Pattern.compile(getForPattern(tokens[i])).matcher("");
 					}
+					isAfterFor = tokenForMatchers[i].reset(subject.getValue()).matches();
+				}
+				//if it is not preceded by "for" indicating a different product for use with this product
+				if (!isAfterFor) {
+					//partial match found
+					return true;
 				}
 			}
 		}
 		//no partial match
 		return false;
 	}
-	/** Returns whether the subject string contains the search string. **/
-	private boolean contains(String subject,String search) {
+	/** Returns whether the upper case subject string contains the upper case search string. **/
+	private boolean contains(TokenizedString normalizedSubject,String search) {
 		//if the subject is null
-		if (subject == null) {
+		if (normalizedSubject == null) {
 			return false;
 		}
-		//compare using the same case
-		subject = subject.toUpperCase();
-		//create an array of allowed boundary characters
-		char[] boundary = {32,'_','-'};
-		//for each boundary character
-		for (int i = 0; i != boundary.length; i++) {
-			//for each boundary character again
-			for (int ii = 0; ii != boundary.length; ii++) {
-				//if the subject contains the search string preceded by the boundary character of the outer loop and followed by the boundary character of this inner loop
-				if (subject.contains(boundary[i]+search+boundary[ii])) {
-					return true;
-				}
-			}
-			//if the subject starts or ends with the search string and is followed by or preceded respectively by the boundary character
-			if (subject.startsWith(search+boundary[i]) || subject.endsWith(boundary[i]+search)) {
+		//the subject is already upper case
+		String subject = normalizedSubject.getValue();
+		int length = subject.length();
+		//the last position the search string can start at
+		int last = length - search.length();
+		//for each occurrence of the search string
+		for (int i = subject.indexOf(search); i != -1 && i <= last; i = ( i == last ? -1 : subject.indexOf(search,i+1) )) {
+			int end = i + search.length();
+			//the occurrence must be preceded by a boundary character or the start of the subject, and followed by a boundary character or the end of the subject
+			//but not span the whole subject, i.e. the subject contains it with a boundary at either end, starts with it followed by a boundary, or ends with it preceded by a boundary
+			if ((i == 0 || isBoundary(subject.charAt(i-1))) && (end == length || isBoundary(subject.charAt(end))) && (i != 0 || end != length)) {
 				return true;
 			}
 		}
 		//no match found
 		return false;
 	}
+	/** Returns whether the given character is an allowed boundary character for contains(): a space, underscore or dash. **/
+	private static boolean isBoundary(char c) {
+		return (c == ' ' || c == '_' || c == '-');
+	}
+	/**
+	*** Returns the "for" boundary of the given upper case subject: the position after the first "FOR" with a separator before and after it,
+	*** which is where a model following "for" can start. Returns FOR_NONE if there is no such "FOR", or FOR_UNSCANNABLE if the subject contains
+	*** line terminators and must be checked with the regular expression. The subject is scanned once, in linear time.
+	**/
+	public static int getForBoundary(String subject) {
+		int length = subject.length();
+		//for each character
+		for (int i = 0; i != length; i++) {
+			char c = subject.charAt(i);
+			//if it is a line terminator, which the regular expression's "." does not match, the subject cannot be scanned
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return FOR_UNSCANNABLE;
+			}
+		}
+		//for each "FOR" after the first character and before the last
+		for (int i = subject.indexOf("FOR",1); i != -1 && i+3 < length; i = subject.indexOf("FOR",i+1)) {
+			//if it has a separator before and after it, a model can start after the separator that follows it
+			if (isForSeparator(subject.charAt(i-1)) && isForSeparator(subject.charAt(i+3))) {
+				return i+4;
+			}
+		}
+		return FOR_NONE;
+	}
+	/**
+	*** Returns whether the given upper case model is in the subject after "for", given the subject's scanned "for" boundary: whether it occurs
+	*** at or after the boundary, preceded by a separator and followed by a separator, a comma or the end of the subject.
+	*** This gives the same result as the regular expression ^.*[_\-\s]FOR[_\-\s](?:.*[_\-\s])?MODEL(?:[_\-\s,].*|$) for a model without regular expression characters.
+	**/
+	private static boolean isAfterFor(String subject,int forBoundary,String model) {
+		//if the subject has no "for", the model cannot follow it
+		if (forBoundary == FOR_NONE) {
+			return false;
+		}
+		int length = subject.length();
+		int last = length - model.length();
+		//for each occurrence of the model from the boundary. the boundary is after a separator, so there is always a character before an occurrence
+		for (int i = subject.indexOf(model,forBoundary); i != -1 && i <= last; i = ( i == last ? -1 : subject.indexOf(model,i+1) )) {
+			int end = i + model.length();
+			//if it is preceded by a separator and followed by a separator, a comma or the end of the subject, it is after "for"
+			if (isForSeparator(subject.charAt(i-1)) && (end == length || isForSeparator(subject.charAt(end)) || subject.charAt(end) == ',')) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/** Returns whether the given character is a separator of the "for" regular expression: an underscore, a dash or a character matched by \s. **/
+	private static boolean isForSeparator(char c) {
+		return (c == '_' || c == '-' || c == ' ' || (c >= 9 && c <= 13));
+	}
+	/** Returns whether the given string has no characters that have a meaning in a regular expression outside of a character class, so it matches itself as a pattern. **/
+	private static boolean isLiteral(String string) {
+		//for each character
+		for (int i = 0; i != string.length(); i++) {
+			//if it is a regular expression character, the string is not literal
+			if ("\\.[]{}()*+?^$|".indexOf(string.charAt(i)) != -1) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+import tom.data.IntList;
+
+/**
+*** SortableResultBuckets class
+*** Holds the indexes of the listings matched to each known product of a catalog, in a bucket per product addressed by its index in the catalog,
+*** so recording a match is an append to an int list with no lookup by name. The array of buckets is allocated for every product up front, and
+*** each bucket is created when its product is first matched. Buckets are not synchronised: each worker fills its own, and they are merged
+*** once every worker is done. Listings are appended in the order they are matched, so a bucket should be sorted before it is output.
+**/
+
+public class SortableResultBuckets {
+	///The bucket of each product by product index, or null if the product has no matches.
+	private final IntList[] buckets;
+	/** Constructs a new SortableResultBuckets with an empty bucket for each of the given number of products. **/
+	public SortableResultBuckets(int productCount) {
+		this.buckets = new IntList[productCount];
+	}
+	/** Returns the number of products. **/
+	public int getProductCount() {
+		return buckets.length;
+	}
+	/** Adds the listing at the given index to the bucket of the product at the given index. **/
+	public void add(int product,int listing) {
+		IntList bucket = buckets[product];
+		if (bucket == null) {
+			bucket = buckets[product] = new IntList();
+		}
+		bucket.add(listing);
+	}
+	/** Returns the bucket of the product at the given index, which may be changed. **/
+	public IntList get(int product) {
+		if (buckets[product] == null) {
+			buckets[product] = new IntList();
+		}
+		return buckets[product];
+	}
+	/** Returns the number of listings in the bucket of the product at the given index. **/
+	public int getSize(int product) {
+		return ( buckets[product] == null ? 0 : buckets[product].getSize() );
+	}
+	/** Moves the listings of the bucket of the product at the first index to the end of the bucket of the product at the second. **/
+	public void move(int fromProduct,int toProduct) {
+		IntList from = buckets[fromProduct];
+		//if the bucket is empty, there is nothing to move
+		if (from == null || from.getSize() == 0) {
+			return;
+		}
+		for (int i = 0; i != from.getSize(); i++) {
+			add(toProduct,from.get(i));
+		}
+		from.clear();
+	}
+	/** Adds the listings of every bucket of the given buckets, which must be for the same catalog, to the end of the bucket of the same product. **/
+	public void addAll(SortableResultBuckets other) {
+		for (int i = 0; i != buckets.length; i++) {
+			IntList bucket = other.buckets[i];
+			//if the other bucket is not empty, append its listings
+			if (bucket != null) {
+				for (int ii = 0; ii != bucket.getSize(); ii++) {
+					add(i,bucket.get(ii));
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
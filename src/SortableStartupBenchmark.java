@@ -0,0 +1,90 @@
+import tom.string.json.JSONDocument;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+/**
+*** SortableStartupBenchmark class
+*** Measures how soon a freshly started JVM finds its first match, which is what a short run over a small batch of listings waits for.
+*** A run reads the known products and the first listings of a newline delimited listings file, then compares the listings against every
+*** product, as a matching worker does, and outputs the times from the start of the JVM, as given by the runtime, to entering main, reading
+*** the products and listings, the first match, and the end of the batch. Each run measures one JVM start, so the benchmark is run repeatedly,
+*** with and without a class data sharing archive or AOT cache (see train-startup.bat and startup-benchmark.bat), and the times compared.
+**/
+
+public class SortableStartupBenchmark {
+	///The default number of listings compared.
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+	/**
+	*** Runs the benchmark once.
+	*** Accepts 2 to 3 arguments: the newline delimited 3rd party product listings file, the known products file, and the number of listings to compare (default 1000).
+	**/
+	public static void main(String[] args) {
+		long mainTime = System.currentTimeMillis();
+		//if there are too few arguments, output the syntax
+		if (args.length < 2) {
+			System.out.println("Insufficient parameters.\r\nSyntax: <3rd party product file> <known products file> [listings to compare, default "+DEFAULT_BATCH_SIZE+"]");
+			return;
+		}
+		long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+		int batchSize = ( args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE );
+		//anticipate IO errors
+		try {
+			SortableCatalog catalog = SortableCatalog.read(args[1],1);
+			long catalogTime = System.currentTimeMillis();
+			SortableListing[] listings = readListings(args[0],batchSize);
+			long listingsTime = System.currentTimeMillis();
+			SortableProductMatcher[] productMatcher = catalog.createMatchers();
+			SortableMatchPlan plan = new SortableMatchPlan(true);
+			long firstMatchTime = -1;
+			int matched = 0;
+			//for each listing, compare it with every product, keeping the time of the first match
+			for (int i = 0; i != listings.length; i++) {
+				boolean isMatched = false;
+				for (int ii = 0; ii != productMatcher.length; ii++) {
+					productMatcher[ii].setListing(listings[i]);
+					if (productMatcher[ii].getMatchType(plan) != SortableMatchResult.MatchType.NO_MATCH) {
+						isMatched = true;
+						if (firstMatchTime == -1) {
+							firstMatchTime = System.currentTimeMillis();
+						}
+					}
+				}
+				if (isMatched) {
+					matched++;
+				}
+			}
+			long endTime = System.currentTimeMillis();
+			System.out.println("main "+(mainTime-startTime)+"ms, products "+(catalogTime-startTime)+"ms, listings "+(listingsTime-startTime)+"ms, first match "+( firstMatchTime == -1 ? "none" : (firstMatchTime-startTime)+"ms" )+", batch of "+listings.length+" ("+matched+" matched) "+(endTime-startTime)+"ms");
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			System.out.println("An IO error occurred.");
+		}
+	}
+	/** Returns the listings of up to the given number of lines of the given newline delimited listings file. **/
+	private static SortableListing[] readListings(String file,int count) throws IOException {
+		StringBuilder text = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),JSONDocument.CHARSET));
+		//anticipate IO errors, ensuring the reader is closed
+		try {
+			String line;
+			for (int i = 0; i != count && (line = reader.readLine()) != null; i++) {
+				text.append(line).append('\n');
+			}
+		}
+		finally {
+			reader.close();
+		}
+		JSONDocument document = new JSONDocument(new StringReader(text.toString()));
+		SortableListing[] listings = new SortableListing[document.getChildCount()];
+		for (int i = 0; i != listings.length; i++) {
+			listings[i] = SortableListing.read(document.getData(i));
+		}
+		return listings;
+	}
+}
\ No newline at end of file
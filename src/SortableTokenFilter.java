@@ -0,0 +1,95 @@
+import tom.string.TokenizedString;
+
+/**
+*** SortableTokenFilter class
+*** A Bloom filter of the tokens of a listing, which rejects most known products before their manufacturer or family is searched for.
+*** The manufacturer (or family) check only passes when the listing's manufacturer equals the product's, or its title or name contains the
+*** product's manufacturer between separators. Either way every token of the product's manufacturer is a token of the listing's manufacturer,
+*** family, title or name, as contains() only accepts separators around an occurrence. So if any bit of a product's fingerprint, the bits of
+*** its manufacturer tokens, is missing from a listing's set, the check cannot pass and the strings need not be compared. A set may hold bits
+*** of tokens the listing does not have, so when every bit is present the real check still runs, and the results are unchanged.
+*** Each token sets HASH_COUNT bits of a set of the given number of bits; more bits give fewer false positives for listings with many tokens.
+*** A filter holds only its size, so it can be shared between threads; each thread fills its own sets.
+**/
+
+public class SortableTokenFilter {
+	///The default number of bits of a set.
+	public static final int DEFAULT_BITS = 256;
+	///The number of bits each token sets.
+	public static final int HASH_COUNT = 2;
+	///The number of bits of a set, a power of two of at least 64.
+	private final int bits;
+	///The number of longs of a set.
+	private final int wordCount;
+	/** Constructs a new SortableTokenFilter with sets of the given number of bits, which must be a power of two of at least 64. **/
+	public SortableTokenFilter(int bits) {
+		if (!isValidBits(bits)) {
+			throw new IllegalArgumentException("The bits of a token filter must be a power of two of at least 64: "+bits);
+		}
+		this.bits = bits;
+		this.wordCount = bits >>> 6;
+	}
+	/** Returns whether the given number of bits is a valid size of a set, a power of two of at least 64. **/
+	public static boolean isValidBits(int bits) {
+		return ( bits >= 64 && (bits & (bits - 1)) == 0 );
+	}
+	/** Returns the number of bits of a set. **/
+	public int getBits() {
+		return bits;
+	}
+	/** Returns a new empty set. **/
+	public long[] createSet() {
+		return new long[wordCount];
+	}
+	/** Fills the given set with the tokens of the manufacturer, family, title and name of the given listing, replacing its contents. **/
+	public void fill(long[] set,SortableListing listing) {
+		for (int i = 0; i != wordCount; i++) {
+			set[i] = 0;
+		}
+		add(set,listing.getNormalizedManufacturer());
+		add(set,listing.getNormalizedFamily());
+		add(set,listing.getNormalizedTitle());
+		add(set,listing.getNormalizedName());
+	}
+	/** Returns a new set of the tokens of the given string, as the fingerprint of a product field, or null if the string is null. **/
+	public long[] getFingerprint(TokenizedString string) {
+		if (string == null) {
+			return null;
+		}
+		long[] set = createSet();
+		add(set,string);
+		return set;
+	}
+	/** Adds the tokens of the given string, if it is not null, to the given set. **/
+	private void add(long[] set,TokenizedString string) {
+		if (string == null) {
+			return;
+		}
+		String value = string.getValue();
+		int mask = bits - 1;
+		//for each token
+		for (int i = 0; i != string.getTokenCount(); i++) {
+			//hash the token in place, as String.hashCode() would hash it as a substring
+			int hash = 0;
+			for (int ii = string.getTokenStart(i); ii != string.getTokenEnd(i); ii++) {
+				hash = 31*hash + value.charAt(ii);
+			}
+			//mix the bits, and derive each bit of the token from two hashes
+			hash*= 0x9E3779B9;
+			int step = (Integer.rotateLeft(hash,16) | 1);
+			for (int ii = 0; ii != HASH_COUNT; ii++) {
+				int bit = (hash + ii*step) & mask;
+				set[bit >>> 6]|= 1L << bit;
+			}
+		}
+	}
+	/** Returns whether the given set has every bit of the given fingerprint, so it may have all of its tokens. **/
+	public static boolean mayContainAll(long[] set,long[] fingerprint) {
+		for (int i = 0; i != set.length; i++) {
+			if ((fingerprint[i] & ~set[i]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -14,6 +14,10 @@ public class HashKey implements java.io.Serializable {
 	public String hashString; ///Stores the hash key string. (This is not necessary for the classes to function. Used for debugging purposes only.)
 	/** Creates a new HashKey for the given key String. **/
 	public HashKey(String key,int mod,int[] size) {
+		parseKey(hash(key,mod),size); //parse the generated key
+	}
+	/** Returns the hash of the given key String within the given modulo, without allocating. **/
+	public static int hash(String key,int mod) {
 		/*
 		** Jenkins Hash Function converted to Java from C.
 		** http://en.wikipedia.org/wiki/Jenkins_hash_function
@@ -30,8 +34,7 @@ public class HashKey implements java.io.Serializable {
 		//because unlike C, Java does not allow for creating unsigned primitive types (they are all signed)
 		//the key must be validated and potentially altered further to ensure a positive value
 		if (hashKey < 0) { hashKey = hashKey >>> 1; } //if the hash key is negative, logical shift it right once
-		hashKey = hashKey % mod; //modulo the hash key to fit within hash table size (dimension1 * dimension2)
-		parseKey(hashKey,size); //parse the generated key
+		return hashKey % mod; //modulo the hash key to fit within hash table size (dimension1 * dimension2)
 	}
 	/** Parses the hash key to get the two indexes for the array in the parent class. **/
 	private void parseKey(int hashKey,int[] size) {
@@ -7,7 +7,11 @@ package tom.data;
 *** The hash table will create a multi dimensional array close to the given initial size
 *** and can automatically expand at specified remaining capacity percentage points.
 *** When the size exceeds 1000 it will begin to split the hash key into a two-part index key for the two dimensions in the array.
-*** Uses linear probing collision prevention techique.
+*** Uses linear probing collision prevention techique. Removed items leave a deleted marker, so that a probe can stop at
+*** the first element that has never been used instead of scanning the whole table.
+*** Expansion is incremental: when the expansion point is reached a new table is created, and each add or remove
+*** migrates a bounded number of elements from the old table while both tables remain live. Lookups check the new
+*** table and then the old table, and do not migrate, so that concurrent readers never modify the table.
 **/
 
 public class HashTable<T> implements java.io.Serializable {
@@ -20,6 +24,13 @@ public class HashTable<T> implements java.io.Serializable {
 	private int itemCount = 0; ///The number of items stored in the table
 	private int[] size = new int[2]; ///The length of the corresponding dimension of the table
 	private Object[][][] table; ///The array that the items and their keys will be stored in
+	private static final Object DELETED = new Deleted(); ///The key stored in place of a removed item, which probes continue past
+	private int deletedCount = 0; ///The number of deleted markers in the table
+	private int migrationRate = 16; ///The number of old table elements migrated by each add or remove during an expansion
+	private Object[][][] oldTable; ///The array being migrated into the table during an expansion, or null if there is none
+	private int[] oldSize; ///The length of the corresponding dimension of the old table
+	private int oldMod; ///The modulo for the hashing algorithm of the old table
+	private int migrationIndex; ///The index of the next old table element to migrate
 	/** Creates a new HashTable of size 999. **/
 	public HashTable() {
 		table = createTable(999);
@@ -38,68 +49,83 @@ public class HashTable<T> implements java.io.Serializable {
 		}
 	}
 	/** Returns an array of the keys to access all the information stored in the table. **/
-	@SuppressWarnings("unchecked")
 	public String[] getKeys() {
 		String[] keys = new String[itemCount];
-		int count = itemCount;
+		int count = getKeys(table,keys,0);
+		if (oldTable != null) { getKeys(oldTable,keys,count); } //include the items that are yet to be migrated
+		return keys;
+	}
+	/** Stores the keys in the given array into the keys array from the given index, returning the index after the last key stored. **/
+	private int getKeys(Object[][][] table,String[] keys,int count) {
 		mainloop:
 		for (int i = 0; i != table.length; i++) {
 			for (int ii = 0; ii != table[i].length; ii++) {
-				//if (itemCount > 20) { System.out.println("table["+i+"]["+ii+"][1] => "+(String)table[i][ii][1]); }
-				if (table[i][ii][1] != null) {
-					keys[itemCount-count] = (String)table[i][ii][1];
-					count--;
-					if (count == 0) { break mainloop; }
+				if (table[i][ii][1] != null && table[i][ii][1] != DELETED) {
+					keys[count++] = (String)table[i][ii][1];
+					if (count == keys.length) { break mainloop; }
 				}
 			}
 		}
-		return keys;
-	}
-	/** Add the given item and key to the specified index of the HashTable. **/
-	private void add(String key,T item,int keyA,int keyB) {
-		table[keyA][keyB][0] = item; //store the item
-		table[keyA][keyB][1] = key; //store the key for use in determining if hash keys are pointing to the correct index
-		itemCount++; //increase the counter for the number of items stored in the HashTable
+		return count;
 	}
 	/** Add the given item to the HashTable using the given key. **/
 	public void add(String key,T item) {
-		HashKey hashKey = new HashKey(key,mod,size); //get the hash key for the given key
-		int a = hashKey.indexA,b = hashKey.indexB; //copy the two indexes
-		do {
-			try {
-				if (table[a][b][1] == null) { }
+		migrate(migrationRate); //migrate part of the old table if an expansion is in progress
+		if (oldTable != null) { //if an expansion is in progress
+			Object[] element = find(oldTable,oldSize,oldMod,key); //look for the key in the elements yet to be migrated
+			if (element != null) { //if the key is found
+				element[0] = item; //overwrite the item, which will be migrated with its key
+				return; //exit and return to the calling statement
 			}
-			catch(ArrayIndexOutOfBoundsException e) {
-				System.out.println("Exception at: table["+a+"]["+b+"][1] -> mod: "+mod+"; size; "+table.length+"*"+table[0].length+" = "+(table.length*table[0].length));
-			}
-			if (table[a][b][1] == null) { //if there is no key stored at the index
-				add(key,item,a,b); //add the item and key to the HashTable at that index
-				if (expansionPoint > 0) { //if the expansion point is greater than 0
-					double percent = (100.0 / (table.length * table[0].length)) * itemCount; //determine percentage of elements in use
-					if (percent >= expansionPoint && expansionRate > 0) { //if the percentage is greater than or equal to the expansion point, and the expansion rate is greater than 0
-						expandTable((int)(mod + (mod * (expansionRate / 100)))); //expand table by the expansionRate
-					}
+		}
+		if (put(key,item)) { //if the key is added rather than overwritten
+			itemCount++; //increase the counter for the number of items stored in the HashTable
+			if (expansionPoint > 0) { //if the expansion point is greater than 0
+				//determine percentage of elements in use, counting the deleted markers as they also lengthen probes
+				double percent = (100.0 / (table.length * table[0].length)) * (itemCount + deletedCount);
+				if (percent >= expansionPoint && expansionRate > 0) { //if the percentage is greater than or equal to the expansion point, and the expansion rate is greater than 0
+					beginExpansion((int)(mod + (mod * (expansionRate / 100)))); //begin expanding the table by the expansionRate
 				}
-				return; //exit the loop and return to the calling statement
 			}
-			else if (table[a][b][1] != null && table[a][b][1].equals(key)) { //else, if the key stored at the index is the same key being used to store the given item
-				add(key,item,a,b); //overwrite the item in the HashTable
-				return; //exit the loop and return to the calling statement
+		}
+	}
+	/** Stores the given item and key in the table, returning true if the key was added and false if an existing item was overwritten. **/
+	private boolean put(String key,Object item) {
+		int hash = HashKey.hash(key,mod); //get the hash for the given key
+		int a = hash / size[1],b = hash % size[1]; //split the hash into the two indexes
+		int startA = a,startB = b; //store the original position
+		Object[] free = null; //the first element the key can be stored in
+		do {
+			Object[] element = table[a][b]; //get the element at the index
+			if (element[1] == null) { //if there is no key stored at the index, the key is not in the table
+				if (free == null) { free = element; } //if no deleted element was passed, use this one
+				break; //exit the loop
 			}
-			else { //else, point to the next item in the HashTable to probe for a free element
-				b++; //increase the second index of the hash key
-				if (b == table[a].length) { //if the second index is equal to the length of the second dimension
-					b = 0; //set the second index of the hash key to 0, and
-					a++; //increase the first index of the hash key
-					if (a == table.length) { //if the first index is equal to the length of the first dimension
-						a = 0; //set the first index of the hash key to 0
-					}
+			else if (element[1] == DELETED) { //else, if the element is deleted
+				if (free == null) { free = element; } //reuse the first deleted element, but continue in case the key is stored further on
+			}
+			else if (element[1].equals(key)) { //else, if the key stored at the index is the same key being used to store the given item
+				element[0] = item; //overwrite the item in the HashTable
+				return false; //return that the key already existed
+			}
+			b++; //increase the second index of the hash key
+			if (b == table[a].length) { //if the second index is equal to the length of the second dimension
+				b = 0; //set the second index of the hash key to 0, and
+				a++; //increase the first index of the hash key
+				if (a == table.length) { //if the first index is equal to the length of the first dimension
+					a = 0; //set the first index of the hash key to 0
 				}
 			}
-		} while (a != hashKey.indexA || b != hashKey.indexB); //loop until the key points to the original position
-		//if this point is reached then the HashTable has no more free elements. throw a HashTableFullException and display it to the user
-		try { throw new HashTableFullException("There are no more available indexes in "+this); }
-		catch(HashTableFullException e) { e.printStackTrace(); }
+		} while (a != startA || b != startB); //loop until the key points to the original position
+		if (free == null) { //if the HashTable has no more free elements, throw a HashTableFullException and display it to the user
+			try { throw new HashTableFullException("There are no more available indexes in "+this); }
+			catch(HashTableFullException e) { e.printStackTrace(); }
+			return false;
+		}
+		if (free[1] == DELETED) { deletedCount--; } //if a deleted element is reused, it is no longer a marker
+		free[0] = item; //store the item
+		free[1] = key; //store the key for use in determining if hash keys are pointing to the correct index
+		return true;
 	}
 	/** Creates the table to the specified size and assigns values to setLen and mod. **/
 	private Object[][][] createTable(int i) {
@@ -130,32 +156,71 @@ public class HashTable<T> implements java.io.Serializable {
 	public boolean exists(T item) {
 		return (getKey(item) != null ? true : false); //if there are matching keys, return true, otherwise return false
 	}
-	@SuppressWarnings("unchecked")
-	/** Expands the table to the new specified size. (Public for potential convenience; the automatic expansion should be used.) **/
+	/** Expands the table to the new specified size, migrating every item immediately. (Public for potential convenience; the automatic expansion should be used.) **/
 	public void expandTable(int newSize) {
-		//System.out.println("Creating new table of size "+newSize);
-		HashTable<T> newTable = new HashTable<T>(newSize); //create a new HashTable of the specified new size
-		newTable.setExpansionPoint(this.expansionPoint);
-		newTable.setExpansionRate(this.expansionRate);
-		for (int i = 0; i != table.length; i++) { //loop for each element in the first dimension of the current array
-			for (int ii = 0; ii != table[i].length; ii++) { //loop for each element in the second dimension of the current array
-				if (table[i][ii][1] != null) { newTable.add((String)table[i][ii][1],(T)table[i][ii][0]); } //if the index is not null, hash the key and store the item in the new HashTable
+		beginExpansion(newSize); //create the new table
+		migrate(Integer.MAX_VALUE); //migrate all of the old table
+	}
+	/** Begins expanding the table to the new specified size. The items are migrated from the old table by later adds and removes. **/
+	private void beginExpansion(int newSize) {
+		migrate(Integer.MAX_VALUE); //finish any expansion already in progress, so there is only ever one old table
+		oldTable = table; //keep the current table live as the old table
+		oldSize = size; //keep its index lengths
+		oldMod = mod; //keep its mod
+		migrationIndex = 0; //start migrating from the first element
+		table = createTable(newSize); //create the new table, which updates the mod and index lengths
+		deletedCount = 0; //the new table has no deleted markers
+	}
+	/** Migrates up to the given number of elements from the old table into the table, ending the expansion when the old table is empty. **/
+	private void migrate(int count) {
+		if (oldTable == null) { return; } //if there is no expansion in progress, there is nothing to migrate
+		int length = oldTable.length * oldTable[0].length; //get the number of elements in the old table
+		while (count != 0 && migrationIndex != length) { //loop until enough elements are migrated or the old table is finished
+			Object[] element = oldTable[migrationIndex / oldSize[1]][migrationIndex % oldSize[1]]; //get the next element
+			if (element[1] != null && element[1] != DELETED) { //if it stores an item
+				put((String)element[1],element[0]); //store the item in the new table
+				element[0] = null; //set the item space to null
+				element[1] = DELETED; //mark the element deleted, so probes for the remaining items continue past it
 			}
+			migrationIndex++; //move to the next element
+			count--; //count the migrated element
+		}
+		if (migrationIndex == length) { //if the old table is finished
+			oldTable = null; //prepare the old table to be garbage collected
+			oldSize = null;
 		}
-		table = newTable.table; //point this instance's array to the array created with the new HashTable object
-		mod = newTable.mod; //update the mod
-		size = newTable.size; //update the index lengths
-		//prepare the new HashTable object to be garbage collected
-		newTable.table = null; //set the new HashTable object's table array reference to null
-		newTable = null; //set the new HashTable object reference to null
+	}
+	/** Returns the element of the given table storing the given key, or null if the key is not stored. **/
+	private static Object[] find(Object[][][] table,int[] size,int mod,String key) {
+		int hash = HashKey.hash(key,mod); //get the hash for the given key
+		int a = hash / size[1],b = hash % size[1]; //split the hash into the two indexes
+		int startA = a,startB = b; //store the original position
+		do {
+			Object[] element = table[a][b]; //get the element at the index
+			if (element[1] == null) { return null; } //if the element has never been used, the key is not in the table
+			if (element[1] != DELETED && element[1].equals(key)) { return element; } //if the key at the index is the key being searched for, return the element
+			b++; //increase the second index of the hash key
+			if (b == table[a].length) { //if the second index is equal to the length of the second dimension
+				b = 0; //set the second index of the hash key to 0, and
+				a++; //increase the first index of the hash key
+				if (a == table.length) { //if the first index is equal to the length of the first dimension
+					a = 0; //set the first index of the hash key to 0
+				}
+			}
+		} while (a != startA || b != startB); //loop until the key points to the original position
+		return null; //if this point is reached then the item being searched for does not exist in the table
+	}
+	/** Returns the element storing the given key in either table, or null if the key is not stored. **/
+	private Object[] find(String key) {
+		Object[] element = find(table,size,mod,key); //look in the table
+		if (element == null && oldTable != null) { element = find(oldTable,oldSize,oldMod,key); } //if not found during an expansion, look in the old table
+		return element;
 	}
 	@SuppressWarnings("unchecked")
 	/** Returns the item stored at the index of the given key in the HashTable. **/
 	public T get(String key) {
-		HashKey hashKey = new HashKey(key,mod,size); //get the hash key for the given key
-		//if the key stored at the hash key index is the given key, return the item
-		if (table[hashKey.indexA][hashKey.indexB][1] != null && table[hashKey.indexA][hashKey.indexB][1].equals(key)) { return (T)table[hashKey.indexA][hashKey.indexB][0]; }
-		else { return getNextItem(key,hashKey); } //else, return the result of a linear probe for the given key
+		Object[] element = find(key); //find the element storing the key
+		return (element == null ? null : (T)element[0]); //return the item, or null if there is none
 	}
 	/** Returns the number of items stored in the HashTable. **/
 	public int getItemCount() {
@@ -163,17 +228,23 @@ public class HashTable<T> implements java.io.Serializable {
 	}
 	/** Returns the number of occurances of the given item in the HashTable. **/
 	public int getItemCount(T item) {
-		return getKey(item).length; //return the length of the array returned from the getKey for the given item method
+		String[] keys = getKey(item); //get the keys of the item
+		return (keys == null ? 0 : keys.length); //return the number of keys
 	}
 	/** Return a String array of keys pointing to items matching the given item. **/
 	public String[] getKey(T item) {
 		/*
 		** improve this method to allow wild card and possibly regex searches
 		*/
-		String[] keys = new String[1]; //create an array for the keys initially at size 1
+		String[] keys = getKey(table,item,new String[1]); //search the table
+		if (oldTable != null) { keys = getKey(oldTable,item,keys); } //include the items that are yet to be migrated
+		return (keys[0] == null || keys[0].equals("") ? null : keys); //if a match was found and corresponding key stored, return the keys array, otherwise return null
+	}
+	/** Adds the keys pointing to items in the given table matching the given item to the keys array, returning the array, which may be a new array. **/
+	private static String[] getKey(Object[][][] table,Object item,String[] keys) {
 		for (int i = 0; i != table.length; i++) { //loop for each element in the first dimension of the array
 			for (int ii = 0; ii != table[i].length; ii++) { //loop for each element in the second dimension of the array
-				if (table[i][ii][0] == item) { //if the index has the given item stored
+				if (table[i][ii][0] == item && table[i][ii][1] != null && table[i][ii][1] != DELETED) { //if the index has the given item stored
 					if (keys[keys.length-1] != null && !keys[keys.length-1].equals("")) { //if the keys array is full
 						String[] keys2 = new String[keys.length+1]; //create a new array 1 size larger
 						System.arraycopy(keys,0,keys2,0,keys.length); //copy the items in keys to the new array
@@ -183,14 +254,7 @@ public class HashTable<T> implements java.io.Serializable {
 				}
 			}
 		}
-		return (keys[0] == null || keys[0].equals("") ? null : keys); //if a match was found and corresponding key stored, return the keys array, otherwise return null
-	}
-	@SuppressWarnings("unchecked")
-	/** Returns the item stored with the given key in the HashTable. **/
-	private T getNextItem(String key,HashKey hashKey) {
-		seek(key,hashKey); //attempt to point the hash key to the correct item
-		if (hashKey.indexA == -1) { return null; } //if the first index of the hash key is -1, there is no item for the given key. return null
-		else { return (T)table[hashKey.indexA][hashKey.indexB][0]; } //otherwise, return the item
+		return keys;
 	}
 	/** Returns the percentage of the HashTable that is not in use. **/
 	public double getRemainingCapacity() {
@@ -204,44 +268,22 @@ public class HashTable<T> implements java.io.Serializable {
 	public double getUsedCapacity() {
 		return (100.0 / (table.length * table[0].length)) * itemCount; //calculate and return the percentage of elements in use
 	}
-	/** Remove the item at the specified index from the HashTable. **/
-	private void remove(int keyA,int keyB) {
-		table[keyA][keyB][0] = null; //set the item space to null
-		table[keyA][keyB][1] = null; //set the key space to null
-		itemCount--; //decrease the counter for the number of items stored in the HashTable
+	/** Returns whether an expansion is in progress, with items still to be migrated from the old table. **/
+	public boolean isExpanding() {
+		return (oldTable != null);
 	}
-	/** Remove the item at the specified index from the HashTable. **/
+	/** Remove the item stored with the given key from the HashTable. **/
 	public void remove(String key) {
-		HashKey hashKey = new HashKey(key,mod,size); //get the hash key for the given key
-		if (table[hashKey.indexA][hashKey.indexB][1] != null && table[hashKey.indexA][hashKey.indexB][1].equals(key)) { //if the hash key points to the correct location
-			remove(hashKey.indexA,hashKey.indexB); //remove the item from the HashTable
-		}
-		else { //otherwise, seek the correct item via linear probing
-			seek(key,hashKey); //attempt to point the hash key to the correct item
-			if (hashKey.indexA != -1) { remove(hashKey.indexA,hashKey.indexB); } //if the first index is not -1, remove the item from the HashTable
-			//otherwise there is no item in the HashTable for the given key, so do nothing
+		migrate(migrationRate); //migrate part of the old table if an expansion is in progress
+		Object[] element = find(table,size,mod,key); //look for the key in the table
+		if (element != null) { deletedCount++; } //if found, the table gains a deleted marker
+		else if (oldTable != null) { element = find(oldTable,oldSize,oldMod,key); } //otherwise during an expansion, look in the old table
+		if (element != null) { //if the key is stored
+			element[0] = null; //set the item space to null
+			element[1] = DELETED; //mark the element deleted, so probes for other keys continue past it
+			itemCount--; //decrease the counter for the number of items stored in the HashTable
 		}
-	}
-	/** Linear probe with a HashKey for the index storing the item stored with the given key. **/
-	private void seek(String key,HashKey hashKey) {
-		int a = hashKey.indexA,b = hashKey.indexB; //copy the two indexes
-		do {
-			b++; //increase the second index of the hash key
-			if (b == table[a].length) { //if the second index is equal to the length of the second dimension
-				b = 0; //set the second index of the hash key to 0, and
-				a++; //increase the first index of the hash key
-				if (a == table.length) { //if the first index is equal to the length of the first dimension
-					a = 0; //set the first index of the hash key to 0
-				}
-			}
-			if (table[a][b][1] != null && table[a][b][1].equals(key)) { //if the key at the index is the key being searched for
-				hashKey.indexA = a; //set the first index of the hash key to point to the correct first dimension
-				hashKey.indexB = b; //set the second index of the hash key to point to the correct second dimension
-				return; //exit the loop and return to the calling statement
-			}
-		} while (a != hashKey.indexA || b != hashKey.indexB); //loop until the key points to the original position
-		//if this point is reached then the item being searched for does not exist in the table
-		hashKey.indexA = -1; //set the first index of the hash key to -1 to indicate no results
+		//otherwise there is no item in the HashTable for the given key, so do nothing
 	}
 	/** Set the percentage of elements used before the HashTable expands. **/
 	public void setExpansionPoint(double d) {
@@ -251,4 +293,16 @@ public class HashTable<T> implements java.io.Serializable {
 	public void setExpansionRate(double d) {
 		expansionRate = d;
 	}
+	/** Set the number of old table elements each add or remove migrates while an expansion is in progress. **/
+	public void setMigrationRate(int i) {
+		migrationRate = ( i > 0 ? i : 1 );
+	}
+	/** Marks removed elements. Resolves to the single shared marker when deserialized, as the marker is compared by reference. **/
+	private static final class Deleted implements java.io.Serializable {
+		private static final long serialVersionUID = 1L;
+		/** Returns the shared marker in place of a deserialized copy. **/
+		private Object readResolve() {
+			return DELETED;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package tom.data;
+
+/**
+*** IntList class
+*** A growable array of primitive ints, for lists of indexes where a LinkedList would need an object per item.
+*** Items are appended to the end of the list and the array doubles in size when it is full.
+**/
+
+public class IntList implements java.io.Serializable {
+	private static final long serialVersionUID = -2291846734415205178L;
+	private int[] array; ///The array the items are stored in.
+	private int size; ///The number of items stored.
+	/** Constructs a new IntList with room for 8 items. **/
+	public IntList() {
+		this(8);
+	}
+	/** Constructs a new IntList with room for the given number of items. **/
+	public IntList(int capacity) {
+		array = new int[Math.max(capacity,1)]; //create the array, with room for at least one item
+	}
+	/** Adds the given item to the end of the IntList. **/
+	public void add(int item) {
+		if (size == array.length) { //if the array is full
+			int[] newArray = new int[array.length*2]; //create an array twice the size
+			System.arraycopy(array,0,newArray,0,size); //copy the items into it
+			array = newArray; //use the new array
+		}
+		array[size++] = item; //store the item and increase the size
+	}
+	/** Returns the item at the given index. **/
+	public int get(int i) {
+		if (i >= size) { throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for size "+size); } //the array may be larger than the list
+		return array[i]; //return the item
+	}
+	/** Replaces the item at the given index. **/
+	public void set(int i,int item) {
+		if (i >= size) { throw new IndexOutOfBoundsException("Index "+i+" is out of bounds for size "+size); } //the array may be larger than the list
+		array[i] = item; //store the item
+	}
+	/** Returns the number of items in the IntList. **/
+	public int getSize() {
+		return size;
+	}
+	/** Removes every item after the given number of items. **/
+	public void truncate(int size) {
+		if (size < this.size) { this.size = Math.max(size,0); } //the list can only be shortened
+	}
+	/** Removes every item. **/
+	public void clear() {
+		size = 0;
+	}
+	/** Sorts the items in ascending order. **/
+	public void sort() {
+		java.util.Arrays.sort(array,0,size);
+	}
+	/** Returns whether the items are in ascending order. **/
+	public boolean isSorted() {
+		for (int i = 1; i < size; i++) { //loop for each item after the first
+			if (array[i] < array[i-1]) { return false; } //if it is less than the previous item, the list is not sorted
+		}
+		return true;
+	}
+	/** Returns the items as a new array. **/
+	public int[] toArray() {
+		int[] items = new int[size]; //create an array of the list size
+		System.arraycopy(array,0,items,0,size); //copy the items into it
+		return items;
+	}
+}
\ No newline at end of file
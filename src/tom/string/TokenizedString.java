@@ -0,0 +1,72 @@
+package tom.string;
+
+/**
+*** TokenizedString class
+*** Stores a string folded to upper case along with the offsets of its tokens, as produced by the Tokenizer.
+*** The offsets are stored as start (inclusive) and end (exclusive) pairs so that tokens can be compared
+*** in place without creating substrings. Instances are immutable and can be shared between threads.
+**/
+
+public class TokenizedString {
+	private final String value; ///The upper case string.
+	private final int[] offsets; ///The token boundaries as start and end pairs.
+	private final int tokenCount; ///The number of tokens.
+	/** Constructs a new TokenizedString for the given upper case string, token offsets and token count. **/
+	public TokenizedString(String value,int[] offsets,int tokenCount) {
+		this.value = value; //store the upper case string
+		this.offsets = offsets; //store the token boundaries
+		this.tokenCount = tokenCount; //store the number of tokens
+	}
+	/** Returns the upper case string. **/
+	public String getValue() {
+		return value;
+	}
+	/** Returns the length of the upper case string. **/
+	public int length() {
+		return value.length();
+	}
+	/** Returns the number of tokens. **/
+	public int getTokenCount() {
+		return tokenCount;
+	}
+	/** Returns the start offset (inclusive) of the token at the given index. **/
+	public int getTokenStart(int i) {
+		return offsets[i*2];
+	}
+	/** Returns the end offset (exclusive) of the token at the given index. **/
+	public int getTokenEnd(int i) {
+		return offsets[i*2+1];
+	}
+	/** Returns the token at the given index as a new string. **/
+	public String getToken(int i) {
+		return value.substring(offsets[i*2],offsets[i*2+1]);
+	}
+	/** Returns the tokens as an array of new strings. **/
+	public String[] getTokens() {
+		String[] tokens = new String[tokenCount]; //create an array for the tokens
+		for (int i = 0; i != tokenCount; i++) { //loop for each token
+			tokens[i] = getToken(i); //store the token
+		}
+		return tokens;
+	}
+	/** Returns whether the token at the given index is equal to the given string. **/
+	public boolean tokenEquals(int i,String string) {
+		int start = offsets[i*2]; //get the start of the token
+		int length = offsets[i*2+1] - start; //get the length of the token
+		return (length == string.length() && value.regionMatches(start,string,0,length)); //compare in place
+	}
+	/** Returns whether any token of this string is equal to the token at the given index of the other string. **/
+	public boolean containsToken(TokenizedString other,int i) {
+		int start = other.offsets[i*2]; //get the start of the other token
+		int length = other.offsets[i*2+1] - start; //get the length of the other token
+		for (int ii = 0; ii != tokenCount; ii++) { //loop for each token
+			//if the token has the same length and characters, it is contained
+			if (offsets[ii*2+1] - offsets[ii*2] == length && value.regionMatches(offsets[ii*2],other.value,start,length)) { return true; }
+		}
+		return false; //no equal token found
+	}
+	/** Returns the upper case string. **/
+	public String toString() {
+		return value;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package tom.string;
+
+import java.util.Locale;
+
+/**
+*** Tokenizer class
+*** Case folding and tokenization kernel for matching text.
+*** Folds a string to upper case and records the boundaries of the tokens separated by whitespace, dash and underscore
+*** characters (the same separators as the regular expression [_\-\s]+) in a single pass over a char or byte array.
+*** The loops are kept free of method calls and allocation, and the case fold is branch free, so that the JIT can unroll and vectorise them.
+*** The fast path only applies to ASCII input. Input containing other characters falls back to String.toUpperCase(Locale.ROOT) so that
+*** full Unicode case mapping is preserved, and the result is then tokenized without folding.
+*** Token boundaries are written to an offset array as start (inclusive) and end (exclusive) pairs, so the offset array
+*** must have room for at least length + 1 elements.
+**/
+
+public class Tokenizer {
+	/** Prevents instantiation; all methods are static. **/
+	private Tokenizer() {
+	}
+	/** Returns the given string folded to upper case with its token boundaries. **/
+	public static TokenizedString normalize(String string) {
+		int length = string.length(); //store the length of the string
+		char[] source = string.toCharArray(); //get the characters of the string
+		char[] folded = new char[length]; //create an array for the folded characters
+		int[] offsets = new int[length+1]; //create an array large enough for every possible token boundary
+		int count = normalize(source,length,folded,offsets); //run the ASCII kernel
+		if (count != -1) { return new TokenizedString(new String(folded),offsets,count/2); } //if the string was ASCII, return the kernel result
+		String upper = string.toUpperCase(Locale.ROOT); //otherwise fall back to full Unicode case mapping, independent of the default locale
+		source = upper.toCharArray(); //get the characters of the upper case string, which may differ in length
+		offsets = new int[source.length+1]; //create an array large enough for every possible token boundary
+		count = tokenize(source,source.length,offsets); //tokenize the upper case string without folding
+		return new TokenizedString(upper,offsets,count/2); //return the fallback result
+	}
+	/**
+	*** Folds the first length characters of source to upper case into destination and writes the token boundaries into offsets.
+	*** Returns the number of offsets written, or -1 if the input contains non-ASCII characters, in which case the contents of destination and offsets are undefined.
+	**/
+	public static int normalize(char[] source,int length,char[] destination,int[] offsets) {
+		int bits = 0; //the bitwise OR of every character, used to detect non-ASCII input
+		int count = 0; //the number of offsets written
+		int inToken = 0; //1 if the previous character was part of a token, else 0
+		for (int i = 0; i != length; i++) { //loop for each character
+			int c = source[i]; //get the character
+			bits|= c; //accumulate the character bits
+			//subtract 32 from characters within 'a' to 'z'. the sign bit of the OR is set when the character is outside of the range
+			destination[i] = (char)(c - (((((c - 'a') | ('z' - c)) >>> 31) ^ 1) << 5));
+			int token = ( isSeparator(c) ? 0 : 1 ); //determine whether the character is part of a token
+			if (token != inToken) { //if the character starts or ends a token
+				offsets[count++] = i; //record the boundary
+				inToken = token; //update the state
+			}
+		}
+		if (inToken == 1) { offsets[count++] = length; } //if the input ended inside a token, close it
+		return ( bits < 0x80 ? count : -1 ); //return the offset count if the input was ASCII, else -1
+	}
+	/**
+	*** Folds length bytes of source starting at the given position to upper case into destination and writes the token boundaries into offsets.
+	*** Offsets are relative to the given position. Returns the number of offsets written, or -1 if the input contains bytes outside of the ASCII range.
+	**/
+	public static int normalize(byte[] source,int position,int length,char[] destination,int[] offsets) {
+		int bits = 0; //the bitwise OR of every byte, used to detect non-ASCII input
+		int count = 0; //the number of offsets written
+		int inToken = 0; //1 if the previous character was part of a token, else 0
+		for (int i = 0; i != length; i++) { //loop for each byte
+			int c = source[position+i]; //get the byte, sign extended so that non-ASCII bytes are negative
+			bits|= c; //accumulate the byte bits
+			destination[i] = (char)(c - (((((c - 'a') | ('z' - c)) >>> 31) ^ 1) << 5)); //fold 'a' to 'z' to upper case
+			int token = ( isSeparator(c) ? 0 : 1 ); //determine whether the character is part of a token
+			if (token != inToken) { //if the character starts or ends a token
+				offsets[count++] = i; //record the boundary
+				inToken = token; //update the state
+			}
+		}
+		if (inToken == 1) { offsets[count++] = length; } //if the input ended inside a token, close it
+		return ( (bits & 0xFFFFFF80) == 0 ? count : -1 ); //return the offset count if the input was ASCII, else -1
+	}
+	/**
+	*** Folds the length bytes of source from position to upper case into destination and writes the token boundaries into offsets, reading the
+	*** buffer with absolute gets so neither its position nor the bytes are copied first, and several threads can read the same buffer.
+	*** Returns the number of offsets written, or -1 if the input contains non-ASCII bytes, in which case the contents of destination and offsets are undefined.
+	**/
+	public static int normalize(java.nio.ByteBuffer source,int position,int length,char[] destination,int[] offsets) {
+		int bits = 0; //the bitwise OR of every byte, used to detect non-ASCII input
+		int count = 0; //the number of offsets written
+		int inToken = 0; //1 if the previous character was part of a token, else 0
+		for (int i = 0; i != length; i++) { //loop for each byte
+			int c = source.get(position+i); //get the byte, sign extended so that non-ASCII bytes are negative
+			bits|= c; //accumulate the byte bits
+			destination[i] = (char)(c - (((((c - 'a') | ('z' - c)) >>> 31) ^ 1) << 5)); //fold 'a' to 'z' to upper case
+			int token = ( isSeparator(c) ? 0 : 1 ); //determine whether the character is part of a token
+			if (token != inToken) { //if the character starts or ends a token
+				offsets[count++] = i; //record the boundary
+				inToken = token; //update the state
+			}
+		}
+		if (inToken == 1) { offsets[count++] = length; } //if the input ended inside a token, close it
+		return ( (bits & 0xFFFFFF80) == 0 ? count : -1 ); //return the offset count if the input was ASCII, else -1
+	}
+	/** Writes the token boundaries of the first length characters of source into offsets without folding, returning the number of offsets written. **/
+	public static int tokenize(char[] source,int length,int[] offsets) {
+		int count = 0; //the number of offsets written
+		int inToken = 0; //1 if the previous character was part of a token, else 0
+		for (int i = 0; i != length; i++) { //loop for each character
+			int token = ( isSeparator(source[i]) ? 0 : 1 ); //determine whether the character is part of a token
+			if (token != inToken) { //if the character starts or ends a token
+				offsets[count++] = i; //record the boundary
+				inToken = token; //update the state
+			}
+		}
+		if (inToken == 1) { offsets[count++] = length; } //if the input ended inside a token, close it
+		return count; //return the offset count
+	}
+	/** Returns whether the given character is a token separator: an underscore, a dash or a character matched by the regular expression \s. **/
+	public static boolean isSeparator(int c) {
+		return (c == ' ' || c == '_' || c == '-' || (c >= 9 && c <= 13)); //space, underscore, dash, tab, new line, vertical tab, form feed or carriage return
+	}
+}
\ No newline at end of file
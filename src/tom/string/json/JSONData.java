@@ -36,6 +36,8 @@ public class JSONData {
 	private String value;
 	///Counter for virtual key creation.
 	private long vkey = 0;
+	///The initial size of the table of the child objects of an object data.
+	static final int UNORDERED_LIST_SIZE = 20;
 	/** Constructs a new JSONData object. **/
 	public JSONData() {
 	}
@@ -125,7 +127,7 @@ public class JSONData {
 		//if the list is null
 		if (unorderedList == null) {
 			//initialize it
-			unorderedList = new HashTable<JSONData>(20);
+			unorderedList = new HashTable<JSONData>(UNORDERED_LIST_SIZE);
 		}
 		//get the name to be the key
 		String key = object.getName();
@@ -209,7 +211,7 @@ public class JSONData {
 			if (hasQuotes(value)) {
 				return JSONData.Type.STRING;
 			}
-			else if (value.matches("^\\d+$")) {
+			else if (value.matches("^-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?$")) {
 				return JSONData.Type.NUMBER;
 			}
 			else if (value.equals("true") || value.equals("false")) {
@@ -232,7 +234,7 @@ public class JSONData {
 	/** Returns the JSONData object as a string. **/
 	public String toString() {
 		//if the name is not null and is not a virtual key, set it
-		String name = (this.name != null && !this.name.matches("^!\\d+$") ? "\""+this.name+"\":" : "");
+		String name = (this.name != null && !isVirtualKey(this.name) ? "\""+this.name+"\":" : "");
 		String dataString;
 		//if the data is an object
 		if (this.dataType == Type.OBJECT) {
@@ -269,8 +271,55 @@ public class JSONData {
 		//return the string representation indented
 		return indent+this.toString();
 	}
-	/** Writes this data and all child data via recursion using the given BufferedWriter. **/
-	protected void write(java.io.BufferedWriter writer,JSONDocument.WriteOption writeOption) throws java.io.IOException {
+	/** Returns whether the given name is a virtual key: an exclamation mark followed by digits, created for unnamed children. Matches the regular expression ^!\d+$ without compiling it. **/
+	static boolean isVirtualKey(String name) {
+		if (name.length() < 2 || name.charAt(0) != '!') { return false; }
+		//for each character after the exclamation mark
+		for (int i = 1; i != name.length(); i++) {
+			//if it is not a digit, it is not a virtual key
+			if (name.charAt(i) < '0' || name.charAt(i) > '9') { return false; }
+		}
+		return true;
+	}
+	/** Returns whether the data has a type toString can represent, which is whether toString does not return null. **/
+	private boolean hasValidType() {
+		return (this.dataType != null && this.dataType != Type.ILEGAL);
+	}
+	/** Writes a value that is not an object or array, in the same form as toString or toStringWithIndent, directly to the given Writer. **/
+	private void writeValue(java.io.Writer writer,boolean isMultiLine) throws java.io.IOException {
+		//if the type is not valid, write the same as the string methods give
+		if (!hasValidType()) {
+			String dataString = ( isMultiLine ? this.toStringWithIndent() : this.toString() );
+			if (dataString != null) { writer.write(dataString); }
+			return;
+		}
+		//if each object is to be written with new lines
+		if (isMultiLine) {
+			//for each generation, write an indent
+			for (int i = getGenerations()-1; i > 0; i--) {
+				writer.write('	');
+			}
+		}
+		//if the name is not null and is not a virtual key, write it
+		if (this.name != null && !isVirtualKey(this.name)) {
+			writer.write('"');
+			writer.write(this.name);
+			writer.write("\":");
+		}
+		writer.write(' ');
+		//if the data is a string, write it in quotes
+		if (this.dataType == Type.STRING) {
+			writer.write('"');
+			writer.write(String.valueOf(value));
+			writer.write('"');
+		}
+		//else the data is a boolean, number or null
+		else {
+			writer.write(String.valueOf(value));
+		}
+	}
+	/** Writes this data and all child data via recursion using the given Writer. **/
+	protected void write(java.io.Writer writer,JSONDocument.WriteOption writeOption) throws java.io.IOException {
 		boolean isMultiLine = ( writeOption == JSONDocument.WriteOption.MULTI_LINE_OBJECTS );
 		//count parents to set an appropriate indent
 		String indent = "";
@@ -285,7 +334,11 @@ public class JSONData {
 			writer.write(indent);
 		}
 		//if the name is not null and is not a virtual key, append it
-		if (this.name != null && !this.name.matches("^!\\d+$")) { writer.write("\""+this.name+"\": "); }
+		if (this.name != null && !isVirtualKey(this.name)) {
+			writer.write('"');
+			writer.write(this.name);
+			writer.write("\": ");
+		}
 		//if the data is an object
 		if (this.dataType == Type.OBJECT) {
 			//open the object definition
@@ -304,7 +357,7 @@ public class JSONData {
 				//for each item
 				for (int i = 0; i != recoveredKeys.length; i++) {
 					//if there is a previous item and it also has data
-					if (i != 0 && previousData != null && previousData.toString() != null) {
+					if (i != 0 && previousData != null && previousData.hasValidType()) {
 						//separate the items with a comma for readability
 						writer.write(",");
 						//if each object is to be written with new lines
@@ -320,13 +373,9 @@ public class JSONData {
 						//invoke their write methods
 						object.write(writer,writeOption);
 					}
-					//else write them here using their toString methods
+					//else write them here in the form of their toString methods
 					else {
-						String dataString = ( isMultiLine ? object.toStringWithIndent() : object.toString());
-						//if there is data
-						if (dataString != null) {
-							writer.write(dataString);
-						}
+						object.writeValue(writer,isMultiLine);
 					}
 					previousData = object;
 				}
@@ -359,7 +408,7 @@ public class JSONData {
 				//for each element in the array
 				for (int i = 0; i != array.length; i++) {
 					//if there is a previous item and it also has data
-					if (i != 0 && previousData != null && previousData.toString() != null) {
+					if (i != 0 && previousData != null && previousData.hasValidType()) {
 						//separate the items with a comma for readability
 						writer.write(",");
 						//if each object is to be written with new lines
@@ -373,13 +422,9 @@ public class JSONData {
 						//write it
 						array[i].write(writer,writeOption);
 					}
-					//else use its toString method
+					//else write it in the form of its toString method
 					else {
-						String dataString = ( isMultiLine ? array[i].toStringWithIndent() : array[i].toString());
-						//if there is data
-						if (dataString != null) {
-							writer.write(dataString);
-						}
+						array[i].writeValue(writer,isMultiLine);
 					}
 					previousData = array[i];
 				}
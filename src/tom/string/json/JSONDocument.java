@@ -3,10 +3,18 @@ package tom.string.json;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import tom.data.LinkedList;
 
@@ -24,6 +32,8 @@ public class JSONDocument extends JSONData {
 		SINGLE_LINE_OBJECTS,
 		MULTI_LINE_OBJECTS
 	}
+	///The character set JSON files are read and written in, whatever the platform's default.
+	public static final Charset CHARSET = StandardCharsets.UTF_8;
 	///The file the XML document is of.
 	private File file;
 	/** Constructs a new JSONDocument. **/
@@ -40,6 +50,29 @@ public class JSONDocument extends JSONData {
 	public JSONDocument(String file) throws FileNotFoundException, IOException {
 		this(new File(file));
 	}
+	/**
+	*** Constructs a new JSONDocument for the given file, parsing it on the given number of threads.
+	*** The file must be newline delimited: each line holds complete top level values, so that it can be split at line boundaries.
+	*** The file is divided into byte ranges of about the same size, each range is moved forward to the start of the next line, and the ranges
+	*** are parsed at the same time and their values added to the document in file order, giving the same document as parsing on one thread.
+	*** UTF-8 encodes a line feed as the single byte 10 and never uses that byte within other characters, so the ranges split whole characters.
+	**/
+	public JSONDocument(File file,int threads) throws IOException {
+		this();
+		this.file = file;
+		//if there is more than one thread, parse in parallel, else parse as usual
+		if (threads > 1) { parse(threads); }
+		else { parse(); }
+	}
+	/** Constructs a new JSONDocument for the given newline delimited file, parsing it on the given number of threads. **/
+	public JSONDocument(String file,int threads) throws FileNotFoundException, IOException {
+		this(new File(file),threads);
+	}
+	/** Constructs a new JSONDocument for the JSON text read from the given Reader, which is left open. The document has no file. **/
+	public JSONDocument(Reader reader) throws IOException {
+		this();
+		parse(reader,this);
+	}
 	/** Returns the file the JSONDocument was constructed from. **/
 	public File getFile() {
 		return this.file;
@@ -48,13 +81,120 @@ public class JSONDocument extends JSONData {
 	private void parse() throws IOException {
 		//create a buffered reader for the file
 		BufferedReader reader;
-		reader = new BufferedReader(new FileReader(file));
+		reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),CHARSET));
+		//anticipate IO errors, ensuring the reader is closed
+		try {
+			parse(reader,this);
+		}
+		finally {
+			//close the reader
+			reader.close();
+		}
+	}
+	/** Parses the file on the given number of threads, in line aligned byte ranges, to create the JSON document objects. **/
+	private void parse(int threads) throws IOException {
+		//determine the start of each range, with the end of the file as the end of the last
+		long[] starts = new long[threads+1];
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file,"r");
+		//anticipate IO errors, ensuring the file is closed
+		try {
+			long length = randomAccessFile.length();
+			starts[threads] = length;
+			//for each range after the first
+			for (int i = 1; i != threads; i++) {
+				//move the even division of the file forward to the start of a line, and after the previous range start
+				starts[i] = Math.max(getLineStart(randomAccessFile,length * i / threads),starts[i-1]);
+			}
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		//create the array for the values of each range, and for any error parsing it
+		final JSONData[] roots = new JSONData[threads];
+		final Exception[] errors = new Exception[threads];
+		Thread[] workers = new Thread[threads];
+		//for each range
+		for (int i = 0; i != threads; i++) {
+			final int range = i;
+			final long start = starts[i];
+			final long end = starts[i+1];
+			roots[i] = new JSONData(JSONData.Type.ARRAY);
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					//anticipate IO and markup errors, keeping them for the calling thread
+					try {
+						//create a buffered reader for the range of the file
+						BufferedReader reader = new BufferedReader(new InputStreamReader(new RangeInputStream(file,start,end),CHARSET));
+						//anticipate IO errors, ensuring the reader is closed
+						try {
+							parse(reader,roots[range]);
+						}
+						finally {
+							reader.close();
+						}
+					}
+					catch(IOException e) { errors[range] = e; }
+					catch(RuntimeException e) { errors[range] = e; }
+				}
+			},"json-parse-"+i);
+			workers[i].start();
+		}
+		//wait for every range to be parsed
+		boolean isInterrupted = false;
+		for (int i = 0; i != threads; i++) {
+			//anticipate interruption
+			try {
+				workers[i].join();
+			}
+			catch(InterruptedException e) {
+				//keep waiting for the same worker, and restore the interrupt afterwards
+				isInterrupted = true;
+				i--;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+		//for each range
+		for (int i = 0; i != threads; i++) {
+			//if it failed, throw its error
+			if (errors[i] instanceof IOException) { throw (IOException)errors[i]; }
+			if (errors[i] != null) { throw (RuntimeException)errors[i]; }
+			//add its values to the document, in file order
+			if (roots[i].getChildCount() != 0) {
+				JSONData[] array = roots[i].getArray();
+				for (int ii = 0; ii != array.length; ii++) {
+					addChild(array[ii]);
+				}
+			}
+		}
+	}
+	/** Returns the offset of the start of the first line beginning at or after the given offset of the file, or the length of the file if there is none. **/
+	private static long getLineStart(RandomAccessFile file,long offset) throws IOException {
+		//the start of the file is the start of a line
+		if (offset == 0) { return 0; }
+		//read from the byte before the offset, so that a line starting exactly at the offset is found
+		file.seek(offset-1);
+		byte[] buffer = new byte[8192];
+		int read;
+		//while there are bytes to read
+		while ((read = file.read(buffer)) != -1) {
+			//for each byte read
+			for (int i = 0; i != read; i++) {
+				//if it is a line feed, the next line starts after it
+				if (buffer[i] == '\n') { return file.getFilePointer() - read + i + 1; }
+			}
+		}
+		return file.length();
+	}
+	/** Parses the JSON text from the given reader, adding the top level values to the given root. **/
+	private void parse(Reader reader,JSONData root) throws IOException {
 		int ascii = 0; //stores the read code
 		char c; //stores the character read
 		char prevDelimiter = '\0'; //stores the previous delimiter read
 		String name = null; //object or field name
 		String value = null; //value of a field
-		JSONData parent = this; //the current parent
+		JSONData parent = root; //the current parent
 		//while there are characters to read
 		while ((ascii = reader.read()) != -1) {
 			ascii = consumeWhitespaces(ascii,reader);
@@ -124,7 +264,7 @@ public class JSONDocument extends JSONData {
 				name = null;
 				value = null;
 				//if the parent is null, there is a problem with the markup
-				if (parent == null) { parent = this; } //proceed anyway
+				if (parent == null) { parent = root; } //proceed anyway
 				//add this new field as a child
 				parent.addChild(object);
 				prevDelimiter = c;
@@ -142,7 +282,7 @@ public class JSONDocument extends JSONData {
 					//reset the name because it has now been used
 					name = null;
 					//if the parent is null, there is a problem with the markup
-					if (parent == null) { parent = this; } //proceed anyway
+					if (parent == null) { parent = root; } //proceed anyway
 					//add this new object as a child
 					parent.addChild(object);
 					//set the new parent
@@ -170,7 +310,7 @@ public class JSONDocument extends JSONData {
 					}
 					//returning to the previous level
 					//if the parent is null, there is a problem with the markup
-					if (parent == null) { parent = this; } //proceed anyway
+					if (parent == null) { parent = root; } //proceed anyway
 					else { parent = parent.getParent(); }
 				}
 				prevDelimiter = c;
@@ -188,7 +328,7 @@ public class JSONDocument extends JSONData {
 					//reset the name because it has now been used
 					name = null;
 					//if the parent is null, there is a problem with the markup
-					if (parent == null) { parent = this; } //proceed anyway
+					if (parent == null) { parent = root; } //proceed anyway
 					//add this new object as a child
 					parent.addChild(object);
 					//set the new parent
@@ -217,7 +357,7 @@ public class JSONDocument extends JSONData {
 					}
 					//returning to the previous level
 					//if the parent is null, there is a problem with the markup
-					if (parent == null) { parent = this; } //proceed anyway
+					if (parent == null) { parent = root; } //proceed anyway
 					else { parent = parent.getParent(); }
 				}
 				prevDelimiter = c;
@@ -227,11 +367,9 @@ public class JSONDocument extends JSONData {
 				prevDelimiter = '\0';
 			}
 		}
-		//close the reader
-		reader.close();
 	}
 	/** Returns the next non-whitespace character in the buffer. **/
-	private int consumeWhitespaces(int ascii,BufferedReader reader) throws IOException {
+	private int consumeWhitespaces(int ascii,Reader reader) throws IOException {
 		do {
 			if (!isWhitespace(ascii)) { return ascii; }
 		}
@@ -288,7 +426,18 @@ public class JSONDocument extends JSONData {
 	/** Writes the JSON document to the given file. **/
 	public void writeToFile(File file,JSONDocument.WriteOption writeOption) throws IOException {
 		//create a BufferedWriter
-		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),CHARSET));
+		//anticipate IO errors, ensuring the writer is closed
+		try {
+			write(writer,writeOption);
+		}
+		finally {
+			//close the writer
+			writer.close();
+		}
+	}
+	/** Writes the JSON document to the given Writer, which is left open. The Writer should be buffered, as the document is written in many small pieces. **/
+	public void write(Writer writer,JSONDocument.WriteOption writeOption) throws IOException {
 		//if the document contains objects
 		if (super.getChildCount() != 0) {
 			//get the indexes of those objects
@@ -316,11 +465,43 @@ public class JSONDocument extends JSONData {
 		}
 		//finish with a new line
 		writer.write("\r\n");
-		//close the writer
-		writer.close();
 	}
 	/** Override to prevent JSONDocument being any other data type **/
 	public void setDataType(JSONData.Type dataType) {
 		super.setDataType(JSONData.Type.ARRAY);
 	}
+	/**
+	*** RangeInputStream class
+	*** Reads a range of bytes of a file.
+	**/
+	private static class RangeInputStream extends InputStream {
+		///The stream of the file, positioned within the range.
+		private final FileInputStream input;
+		///The number of bytes left in the range.
+		private long remaining;
+		/** Opens the given file to read from the start offset (inclusive) to the end offset (exclusive). **/
+		public RangeInputStream(File file,long start,long end) throws IOException {
+			input = new FileInputStream(file);
+			input.getChannel().position(start);
+			remaining = end - start;
+		}
+		/** Reads the next byte, or returns -1 at the end of the range. **/
+		public int read() throws IOException {
+			if (remaining == 0) { return -1; }
+			int b = input.read();
+			if (b != -1) { remaining--; }
+			return b;
+		}
+		/** Reads up to the given number of bytes into the array, without passing the end of the range. **/
+		public int read(byte[] buffer,int offset,int length) throws IOException {
+			if (remaining == 0) { return -1; }
+			int read = input.read(buffer,offset,(int)Math.min(length,remaining));
+			if (read != -1) { remaining-= read; }
+			return read;
+		}
+		/** Closes the file. **/
+		public void close() throws IOException {
+			input.close();
+		}
+	}
 }
\ No newline at end of file
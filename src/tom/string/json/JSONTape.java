@@ -0,0 +1,382 @@
+package tom.string.json;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+***	JSONTape class
+***	Stores a parsed JSON document as a pool of nodes held in parallel int arrays, rather than as a tree of JSONData objects.
+***	Each node has a type, a name number, the offset and length of its value in a shared character buffer, and the numbers of its parent,
+***	first child, last child and next sibling, so parsing allocates no object per value; the arrays and buffer grow by doubling.
+***	Names are stored once each and numbered. Node 0 is the document, an array of the top level values.
+***	Values are kept as they appear in the text, as JSONDocument keeps them: strings without their quotes, with escape sequences left as written.
+***	The JSONData API is available through JSONTapeData views of the nodes, which only create a String when a value or name is requested.
+***	The tape follows the JSON grammar, so for malformed text it may differ from JSONDocument, which is more lenient.
+***	The total length of the values is limited to the size of an array. A tape is not modified once parsed, so it can be shared between threads.
+**/
+
+public class JSONTape {
+	///The number of the document node.
+	public static final int ROOT = 0;
+	///The number of no node, or of no name.
+	public static final int NONE = -1;
+	///The data types, by ordinal.
+	private static final JSONData.Type[] types = JSONData.Type.values();
+	///The type ordinal of each node.
+	private byte[] nodeTypes;
+	///The name number of each node, or NONE.
+	private int[] nodeNames;
+	///The offset of the value of each node in the value buffer.
+	private int[] valueStarts;
+	///The length of the value of each node, or -1 for objects and arrays.
+	private int[] valueLengths;
+	///The parent of each node, or NONE for the document.
+	private int[] parents;
+	///The first child of each node, or NONE.
+	private int[] firstChildren;
+	///The last child of each node, or NONE.
+	private int[] lastChildren;
+	///The next sibling of each node, or NONE.
+	private int[] nextSiblings;
+	///The number of children of each node.
+	private int[] childCounts;
+	///The number of nodes.
+	private int nodeCount = 0;
+	///The characters of the values.
+	private char[] values;
+	///The number of characters of the values.
+	private int valueLength = 0;
+	///The names, by number.
+	private String[] names = new String[16];
+	///The number of names.
+	private int nameCount = 0;
+	///The open addressing table of name numbers plus one by name hash, 0 marking an empty slot.
+	private int[] nameTable = new int[64];
+	///The characters read and not yet parsed.
+	private char[] buffer = new char[65536];
+	///The position of the next character in the read buffer.
+	private int bufferPosition = 0;
+	///The number of characters in the read buffer.
+	private int bufferLength = 0;
+	///The reader being parsed.
+	private Reader reader;
+	/** Constructs a new JSONTape for the given file. **/
+	public JSONTape(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),JSONDocument.CHARSET));
+		//anticipate IO errors, ensuring the reader is closed
+		try {
+			//the text has no more characters than the file has bytes, so size the buffers for it to avoid growing them
+			parse(reader,(int)Math.min(file.length(),Integer.MAX_VALUE-8));
+		}
+		finally {
+			//close the reader
+			reader.close();
+		}
+	}
+	/** Constructs a new JSONTape for the given file. **/
+	public JSONTape(String file) throws IOException {
+		this(new File(file));
+	}
+	/** Constructs a new JSONTape for the JSON text read from the given Reader, which is left open. **/
+	public JSONTape(Reader reader) throws IOException {
+		parse(reader,0);
+	}
+	/** Parses the text of the given reader, of about the given length in characters if known, into the node arrays. **/
+	private void parse(Reader reader,int textLength) throws IOException {
+		this.reader = reader;
+		//estimate a node for every 32 characters, and reserve the full length for the values
+		int capacity = Math.max(1024,textLength/32);
+		values = new char[Math.max(1024,textLength)];
+		nodeTypes = new byte[capacity];
+		nodeNames = new int[capacity];
+		valueStarts = new int[capacity];
+		valueLengths = new int[capacity];
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		lastChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		childCounts = new int[capacity];
+		//add the document node
+		int container = addNode(JSONData.Type.ARRAY,NONE,NONE,0,-1);
+		int name = NONE;
+		int c;
+		//while there are characters to read
+		while ((c = readSkippingWhitespace()) != -1) {
+			//if it starts an object or array, add it and make it the container of the following values
+			if (c == '{' || c == '[') {
+				container = addNode(( c == '{' ? JSONData.Type.OBJECT : JSONData.Type.ARRAY ),name,container,0,-1);
+				name = NONE;
+			}
+			//else if it ends an object or array, return to the container of it
+			else if (c == '}' || c == ']') {
+				if (container != ROOT) {
+					container = parents[container];
+				}
+				name = NONE;
+			}
+			//else if it is a string, it is a name if a colon follows it, else a value
+			else if (c == '"') {
+				int start = valueLength;
+				readString();
+				int length = valueLength - start;
+				c = readSkippingWhitespace();
+				if (c == ':') {
+					name = addName(start,length);
+					//the name is not a value, so remove it from the buffer
+					valueLength = start;
+				}
+				else {
+					addNode(JSONData.Type.STRING,name,container,start,length);
+					name = NONE;
+					unread(c);
+				}
+			}
+			//else if it is not a separator, it is a number, boolean or null value, which is typed as JSONDocument types it
+			else if (c != ',' && c != ':') {
+				int start = valueLength;
+				//read to the end of the value
+				while (c != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+					appendValue((char)c);
+					c = read();
+				}
+				unread(c);
+				String token = new String(values,start,valueLength-start);
+				addNode(JSONData.getDataType(token),name,container,start,valueLength-start);
+				name = NONE;
+			}
+		}
+		this.reader = null;
+		this.buffer = null;
+	}
+	/** Reads the characters of a string after its opening quote, up to its closing quote, into the value buffer, keeping escape sequences as they are. **/
+	private void readString() throws IOException {
+		int c;
+		//while there are characters to read
+		while ((c = read()) != -1 && c != '"') {
+			appendValue((char)c);
+			//if it is a backslash, keep the escaped character, which may be a quote
+			if (c == '\\' && (c = read()) != -1) {
+				appendValue((char)c);
+			}
+		}
+	}
+	/** Returns the next character, or -1 at the end of the text. **/
+	private int read() throws IOException {
+		//if the buffer has been read, fill it
+		if (bufferPosition == bufferLength) {
+			bufferLength = reader.read(buffer,0,buffer.length);
+			bufferPosition = 0;
+			if (bufferLength <= 0) {
+				bufferLength = 0;
+				return -1;
+			}
+		}
+		return buffer[bufferPosition++];
+	}
+	/** Returns the next character that is not whitespace, or -1 at the end of the text. **/
+	private int readSkippingWhitespace() throws IOException {
+		int c;
+		while ((c = read()) != -1 && isWhitespace(c)) {
+		}
+		return c;
+	}
+	/** Returns the given character, which was the last read, to the buffer to be read again. **/
+	private void unread(int c) {
+		if (c != -1) {
+			bufferPosition--;
+		}
+	}
+	/** Returns whether the given character is JSON whitespace. **/
+	private static boolean isWhitespace(int c) {
+		return (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+	}
+	/** Appends the given character to the value buffer, growing it if needed. **/
+	private void appendValue(char c) {
+		if (valueLength == values.length) {
+			values = Arrays.copyOf(values,getGrownLength(values.length));
+		}
+		values[valueLength++] = c;
+	}
+	/** Returns the length to grow a value buffer of the given length to. **/
+	private static int getGrownLength(int length) {
+		return ( length > Integer.MAX_VALUE/2 ? Integer.MAX_VALUE-8 : length*2 );
+	}
+	/** Adds a node of the given type, name, parent and value as the last child of its parent, returning its number. **/
+	private int addNode(JSONData.Type type,int name,int parent,int valueStart,int length) {
+		//grow the arrays if needed
+		if (nodeCount == nodeTypes.length) {
+			int capacity = nodeCount*2;
+			nodeTypes = Arrays.copyOf(nodeTypes,capacity);
+			nodeNames = Arrays.copyOf(nodeNames,capacity);
+			valueStarts = Arrays.copyOf(valueStarts,capacity);
+			valueLengths = Arrays.copyOf(valueLengths,capacity);
+			parents = Arrays.copyOf(parents,capacity);
+			firstChildren = Arrays.copyOf(firstChildren,capacity);
+			lastChildren = Arrays.copyOf(lastChildren,capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings,capacity);
+			childCounts = Arrays.copyOf(childCounts,capacity);
+		}
+		int node = nodeCount++;
+		nodeTypes[node] = (byte)type.ordinal();
+		nodeNames[node] = name;
+		valueStarts[node] = valueStart;
+		valueLengths[node] = length;
+		parents[node] = parent;
+		firstChildren[node] = NONE;
+		lastChildren[node] = NONE;
+		nextSiblings[node] = NONE;
+		childCounts[node] = 0;
+		//link it after the last child of its parent
+		if (parent != NONE) {
+			if (lastChildren[parent] == NONE) {
+				firstChildren[parent] = node;
+			}
+			else {
+				nextSiblings[lastChildren[parent]] = node;
+			}
+			lastChildren[parent] = node;
+			childCounts[parent]++;
+		}
+		return node;
+	}
+	/** Returns the number of the name in the values at the given offset and length, adding it if it is new. **/
+	private int addName(int start,int length) {
+		//hash the characters as String.hashCode() does, so names can be found by their String hash
+		int hash = 0;
+		for (int i = 0; i != length; i++) {
+			hash = 31*hash + values[start+i];
+		}
+		int mask = nameTable.length - 1;
+		int slot = spread(hash) & mask;
+		//while the slot is taken, return its name if it is the same, else try the next slot
+		while (nameTable[slot] != 0) {
+			if (nameEquals(names[nameTable[slot]-1],start,length)) {
+				return nameTable[slot]-1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		//add the name
+		if (nameCount == names.length) {
+			names = Arrays.copyOf(names,nameCount*2);
+		}
+		names[nameCount] = new String(values,start,length);
+		nameTable[slot] = ++nameCount;
+		//if the table is half full, double it
+		if (nameCount*2 > nameTable.length) {
+			int[] table = new int[nameTable.length*2];
+			for (int i = 0; i != nameCount; i++) {
+				int newSlot = spread(names[i].hashCode()) & (table.length - 1);
+				while (table[newSlot] != 0) {
+					newSlot = (newSlot + 1) & (table.length - 1);
+				}
+				table[newSlot] = i+1;
+			}
+			nameTable = table;
+		}
+		return nameCount-1;
+	}
+	/** Returns whether the given name has the characters of the values at the given offset and length. **/
+	private boolean nameEquals(String name,int start,int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i != length; i++) {
+			if (name.charAt(i) != values[start+i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/** Returns the number of the given name, or NONE if no node has it. **/
+	public int getNameNumber(String name) {
+		int mask = nameTable.length - 1;
+		int slot = spread(name.hashCode()) & mask;
+		//while the slot is taken, return its name if it is the same, else try the next slot
+		while (nameTable[slot] != 0) {
+			if (names[nameTable[slot]-1].equals(name)) {
+				return nameTable[slot]-1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NONE;
+	}
+	/** Spreads the bits of the given hash so that the low bits used for the slot depend on all of them. **/
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	/** Returns the number of nodes, including the document. **/
+	public int getNodeCount() {
+		return nodeCount;
+	}
+	/** Returns the data type of the given node. **/
+	public JSONData.Type getType(int node) {
+		return types[nodeTypes[node]];
+	}
+	/** Returns the name of the given node, or null if it has none. **/
+	public String getName(int node) {
+		return ( nodeNames[node] == NONE ? null : names[nodeNames[node]] );
+	}
+	/** Returns the name number of the given node, or NONE if it has none. **/
+	public int getNameNumberOf(int node) {
+		return nodeNames[node];
+	}
+	/** Returns the value of the given node as a new String, or null for objects and arrays. **/
+	public String getValue(int node) {
+		return ( valueLengths[node] < 0 ? null : new String(values,valueStarts[node],valueLengths[node]) );
+	}
+	/** Writes the value of the given node to the given Writer without creating a String, writing "null" for objects and arrays as String.valueOf does. **/
+	public void writeValue(int node,Writer writer) throws IOException {
+		if (valueLengths[node] < 0) {
+			writer.write("null");
+		}
+		else {
+			writer.write(values,valueStarts[node],valueLengths[node]);
+		}
+	}
+	/** Returns the parent of the given node, or NONE for the document. **/
+	public int getParent(int node) {
+		return parents[node];
+	}
+	/** Returns the first child of the given node, or NONE. **/
+	public int getFirstChild(int node) {
+		return firstChildren[node];
+	}
+	/** Returns the next sibling of the given node, or NONE. **/
+	public int getNextSibling(int node) {
+		return nextSiblings[node];
+	}
+	/** Returns the number of children of the given node. **/
+	public int getChildCount(int node) {
+		return childCounts[node];
+	}
+	/** Returns the last child of the given node with the given name, as the value of a repeated name replaces the earlier ones, or NONE. **/
+	public int findChild(int node,String name) {
+		int number = getNameNumber(name);
+		//if no node has the name, there is no such child
+		if (number == NONE) {
+			return NONE;
+		}
+		int found = NONE;
+		//for each child, if it has the name, keep it
+		for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			if (nodeNames[child] == number) {
+				found = child;
+			}
+		}
+		return found;
+	}
+	/** Returns a view of the document node. **/
+	public JSONTapeData getRoot() {
+		return new JSONTapeData(this,ROOT);
+	}
+	/** Returns the number of characters held for the values. **/
+	public int getValueLength() {
+		return valueLength;
+	}
+}
\ No newline at end of file
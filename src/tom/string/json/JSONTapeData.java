@@ -0,0 +1,381 @@
+package tom.string.json;
+
+import java.util.Arrays;
+import tom.data.HashKey;
+import tom.data.HashTable;
+
+/**
+***	JSONTapeData class
+***	A read only view of a node of a JSONTape through the JSONData API, so code written for JSONDocument can read a tape unchanged.
+***	A view holds only the tape and the node number; child views are created as they are requested, and values become Strings only when requested.
+***	Methods that would modify the data throw an UnsupportedOperationException. A view has no document, so getDocument returns null.
+***	Getting the children of an array in order by index is done in constant time per child by remembering the last child found.
+***	Writing reads the tape directly, putting the children of an object in the order JSONData keeps them in its table of children,
+***	with the value of a repeated name in the place of the first, so the output is the same as writing a copy of the data.
+**/
+
+public class JSONTapeData extends JSONData {
+	///The tape holding the data.
+	private final JSONTape tape;
+	///The number of the node of this data.
+	private final int node;
+	///The index of the last child found by index, or -1.
+	private int cursorIndex = -1;
+	///The node of the last child found by index.
+	private int cursorNode = JSONTape.NONE;
+	///The modulo JSONData hashes the names of the children of an object with, while the table has its initial size.
+	private static final int UNORDERED_LIST_MOD = JSONData.UNORDERED_LIST_SIZE-1;
+	///The most children an object can have before the table JSONData keeps them in expands, at its load factor of 75%.
+	private static final int UNORDERED_LIST_ITEMS = JSONData.UNORDERED_LIST_SIZE*3/4-1;
+	/** Constructs a new JSONTapeData view of the given node of the given tape. **/
+	public JSONTapeData(JSONTape tape,int node) {
+		this.tape = tape;
+		this.node = node;
+	}
+	/** Returns the tape holding the data. **/
+	public JSONTape getTape() {
+		return tape;
+	}
+	/** Returns the number of the node of this data. **/
+	public int getNode() {
+		return node;
+	}
+	/** Returns the value as a String. **/
+	public String getValue() {
+		return tape.getValue(node);
+	}
+	/** Not supported, as a tape is read only. **/
+	public void setValue(String value) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Not supported, as a tape is read only. **/
+	public void setDataType(Type dataType) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Returns the data type. **/
+	public Type getDataType() {
+		return tape.getType(node);
+	}
+	/** Returns the object name. **/
+	public String getName() {
+		return tape.getName(node);
+	}
+	/** Not supported, as a tape is read only. **/
+	public void setName(String name) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Returns a view of the parent object, or null for the document node. **/
+	public JSONData getParent() {
+		int parent = tape.getParent(node);
+		return ( parent == JSONTape.NONE ? null : new JSONTapeData(tape,parent) );
+	}
+	/** Not supported, as a tape is read only. **/
+	public void setParent(JSONData parent) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Returns null, as a tape is not a JSONDocument. **/
+	public JSONDocument getDocument() {
+		return null;
+	}
+	/** Not supported, as a tape is read only. **/
+	public void addChild(JSONData object) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Returns the number of children the object has. As in JSONData, a repeated name of an object is counted once. **/
+	public int getChildCount() {
+		Type type = getDataType();
+		if (type == Type.ARRAY) {
+			return tape.getChildCount(node);
+		}
+		else if (type == Type.OBJECT) {
+			//if the object has unnamed children, their virtual keys may be the same as names, so count the keys of a table
+			if (hasUnnamedChild(node)) {
+				return getKeyOrder(node).length;
+			}
+			int count = 0;
+			//for each child, count it unless a later child replaces it
+			for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+				if (!isReplaced(child)) {
+					count++;
+				}
+			}
+			return count;
+		}
+		return 0;
+	}
+	/** Returns whether the given child of an object is replaced by a later child with the same name. **/
+	private boolean isReplaced(int child) {
+		int name = tape.getNameNumberOf(child);
+		//for each later child, if it has the same name, it replaces the child
+		for (int sibling = tape.getNextSibling(child); sibling != JSONTape.NONE; sibling = tape.getNextSibling(sibling)) {
+			if (tape.getNameNumberOf(sibling) == name) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/** Not supported, as a tape is read only. **/
+	public void removeChild(JSONData object) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Not supported, as a tape is read only. **/
+	public void removeChild(int i) {
+		throw new UnsupportedOperationException("A JSONTape is read only");
+	}
+	/** Returns a view of the child with the given name, the last if the name is repeated, or null if there is none. **/
+	public JSONData getData(String name) {
+		int child = tape.findChild(node,name);
+		return ( child == JSONTape.NONE ? null : new JSONTapeData(tape,child) );
+	}
+	/** Returns a view of the child at the given index. **/
+	public JSONData getData(int index) {
+		if (index < 0 || index >= tape.getChildCount(node)) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+tape.getChildCount(node));
+		}
+		//if the index is before the last found, start again from the first child
+		if (cursorIndex == -1 || index < cursorIndex) {
+			cursorIndex = 0;
+			cursorNode = tape.getFirstChild(node);
+		}
+		//move along the siblings to the index
+		while (cursorIndex != index) {
+			cursorNode = tape.getNextSibling(cursorNode);
+			cursorIndex++;
+		}
+		return new JSONTapeData(tape,cursorNode);
+	}
+	/** Returns a new HashTable of views of the children of an object, keyed by name as JSONData keys them, or null if it has none. **/
+	public HashTable<JSONData> getUnorderedList() {
+		if (getDataType() != Type.OBJECT || tape.getChildCount(node) == 0) {
+			return null;
+		}
+		HashTable<JSONData> table = new HashTable<JSONData>(JSONData.UNORDERED_LIST_SIZE);
+		long vkey = 0;
+		//for each child, add it by its name, or a virtual key if it has none
+		for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+			String key = tape.getName(child);
+			if (key == null) {
+				key = "!"+vkey;
+				vkey++;
+			}
+			table.add(key,new JSONTapeData(tape,child));
+		}
+		return table;
+	}
+	/** Returns an array of views of the children, in order. **/
+	public JSONData[] getArray() {
+		JSONData[] array = new JSONData[tape.getChildCount(node)];
+		int i = 0;
+		//for each child, add a view of it
+		for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+			array[i++] = new JSONTapeData(tape,child);
+		}
+		return array;
+	}
+	/** Does nothing, as the children are not held in a list. **/
+	public void setMaintainArray(boolean b) {
+	}
+	/** Returns false, as the children are not held in a list. **/
+	public boolean isMaintainArray() {
+		return false;
+	}
+	/** Returns the data as a string, in the same form as JSONData. **/
+	public String toString() {
+		return toJSONData(false).toString();
+	}
+	/** Returns the data as a string with tabulation, in the same form as JSONData. **/
+	public String toStringWithIndent() {
+		String indent = "";
+		//for each generation below the document, append an indent
+		for (int parent = tape.getParent(node); parent != JSONTape.NONE && tape.getParent(parent) != JSONTape.NONE; parent = tape.getParent(parent)) {
+			indent+= "	";
+		}
+		return indent+this.toString();
+	}
+	/** Writes this data and all child data, in the same form as JSONData, directly from the tape. **/
+	protected void write(java.io.Writer writer,JSONDocument.WriteOption writeOption) throws java.io.IOException {
+		int generations = 0;
+		//count the parents, so the data is indented as JSONData indents it
+		for (int parent = tape.getParent(node); parent != JSONTape.NONE; parent = tape.getParent(parent)) {
+			generations++;
+		}
+		write(writer,node,generations,( writeOption == JSONDocument.WriteOption.MULTI_LINE_OBJECTS ));
+	}
+	/** Writes the given node, which has the given number of parents, and all its children in the same form as JSONData.write. **/
+	private void write(java.io.Writer writer,int node,int generations,boolean isMultiLine) throws java.io.IOException {
+		//if each object is to be written with new lines, write the indent
+		if (isMultiLine) {
+			writeIndent(writer,generations);
+		}
+		//if the name is not null and is not a virtual key, write it
+		String name = tape.getName(node);
+		if (name != null && !JSONData.isVirtualKey(name)) {
+			writer.write('"');
+			writer.write(name);
+			writer.write("\": ");
+		}
+		Type type = tape.getType(node);
+		//if the data is an object
+		if (type == Type.OBJECT) {
+			writer.write("{");
+			//if the object has children, write them in the order of the keys of the JSONData table
+			if (tape.getChildCount(node) != 0) {
+				if (isMultiLine) {
+					writer.write("\r\n");
+				}
+				int[] children = getKeyOrder(node);
+				int previous = JSONTape.NONE;
+				for (int i = 0; i != children.length; i++) {
+					//skip the empty slots of the table
+					if (children[i] != JSONTape.NONE) {
+						writeChild(writer,children[i],previous,generations,isMultiLine);
+						previous = children[i];
+					}
+				}
+				if (isMultiLine) {
+					writer.write("\r\n");
+				}
+			}
+			else { writer.write(" "); }
+			if (isMultiLine) {
+				writeIndent(writer,generations);
+			}
+			writer.write("}");
+		}
+		//else if the data is an array
+		else if (type == Type.ARRAY) {
+			writer.write("[");
+			//if the array has children, write them in order
+			if (tape.getChildCount(node) != 0) {
+				if (isMultiLine) {
+					writer.write("\r\n");
+				}
+				int previous = JSONTape.NONE;
+				for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+					writeChild(writer,child,previous,generations,isMultiLine);
+					previous = child;
+				}
+				if (isMultiLine) {
+					writer.write("\r\n");
+				}
+			}
+			if (isMultiLine) {
+				writeIndent(writer,generations);
+			}
+			writer.write("]");
+		}
+	}
+	/** Writes the given child of a node with the given number of parents, after the given previous child or NONE, in the same form as JSONData.write. **/
+	private void writeChild(java.io.Writer writer,int child,int previous,int generations,boolean isMultiLine) throws java.io.IOException {
+		//if there is a previous child and it also has data, separate them with a comma
+		if (previous != JSONTape.NONE && tape.getType(previous) != Type.ILEGAL) {
+			writer.write(",");
+			if (isMultiLine) {
+				writer.write("\r\n");
+			}
+		}
+		Type type = tape.getType(child);
+		//if it is an object or array, write it and its children
+		if (type == Type.OBJECT || type == Type.ARRAY) {
+			write(writer,child,generations+1,isMultiLine);
+		}
+		//else if it is illegal, write what toStringWithIndent gives it, which is the indent and null, or nothing in a single line
+		else if (type == Type.ILEGAL) {
+			if (isMultiLine) {
+				writeIndent(writer,generations+1);
+				writer.write("null");
+			}
+		}
+		//else write it in the form of its toString method
+		else {
+			if (isMultiLine) {
+				writeIndent(writer,generations+1);
+			}
+			String name = tape.getName(child);
+			if (name != null && !JSONData.isVirtualKey(name)) {
+				writer.write('"');
+				writer.write(name);
+				writer.write("\":");
+			}
+			writer.write(' ');
+			//if the data is a string, write it in quotes
+			if (type == Type.STRING) {
+				writer.write('"');
+				tape.writeValue(child,writer);
+				writer.write('"');
+			}
+			else {
+				tape.writeValue(child,writer);
+			}
+		}
+	}
+	/** Writes the indent JSONData gives data with the given number of parents. **/
+	private static void writeIndent(java.io.Writer writer,int generations) throws java.io.IOException {
+		for (int i = generations-1; i > 0; i--) {
+			writer.write('	');
+		}
+	}
+	/**
+	*** Returns the children of the given object in the order of the keys of the table JSONData would keep them in, with NONE for empty slots.
+	*** The child kept for a repeated name is the last, in the place of the first. While the object fits the initial table, the slots are
+	*** found as the table finds them, by the hash of each name and the next free slot; otherwise the children are added to such a table.
+	**/
+	private int[] getKeyOrder(int node) {
+		//if the table would expand, or the object has unnamed children, which take virtual keys, add them to a table for its keys
+		if (tape.getChildCount(node) > UNORDERED_LIST_ITEMS || hasUnnamedChild(node)) {
+			HashTable<Integer> table = new HashTable<Integer>(JSONData.UNORDERED_LIST_SIZE);
+			long vkey = 0;
+			for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+				String key = tape.getName(child);
+				if (key == null) {
+					key = "!"+vkey;
+					vkey++;
+				}
+				table.add(key,Integer.valueOf(child));
+			}
+			String[] keys = table.getKeys();
+			int[] children = new int[keys.length];
+			for (int i = 0; i != keys.length; i++) {
+				children[i] = table.get(keys[i]).intValue();
+			}
+			return children;
+		}
+		int[] slots = new int[JSONData.UNORDERED_LIST_SIZE];
+		Arrays.fill(slots,JSONTape.NONE);
+		//for each child, probe from the slot of its name to a free slot or the slot of an earlier child with the same name
+		for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+			int slot = HashKey.hash(tape.getName(child),UNORDERED_LIST_MOD);
+			while (slots[slot] != JSONTape.NONE && tape.getNameNumberOf(slots[slot]) != tape.getNameNumberOf(child)) {
+				slot = (slot + 1) % slots.length;
+			}
+			slots[slot] = child;
+		}
+		return slots;
+	}
+	/** Returns whether the given node has a child without a name. **/
+	private boolean hasUnnamedChild(int node) {
+		for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+			if (tape.getNameNumberOf(child) == JSONTape.NONE) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/** Returns a copy of this data as JSONData, with copies of all its children if requested. **/
+	public JSONData toJSONData(boolean isDeep) {
+		return copy(node,isDeep);
+	}
+	/** Returns a copy of the given node as JSONData, with copies of all its children if requested. **/
+	private JSONData copy(int node,boolean isDeep) {
+		JSONData data = new JSONData(tape.getType(node));
+		data.setName(tape.getName(node));
+		data.setValue(tape.getValue(node));
+		//if requested, copy each child
+		if (isDeep) {
+			for (int child = tape.getFirstChild(node); child != JSONTape.NONE; child = tape.getNextSibling(child)) {
+				data.addChild(copy(child,true));
+			}
+		}
+		return data;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package tom.string.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+***	JSONText class
+***	An object or array held as the text it is written as, rather than as a tree of child JSONData objects, for values that are only written.
+***	The text is rendered once from a JSONData with the single line write option, and is written as it is in place of the value, so a JSONText
+***	takes a single String where the tree takes an object and a table per value. It has no children, and as the text is fixed, it is written
+***	the same whatever the write option; it is meant for the elements of arrays in single line documents, whose names are not written.
+**/
+
+public class JSONText extends JSONData {
+	///The text the value is written as.
+	private final String text;
+	/** Constructs a new JSONText holding the given object or array as the text it is written as on a single line. **/
+	public JSONText(JSONData data) {
+		super(data.getDataType());
+		StringWriter writer = new StringWriter();
+		//anticipate IO errors, which a StringWriter never throws
+		try {
+			data.write(writer,JSONDocument.WriteOption.SINGLE_LINE_OBJECTS);
+		}
+		catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		this.text = writer.toString();
+	}
+	/** Returns the text the value is written as. **/
+	public String getText() {
+		return text;
+	}
+	/** Writes the text of the value using the given Writer. **/
+	protected void write(java.io.Writer writer,JSONDocument.WriteOption writeOption) throws java.io.IOException {
+		writer.write(text);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+@echo off
+title Startup benchmark
+cd bin
+rem time to first match of 5 fresh JVMs each: without an archive, with the archive made by train-startup.bat, and with the archive and only C1
+set ARCHIVE=
+if exist sortable.jsa set ARCHIVE=-XX:SharedArchiveFile=sortable.jsa
+if exist sortable.aot set ARCHIVE=-XX:AOTCache=sortable.aot
+echo default:
+for /l %%i in (1,1,5) do java -cp sortable.jar SortableStartupBenchmark listings.txt products.txt %*
+echo archive:
+for /l %%i in (1,1,5) do java %ARCHIVE% -cp sortable.jar SortableStartupBenchmark listings.txt products.txt %*
+echo archive and C1 only:
+for /l %%i in (1,1,5) do java %ARCHIVE% -XX:TieredStopAtLevel=1 -cp sortable.jar SortableStartupBenchmark listings.txt products.txt %*
+pause